@@ -0,0 +1,46 @@
+package com.javi.autoapp.client.decoder;
+
+import java.util.concurrent.TimeUnit;
+import javax.websocket.DecodeException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of decoding a ticker frame from the feed, binding the whole message with Jackson as
+ * {@link WebSocketFeedDecoder} does versus streaming it into a reused event with {@link TickerEventDecoder}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FeedDecoderBenchmark {
+    private static final String TICKER = "{\"type\":\"ticker\",\"sequence\":22357148127,\"product_id\":\"BTC-USD\","
+            + "\"price\":\"48321.57\",\"open_24h\":\"47011.02\",\"volume_24h\":\"21034.71954818\","
+            + "\"low_24h\":\"46500.00\",\"high_24h\":\"48850.00\",\"volume_30d\":\"602145.30123431\","
+            + "\"best_bid\":\"48321.56\",\"best_ask\":\"48321.57\",\"side\":\"buy\","
+            + "\"time\":\"2021-02-14T18:03:21.512930Z\",\"trade_id\":141772638,\"last_size\":\"0.00213\"}";
+    private static final String HEARTBEAT = "{\"type\":\"heartbeat\",\"last_trade_id\":141772638,"
+            + "\"product_id\":\"BTC-USD\",\"sequence\":22357148128,\"time\":\"2021-02-14T18:03:22.000114Z\"}";
+
+    private final WebSocketFeedDecoder dataBindDecoder = new WebSocketFeedDecoder();
+    private final TickerEventDecoder streamingDecoder = new TickerEventDecoder();
+
+    @Benchmark
+    public void dataBindTicker(Blackhole blackhole) throws DecodeException {
+        blackhole.consume(dataBindDecoder.decode(TICKER));
+    }
+
+    @Benchmark
+    public void streamingTicker(Blackhole blackhole) throws DecodeException {
+        blackhole.consume(streamingDecoder.decode(TICKER));
+    }
+
+    @Benchmark
+    public void streamingHeartbeat(Blackhole blackhole) throws DecodeException {
+        blackhole.consume(streamingDecoder.decode(HEARTBEAT));
+    }
+}
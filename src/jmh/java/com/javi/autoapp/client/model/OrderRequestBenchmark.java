@@ -0,0 +1,63 @@
+package com.javi.autoapp.client.model;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.javi.autoapp.client.encoder.OrderEncoder;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of serializing an order with Jackson against the {@link OrderEncoder} that writes the bytes
+ * signed and sent.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OrderRequestBenchmark {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final OrderEncoder encoder = new OrderEncoder();
+    private CoinbaseOrderRequest buy;
+    private CoinbaseOrderRequest sell;
+
+    @Setup
+    public void setup() {
+        buy = new CoinbaseOrderRequest();
+        buy.setOrderId(UUID.randomUUID().toString());
+        buy.setProductId("BTC-USD");
+        buy.setSide(CoinbaseOrderRequest.BUY);
+        buy.setFunds(String.valueOf(1234.56));
+
+        sell = new CoinbaseOrderRequest();
+        sell.setOrderId(UUID.randomUUID().toString());
+        sell.setProductId("BTC-USD");
+        sell.setSide(CoinbaseOrderRequest.SELL);
+        sell.setSize(String.valueOf(0.02553121));
+    }
+
+    @Benchmark
+    public String serializeBuy() throws JsonProcessingException {
+        return mapper.writeValueAsString(buy);
+    }
+
+    @Benchmark
+    public String serializeSell() throws JsonProcessingException {
+        return mapper.writeValueAsString(sell);
+    }
+
+    @Benchmark
+    public byte[] encodeBuy() {
+        return encoder.encode(buy.getOrderId(), buy.getProductId(), false, 1234.56).getBytes();
+    }
+
+    @Benchmark
+    public byte[] encodeSell() {
+        return encoder.encode(sell.getOrderId(), sell.getProductId(), true, 0.02553121).getBytes();
+    }
+}
@@ -0,0 +1,96 @@
+package com.javi.autoapp.ddb;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.javi.autoapp.ddb.model.JobSettings;
+import com.javi.autoapp.ddb.model.JobStatus;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link AutoAppDao} backed by maps instead of DynamoDB, counting the calls to each method. Queries
+ * return a new list of the stored jobs like an uncached query, writes store the given object.
+ */
+public class InMemoryAutoAppDao extends AutoAppDao {
+    private final Map<String, JobSettings> jobs = new ConcurrentHashMap<>();
+    private final Map<String, JobStatus> statuses = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> calls = new ConcurrentHashMap<>();
+
+    public InMemoryAutoAppDao() {
+        super(null);
+    }
+
+    @Override
+    public JobSettings getJobSettings(String jobId) {
+        count("getJobSettings");
+        return jobs.get(jobId);
+    }
+
+    @Override
+    public List<JobSettings> getAllJobSettings() {
+        count("getAllJobSettings");
+        return new ArrayList<>(jobs.values());
+    }
+
+    @Override
+    protected void writeJob(JobSettings job) {
+        count("writeJob");
+        jobs.put(job.getJobId(), job);
+    }
+
+    @Override
+    protected List<DynamoDBMapper.FailedBatch> writeJobs(List<JobSettings> batch) {
+        count("writeJobs");
+        batch.forEach(job -> jobs.put(job.getJobId(), job));
+        return Collections.emptyList();
+    }
+
+    @Override
+    protected void removeJob(JobSettings job) {
+        count("removeJob");
+        jobs.remove(job.getJobId());
+    }
+
+    @Override
+    public List<JobStatus> getJobStatuses() {
+        count("getJobStatuses");
+        return new ArrayList<>(statuses.values());
+    }
+
+    @Override
+    public JobStatus getJobStatus(String jobId) {
+        count("getJobStatus");
+        return statuses.computeIfAbsent(jobId, id -> {
+            JobStatus status = new JobStatus();
+            status.setJobId(id);
+            return status;
+        });
+    }
+
+    @Override
+    public void updateJobStatus(JobStatus status) {
+        count("updateJobStatus");
+        statuses.put(status.getJobId(), status);
+    }
+
+    /**
+     * Calls by method since the last reset, in method name order.
+     */
+    public Map<String, Long> getCalls() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        calls.keySet().stream().sorted().forEach(method -> counts.put(method, calls.get(method).sum()));
+        return counts;
+    }
+
+    public void resetCalls() {
+        calls.clear();
+    }
+
+    private void count(String method) {
+        calls.computeIfAbsent(method, name -> new LongAdder()).increment();
+    }
+}
@@ -0,0 +1,258 @@
+package com.javi.autoapp.service;
+
+import com.javi.autoapp.client.CoinbaseTraderClient;
+import com.javi.autoapp.client.model.CoinbaseTickerEvent;
+import com.javi.autoapp.config.AppConfig;
+import com.javi.autoapp.ddb.InMemoryAutoAppDao;
+import com.javi.autoapp.ddb.model.JobSettings;
+import com.javi.autoapp.util.ProductRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import reactor.core.publisher.Mono;
+
+/**
+ * How far one instance scales in jobs: runs {@link AutoTradingService#run()} housekeeping cycles
+ * against an {@link InMemoryAutoAppDao}, a full price history for every product and an exchange that
+ * rejects every order, with jobs spread evenly over all products. A cycle lasts until every evaluation
+ * partition and the order pipeline have drained the work it queued. Reports cycle latency percentiles,
+ * bytes allocated by all threads per cycle, DAO calls and orders per cycle, and exits with 1 when the
+ * 99th percentile cycle exceeds the budget, 30 seconds by default.
+ *
+ * <pre>
+ * ./gradlew jobScalability -PjobCounts=10,1000,10000,100000 -Pcycles=20 -PbudgetMillis=30000
+ * </pre>
+ */
+@Slf4j
+public class JobScalabilityHarness {
+    private static final long HISTORY_TICK_MILLIS = Duration.ofMinutes(1).toMillis();
+    private static final long CYCLE_MILLIS = Duration.ofSeconds(30).toMillis();
+    private static final double VOLATILITY = 0.002;
+
+    private final int jobCount;
+    private final Random random = new Random(42);
+    private final double[] prices = new double[ProductRegistry.size()];
+    private final CoinbaseTickerEvent tick = new CoinbaseTickerEvent();
+    private final LongAdder orders = new LongAdder();
+    private final InMemoryAutoAppDao dao = new InMemoryAutoAppDao();
+    private final AppConfig appConfig = new AppConfig();
+    private ProductsService productsService;
+    private JobEvaluationEngine evaluationEngine;
+    private OrderPipeline orderPipeline;
+    private AutoTradingService autoTradingService;
+    private long clockMillis;
+
+    private JobScalabilityHarness(int jobCount) {
+        this.jobCount = jobCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] jobCounts = Arrays.stream(System.getProperty("jobCounts", "10,1000,10000,100000").split(","))
+                .mapToInt(count -> Integer.parseInt(count.trim()))
+                .toArray();
+        int warmupCycles = Integer.getInteger("warmupCycles", 5);
+        int cycles = Integer.getInteger("cycles", 20);
+        long budgetMillis = Long.getLong("budgetMillis", CYCLE_MILLIS);
+
+        boolean overBudget = false;
+        for (int jobCount : jobCounts) {
+            JobScalabilityHarness harness = new JobScalabilityHarness(jobCount);
+            harness.setup();
+            try {
+                overBudget |= !harness.measure(warmupCycles, cycles, budgetMillis);
+            } finally {
+                harness.tearDown();
+            }
+        }
+        if (overBudget) {
+            log.error("Cycle budget of {} ms exceeded", budgetMillis);
+            System.exit(1);
+        }
+    }
+
+    private void setup() {
+        appConfig.setMarketDataSnapshotPath("");
+        appConfig.setHousekeepingIntervalSeconds(TimeUnit.MILLISECONDS.toSeconds(CYCLE_MILLIS));
+        appConfig.setEvaluationThreads(Integer.getInteger("evaluationThreads", 4));
+        appConfig.setTickDrivenEvaluation(false);
+        appConfig.setUserChannelEnabled(false);
+        appConfig.setOrderPipelineMaxInFlight(3);
+        appConfig.setOrderPipelineQueueCapacity(1000);
+        appConfig.setOrderRequestTimeoutSeconds(10);
+        appConfig.setExchangeRequestsPerSecond(1_000_000); // The stub exchange has no rate limit
+        appConfig.setStatsCacheTtlSeconds(60);
+        appConfig.setStatsRefreshAheadSeconds(15);
+
+        CoinbaseTraderClient exchange = new CoinbaseTraderClient(appConfig, new SimpleMeterRegistry()) {
+            @Override
+            public Mono<ClientResponse> trade(byte[] body, long triggerSequence) {
+                orders.increment();
+                return Mono.empty();
+            }
+
+            @Override
+            public Mono<ClientResponse> getOrderStatus(String id) {
+                return Mono.empty();
+            }
+        };
+        orderPipeline = new OrderPipeline(appConfig, new SimpleMeterRegistry());
+        productsService = new ProductsService(appConfig, exchange, orderPipeline, new SimpleMeterRegistry()) {
+            @Override
+            public void updateSubscribedCurrencies(Set<String> productIds) {
+                // Prices come from the harness, there is no feed to subscribe to
+            }
+        };
+        evaluationEngine = new JobEvaluationEngine(appConfig);
+        autoTradingService = new AutoTradingService(
+                appConfig,
+                new ConcurrentMapCacheManager("coinbaseClient"),
+                exchange,
+                dao,
+                productsService,
+                new ProductStatsCache(appConfig, productsService, orderPipeline, new SimpleMeterRegistry()),
+                evaluationEngine,
+                orderPipeline,
+                new UserChannelService(appConfig, new SimpleMeterRegistry()),
+                new SimpleMeterRegistry());
+
+        // A full history of segments for every product
+        long historyMillis = Duration.ofMinutes(15).toMillis() * (ProductsService.MAX_SEGMENTS + 1);
+        clockMillis = System.currentTimeMillis() - historyMillis;
+        for (int productIndex = 0; productIndex < prices.length; productIndex++) {
+            prices[productIndex] = 10.0 * (productIndex + 1);
+        }
+        for (long elapsed = 0; elapsed < historyMillis; elapsed += HISTORY_TICK_MILLIS) {
+            advancePrices(HISTORY_TICK_MILLIS);
+        }
+
+        String expires = Instant.now().plus(Duration.ofDays(1)).toString();
+        for (int index = 0; index < jobCount; index++) {
+            int productIndex = index % prices.length;
+            JobSettings job = new JobSettings();
+            job.setProductId(ProductRegistry.getProductId(productIndex));
+            job.setPrecision(-2);
+            job.setInit(random.nextInt(5) == 0);
+            job.setSell(random.nextBoolean());
+            job.setPercentageYieldThreshold(1.01 + (random.nextDouble() * 0.2));
+            job.setFunds(100.0 + (random.nextDouble() * 1000.0));
+            job.setStartingFundsUsd(job.getFunds());
+            job.setSize(job.getFunds() / (prices[productIndex] * (0.9 + (random.nextDouble() * 0.2))));
+            job.setExpires(expires);
+            dao.startOrUpdateJob(job);
+        }
+    }
+
+    /**
+     * @return whether the 99th percentile cycle was within the budget
+     */
+    private boolean measure(int warmupCycles, int cycles, long budgetMillis) throws InterruptedException {
+        for (int cycle = 0; cycle < warmupCycles; cycle++) {
+            runCycle();
+        }
+
+        long[] cycleNanos = new long[cycles];
+        long allocatedBytes = 0;
+        long orderCount = 0;
+        Map<String, Long> daoCalls = new TreeMap<>();
+        for (int cycle = 0; cycle < cycles; cycle++) {
+            dao.resetCalls();
+            orders.reset();
+            long allocatedBefore = allocatedBytes();
+            cycleNanos[cycle] = runCycle();
+            allocatedBytes += allocatedBytes() - allocatedBefore;
+            orderCount += orders.sum();
+            dao.getCalls().forEach((method, calls) -> daoCalls.merge(method, calls, Long::sum));
+        }
+
+        Arrays.sort(cycleNanos);
+        double p99Millis = percentileMillis(cycleNanos, 0.99);
+        StringBuilder perCycle = new StringBuilder();
+        daoCalls.forEach((method, calls) -> perCycle.append(' ').append(method).append('=')
+                .append(String.format("%.1f", calls / (double) cycles)));
+        String summary = String.format(
+                "jobs=%d cycles=%d p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms allocated=%.1fMB/cycle orders=%.1f/cycle dao/cycle:%s",
+                jobCount,
+                cycles,
+                percentileMillis(cycleNanos, 0.50),
+                percentileMillis(cycleNanos, 0.90),
+                p99Millis,
+                percentileMillis(cycleNanos, 1.0),
+                allocatedBytes / (double) cycles / (1024 * 1024),
+                orderCount / (double) cycles,
+                perCycle);
+        if (p99Millis > budgetMillis) {
+            log.error("{} OVER BUDGET", summary);
+            return false;
+        }
+        log.info("{}", summary);
+        return true;
+    }
+
+    private void tearDown() {
+        productsService.shutdown();
+        evaluationEngine.shutdown();
+        orderPipeline.shutdown();
+    }
+
+    /**
+     * One tick per product for the next 30 seconds, then a housekeeping cycle until it drains.
+     */
+    private long runCycle() throws InterruptedException {
+        advancePrices(CYCLE_MILLIS);
+        long startNanos = System.nanoTime();
+        autoTradingService.run();
+
+        // Then again once the order pipeline drained, its responses queue completions on the partitions
+        awaitPartitions();
+        while (orderPipeline.getQueued() > 0) {
+            Thread.sleep(1);
+        }
+        awaitPartitions();
+        return System.nanoTime() - startNanos;
+    }
+
+    private void advancePrices(long elapsedMillis) {
+        clockMillis += elapsedMillis;
+        for (int productIndex = 0; productIndex < prices.length; productIndex++) {
+            prices[productIndex] *= 1.0 + (random.nextGaussian() * VOLATILITY);
+            tick.reset();
+            tick.setProductIndex(productIndex);
+            tick.setPrice(prices[productIndex]);
+            tick.setExchangeTimeMillis(clockMillis);
+            tick.setReceiveTimeMillis(clockMillis);
+            productsService.onMessage(tick);
+        }
+    }
+
+    private void awaitPartitions() throws InterruptedException {
+        CountDownLatch drained = new CountDownLatch(evaluationEngine.getPartitionCount());
+        for (int partition = 0; partition < evaluationEngine.getPartitionCount(); partition++) {
+            evaluationEngine.execute(partition, drained::countDown);
+        }
+        drained.await();
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return Arrays.stream(threads.getThreadAllocatedBytes(threads.getAllThreadIds()))
+                .filter(bytes -> bytes > 0)
+                .sum();
+    }
+
+    private static double percentileMillis(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,111 @@
+package com.javi.autoapp.service;
+
+import com.javi.autoapp.client.model.CoinbaseTickerEvent;
+import com.javi.autoapp.config.AppConfig;
+import com.javi.autoapp.graphql.type.Currency;
+import com.javi.autoapp.util.ProductRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Cost of ingesting a tick into {@link ProductsService} and of the price reads every job evaluation
+ * makes, with a full {@link ProductsService#MAX_SEGMENTS} of history. Ticks carry a receive time ten
+ * milliseconds apart so segments roll over at the live rate of a busy product, without the journal.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProductsServiceBenchmark {
+    private static final double MID_PRICE = 50000.0;
+    private static final int PRICE_COUNT = 1024;
+    private static final long TICK_MILLIS = 10;
+    private static final long HISTORY_TICK_MILLIS = Duration.ofSeconds(10).toMillis();
+
+    private final int productIndex = ProductRegistry.indexOf(Currency.BTC.getLabel());
+    private final String productId = Currency.BTC.getLabel();
+    private final CoinbaseTickerEvent event = new CoinbaseTickerEvent();
+    private final double[] prices = new double[PRICE_COUNT];
+    private ProductsService productsService;
+    private long clockMillis;
+    private int tick;
+
+    @Setup
+    public void setup() {
+        AppConfig appConfig = new AppConfig();
+        appConfig.setMarketDataSnapshotPath("");
+        productsService = new ProductsService(appConfig, null, null, new SimpleMeterRegistry());
+
+        Random random = new Random(42);
+        for (int index = 0; index < PRICE_COUNT; index++) {
+            prices[index] = MID_PRICE * (1.0 + (random.nextGaussian() * 0.01));
+        }
+
+        long historyMillis = Duration.ofMinutes(15).toMillis() * (ProductsService.MAX_SEGMENTS + 1);
+        clockMillis = System.currentTimeMillis() - historyMillis;
+        for (long elapsed = 0; elapsed < historyMillis; elapsed += HISTORY_TICK_MILLIS) {
+            clockMillis += HISTORY_TICK_MILLIS;
+            productsService.onMessage(nextTick());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        productsService.shutdown();
+    }
+
+    @Benchmark
+    public void onMessage() {
+        clockMillis += TICK_MILLIS;
+        productsService.onMessage(nextTick());
+    }
+
+    @Benchmark
+    public double getPrice() {
+        return productsService.getPrice(productIndex);
+    }
+
+    @Benchmark
+    public double getPriceByProductId() {
+        return productsService.getPrice(productId).orElse(Double.NaN);
+    }
+
+    @Benchmark
+    public double getMid() {
+        return productsService.getMid(productIndex);
+    }
+
+    @Benchmark
+    public double getMax() {
+        return productsService.getMax(productIndex);
+    }
+
+    @Benchmark
+    public double getMin() {
+        return productsService.getMin(productIndex);
+    }
+
+    @Benchmark
+    public double getChange() {
+        return productsService.getChange(productIndex);
+    }
+
+    private CoinbaseTickerEvent nextTick() {
+        event.reset();
+        event.setProductIndex(productIndex);
+        event.setPrice(prices[tick++ & (PRICE_COUNT - 1)]);
+        event.setSequence(tick);
+        event.setExchangeTimeMillis(clockMillis);
+        event.setReceiveTimeMillis(clockMillis);
+        return event;
+    }
+}
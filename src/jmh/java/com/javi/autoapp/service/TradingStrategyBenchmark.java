@@ -0,0 +1,67 @@
+package com.javi.autoapp.service;
+
+import com.javi.autoapp.ddb.model.JobSettings;
+import com.javi.autoapp.graphql.type.Currency;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of a single trough or crest decision in {@link TradingStrategy}, from a loaded state and from a
+ * job as {@link AutoTradingService} evaluates it, over jobs spread around the mid price.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TradingStrategyBenchmark {
+    private static final double MID_PRICE = 50000.0;
+    private static final int JOB_COUNT = 1024;
+
+    @Param({"false", "true"})
+    private boolean sell;
+
+    private final JobSettings[] jobs = new JobSettings[JOB_COUNT];
+    private final TradingStrategy.State[] states = new TradingStrategy.State[JOB_COUNT];
+    private final double[] prices = new double[JOB_COUNT];
+    private final TradingStrategy.State state = new TradingStrategy.State();
+    private int evaluation;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        for (int index = 0; index < JOB_COUNT; index++) {
+            JobSettings job = new JobSettings();
+            job.setProductId(Currency.BTC.getLabel());
+            job.setPrecision(-2);
+            job.setInit(false);
+            job.setSell(sell);
+            job.setPercentageYieldThreshold(1.01 + (random.nextDouble() * 0.2));
+            job.setFunds(100.0 + (random.nextDouble() * 1000.0));
+            job.setSize(job.getFunds() / (MID_PRICE * (0.9 + (random.nextDouble() * 0.2))));
+            job.setCrossedPercentageYieldThreshold(random.nextBoolean());
+            job.setMaxYieldValue(1.0 + (random.nextDouble() * 0.2));
+            jobs[index] = job;
+            states[index] = new TradingStrategy.State().load(job);
+            prices[index] = MID_PRICE * (1.0 + (random.nextGaussian() * 0.02));
+        }
+    }
+
+    @Benchmark
+    public int evaluate() {
+        int index = evaluation++ & (JOB_COUNT - 1);
+        return TradingStrategy.evaluate(states[index], MID_PRICE, prices[index]);
+    }
+
+    @Benchmark
+    public int loadAndEvaluate() {
+        int index = evaluation++ & (JOB_COUNT - 1);
+        return TradingStrategy.evaluate(state.load(jobs[index]), MID_PRICE, prices[index]);
+    }
+}
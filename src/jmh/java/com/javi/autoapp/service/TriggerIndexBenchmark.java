@@ -0,0 +1,113 @@
+package com.javi.autoapp.service;
+
+import com.javi.autoapp.ddb.model.JobSettings;
+import com.javi.autoapp.graphql.type.Currency;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of deciding which jobs of a product to evaluate on a tick, scanning every job and computing its
+ * thresholds as {@code AutoTradingService} does versus collecting candidates from a {@link TriggerIndex}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TriggerIndexBenchmark {
+    private static final double MID_PRICE = 50000.0;
+    private static final int PRICE_COUNT = 1024;
+
+    @Param({"10", "1000", "10000", "100000"})
+    private int jobCount;
+
+    private List<JobSettings> jobs;
+    private TriggerIndex triggerIndex;
+    private final List<JobSettings> candidates = new ArrayList<>();
+    private final double[] prices = new double[PRICE_COUNT];
+    private int tick;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        jobs = new ArrayList<>(jobCount);
+        for (int index = 0; index < jobCount; index++) {
+            JobSettings job = new JobSettings();
+            job.setProductId(Currency.BTC.getLabel());
+            job.setPrecision(-2);
+            job.setInit(false);
+            job.setSell(random.nextBoolean());
+            job.setPercentageYieldThreshold(1.01 + (random.nextDouble() * 0.2));
+            job.setFunds(100.0 + (random.nextDouble() * 1000.0));
+            job.setSize(job.getFunds() / (MID_PRICE * (0.9 + (random.nextDouble() * 0.2))));
+            jobs.add(job);
+        }
+        triggerIndex = new TriggerIndex(jobs);
+
+        for (int index = 0; index < PRICE_COUNT; index++) {
+            prices[index] = MID_PRICE * (1.0 + (random.nextGaussian() * 0.01));
+        }
+    }
+
+    @Benchmark
+    public void fullScan(Blackhole blackhole) {
+        double price = nextPrice();
+        for (JobSettings job : jobs) {
+            blackhole.consume(wouldAct(job, MID_PRICE, price));
+        }
+    }
+
+    @Benchmark
+    public void indexed(Blackhole blackhole) {
+        double price = nextPrice();
+        candidates.clear();
+        triggerIndex.collect(MID_PRICE, price, candidates);
+        blackhole.consume(candidates.size());
+    }
+
+    @Benchmark
+    public void invalidatedThenIndexed(Blackhole blackhole) {
+        double price = nextPrice();
+        triggerIndex.invalidate(jobs.get(tick % jobCount));
+        candidates.clear();
+        triggerIndex.collect(MID_PRICE, price, candidates);
+        blackhole.consume(candidates.size());
+    }
+
+    private double nextPrice() {
+        return prices[tick++ & (PRICE_COUNT - 1)];
+    }
+
+    private static boolean wouldAct(JobSettings job, double mid, double rawPrice) {
+        double price = roundPrice(rawPrice, job.getPrecision());
+        double midPrice = roundPrice(mid, job.getPrecision());
+        double priceIncreasePercent = job.getPercentageYieldThreshold() + TradingStrategy.COINBASE_PERCENTAGE - 1.0;
+        if (job.isSell()) {
+            double value = roundPrice(job.getFunds() / job.getSize(), job.getPrecision());
+            double highThreshold = roundPrice(midPrice * (1.0 + (priceIncreasePercent / 2.0)), job.getPrecision());
+            double maxPrice = roundPrice(midPrice * (1.0 + (priceIncreasePercent * 1.5)), job.getPrecision());
+            return maxPrice < value || price > highThreshold;
+        } else {
+            double priceWanted = roundPrice(job.getFunds()
+                    / ((job.getPercentageYieldThreshold() * job.getSize()) / (1 - TradingStrategy.COINBASE_PERCENTAGE)),
+                    job.getPrecision());
+            double lowThreshold = roundPrice(midPrice * (1.0 - (priceIncreasePercent / 2.0)), job.getPrecision());
+            double minPrice = roundPrice(midPrice * (1.0 - (priceIncreasePercent * 1.5)), job.getPrecision());
+            return priceWanted < minPrice || price < lowThreshold;
+        }
+    }
+
+    private static double roundPrice(double absolutePrice, double precision) {
+        double precisionPlace = Math.pow(10, -precision);
+        return Math.round(absolutePrice * precisionPlace) / precisionPlace;
+    }
+}
@@ -0,0 +1,55 @@
+package com.javi.autoapp.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of signing a request with the per thread {@link Mac}, against looking up the HMAC, decoding the
+ * secret and initializing a key on every call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SignatureToolBenchmark {
+    private static final byte[] ORDER = ("{\"type\":\"market\",\"client_oid\":\"5b2b4c7e-0a4f-4ad4-9d0b-3a8cbb4bb7b8\","
+            + "\"side\":\"buy\",\"funds\":\"1234.56\",\"product_id\":\"BTC-USD\"}").getBytes(StandardCharsets.US_ASCII);
+    private static final String ORDER_PATH = "/orders/client:5b2b4c7e-0a4f-4ad4-9d0b-3a8cbb4bb7b8";
+
+    static {
+        // Read once when SignatureTool is initialized, any 64 byte key will do
+        if (System.getProperty("COINBASE_SECRET") == null) {
+            System.setProperty("COINBASE_SECRET", Base64.getEncoder().encodeToString(new byte[64]));
+        }
+    }
+
+    private final String timestamp = "1613325801";
+
+    @Benchmark
+    public String signGet() {
+        return SignatureTool.sign(timestamp, "GET", ORDER_PATH, null);
+    }
+
+    @Benchmark
+    public String signOrder() {
+        return SignatureTool.sign(timestamp, "POST", "/orders", ORDER);
+    }
+
+    @Benchmark
+    public String signOrderPerRequestMac() throws InvalidKeyException, NoSuchAlgorithmException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(Base64.getDecoder().decode(SignatureTool.SECRET), "HmacSHA256"));
+        mac.update((timestamp + "POST" + "/orders").getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(mac.doFinal(ORDER));
+    }
+}
@@ -0,0 +1,143 @@
+package com.javi.autoapp.backtest;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.javi.autoapp.backtest.BacktestResult.JobResult;
+import com.javi.autoapp.ddb.model.JobSettings;
+import com.javi.autoapp.journal.TickJournalReader;
+import java.io.File;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Command line backtest of a JSON array of jobs over a tick journal or downloaded candles, without
+ * Spring, Coinbase or DynamoDB. Build with {@code -DmainClass=com.javi.autoapp.backtest.BacktestApp}.
+ * Any of the sweep options instead runs a {@link ParameterSweep} of the first job on all cores.
+ *
+ * <pre>
+ * --jobs jobs.json --journal /var/tmp/auto-app-ticks --from 2021-01-01T00:00:00Z --to 2021-01-08T00:00:00Z
+ * --jobs jobs.json --candles btc.json --product BTC-USD --granularity 900
+ * --jobs jobs.json --candles btc.json --product BTC-USD --yields 1.02,1.03,1.05 --precisions -2,-1,0
+ * --jobs jobs.json --candles btc.json --product BTC-USD --yields 1.01,1.1 --losses 0.8,0.95 --samples 500
+ * </pre>
+ */
+@Slf4j
+public class BacktestApp {
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    public static void main(String[] args) throws Exception {
+        OptionParser parser = new OptionParser();
+        OptionSpec<File> jobsOption = parser.accepts("jobs", "JSON array of job settings").withRequiredArg().ofType(File.class).required();
+        OptionSpec<File> journalOption = parser.accepts("journal", "Tick journal directory").withRequiredArg().ofType(File.class);
+        OptionSpec<String> fromOption = parser.accepts("from", "Journal start, ISO instant").withRequiredArg().defaultsTo("1970-01-01T00:00:00Z");
+        OptionSpec<String> toOption = parser.accepts("to", "Journal end, ISO instant").withRequiredArg().defaultsTo("9999-12-31T00:00:00Z");
+        OptionSpec<File> candlesOption = parser.accepts("candles", "JSON candles from the candles endpoint").withRequiredArg().ofType(File.class);
+        OptionSpec<String> productOption = parser.accepts("product", "Product ID of the candles").withRequiredArg();
+        OptionSpec<Long> granularityOption = parser.accepts("granularity", "Candle granularity in seconds").withRequiredArg().ofType(Long.class).defaultsTo(900L);
+        OptionSpec<Double> yieldsOption = parser.accepts("yields", "Sweep percentage yield thresholds").withRequiredArg().ofType(Double.class).withValuesSeparatedBy(',');
+        OptionSpec<Double> totalYieldsOption = parser.accepts("total-yields", "Sweep total percentage yield thresholds").withRequiredArg().ofType(Double.class).withValuesSeparatedBy(',');
+        OptionSpec<Double> lossesOption = parser.accepts("losses", "Sweep maximum losses").withRequiredArg().ofType(Double.class).withValuesSeparatedBy(',');
+        OptionSpec<Integer> precisionsOption = parser.accepts("precisions", "Sweep precisions").withRequiredArg().ofType(Integer.class).withValuesSeparatedBy(',');
+        OptionSpec<Integer> samplesOption = parser.accepts("samples", "Random samples between the lowest and highest sweep values instead of the full grid").withRequiredArg().ofType(Integer.class).defaultsTo(0);
+        OptionSpec<Long> seedOption = parser.accepts("seed", "Random sample seed").withRequiredArg().ofType(Long.class).defaultsTo(0L);
+        OptionSpec<Integer> topOption = parser.accepts("top", "Sweep results to report").withRequiredArg().ofType(Integer.class).defaultsTo(10);
+        OptionSpec<Integer> parallelismOption = parser.accepts("parallelism", "Sweep worker threads").withRequiredArg().ofType(Integer.class).defaultsTo(Runtime.getRuntime().availableProcessors());
+        OptionSet options = parser.parse(args);
+
+        TickSource source;
+        if (options.has(journalOption)) {
+            TickJournalReader reader = new TickJournalReader(options.valueOf(journalOption).toPath());
+            long fromMillis = Instant.parse(options.valueOf(fromOption)).toEpochMilli();
+            long toMillis = Instant.parse(options.valueOf(toOption)).toEpochMilli();
+            source = handler -> reader.replay(fromMillis, toMillis, handler);
+        } else if (options.has(candlesOption) && options.has(productOption)) {
+            source = CandleHistory.read(
+                    options.valueOf(productOption),
+                    options.valueOf(candlesOption).toPath(),
+                    Duration.ofSeconds(options.valueOf(granularityOption)).toMillis())::replay;
+        } else {
+            parser.printHelpOn(System.out);
+            return;
+        }
+
+        List<JobSettings> jobs = Arrays.asList(mapper.readValue(options.valueOf(jobsOption), JobSettings[].class));
+        if (!options.has(yieldsOption) && !options.has(totalYieldsOption) && !options.has(lossesOption) && !options.has(precisionsOption)) {
+            BacktestEngine engine = new BacktestEngine(jobs);
+            source.replay(engine);
+            report(engine.getResult());
+            return;
+        }
+
+        ParameterSweep.Grid grid = new ParameterSweep.Grid();
+        grid.setPercentageYieldThresholds(options.valuesOf(yieldsOption));
+        grid.setTotalPercentageYieldThresholds(options.valuesOf(totalYieldsOption));
+        grid.setMaximumLoses(options.valuesOf(lossesOption));
+        grid.setPrecisions(options.valuesOf(precisionsOption));
+        int samples = options.valueOf(samplesOption);
+        List<JobSettings> candidates = samples > 0
+                ? ParameterSweep.sample(jobs.get(0), grid, samples, options.valueOf(seedOption))
+                : ParameterSweep.grid(jobs.get(0), grid);
+
+        ForkJoinPool pool = new ForkJoinPool(options.valueOf(parallelismOption));
+        try (PriceTape tape = PriceTape.record(source)) {
+            long startNanos = System.nanoTime();
+            List<JobResult> results = new ParameterSweep(tape, pool).run(candidates, options.valueOf(topOption));
+            long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+            log.info("Swept {} candidates over {} ticks on {} threads in {} ms",
+                    candidates.size(),
+                    tape.size(),
+                    pool.getParallelism(),
+                    elapsedMillis);
+            reportSweep(results);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    static void report(BacktestResult result) {
+        log.info("Replayed {} ticks from {} to {} in {} ms, {} ticks/s",
+                result.getTicks(),
+                Instant.ofEpochMilli(result.getFirstTickMillis()),
+                Instant.ofEpochMilli(result.getLastTickMillis()),
+                result.getElapsedNanos() / 1_000_000,
+                Math.round(result.getTicksPerSecond()));
+        for (JobResult job : result.getJobs()) {
+            log.info("Job ID: {} - ProductId: {}, YieldThreshold: {}, StartingFunds: {}, FinalValue: {}, GainsLosses: {}, Buys: {}, Sells: {}, Fees: {}",
+                    job.getJobId(),
+                    job.getProductId(),
+                    job.getPercentageYieldThreshold(),
+                    job.getStartingFundsUsd(),
+                    job.getFinalValueUsd(),
+                    job.getProfitLoss(),
+                    job.getBuys(),
+                    job.getSells(),
+                    job.getFeesUsd());
+        }
+        log.info("Total gains/losses: {}", result.getProfitLoss());
+    }
+
+    static void reportSweep(List<JobResult> results) {
+        int rank = 1;
+        for (JobResult job : results) {
+            log.info("#{} - YieldThreshold: {}, TotalYieldThreshold: {}, MaximumLoses: {}, Precision: {}, FinalValue: {}, GainsLosses: {}, Buys: {}, Sells: {}, Fees: {}",
+                    rank++,
+                    job.getPercentageYieldThreshold(),
+                    job.getTotalPercentageYieldThreshold(),
+                    job.getMaximumLoses(),
+                    job.getPrecision(),
+                    job.getFinalValueUsd(),
+                    job.getProfitLoss(),
+                    job.getBuys(),
+                    job.getSells(),
+                    job.getFeesUsd());
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.javi.autoapp.backtest;
+
+import static com.javi.autoapp.service.TradingStrategy.COINBASE_PERCENTAGE;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.javi.autoapp.backtest.BacktestResult.JobResult;
+import com.javi.autoapp.client.model.CoinbaseTickerEvent;
+import com.javi.autoapp.ddb.model.JobSettings;
+import com.javi.autoapp.model.PriceSegmentRing;
+import com.javi.autoapp.service.ProductsService;
+import com.javi.autoapp.service.TradingStrategy;
+import com.javi.autoapp.service.TriggerIndex;
+import com.javi.autoapp.util.ProductRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.websocket.MessageHandler;
+
+/**
+ * Drives the live {@link TradingStrategy} over recorded or downloaded ticks with a clock taken from the
+ * ticks, in memory job state and a simulated fill model. Segments are aggregated the same way as
+ * {@link ProductsService}, jobs are only evaluated once a product has {@link ProductsService#MIN_SEGMENTS}
+ * segments since there is no stats endpoint to fall back on, and ticks only visit the jobs their
+ * {@link TriggerIndex} selects.
+ *
+ * <p>Orders fill in full at the price of the tick that placed them once the evaluation of that tick
+ * is done, so like live a job is not evaluated again while its order is outstanding. Fees are charged
+ * at {@link TradingStrategy#COINBASE_PERCENTAGE} and settled values are floored to cents as Coinbase
+ * reports them. Expiry and the total yield threshold are checked every housekeeping interval of tick
+ * time. Not thread safe, one engine per run.
+ */
+public class BacktestEngine implements MessageHandler.Whole<CoinbaseTickerEvent> {
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private static final long SEGMENT_MILLIS = Duration.ofMinutes(15).toMillis();
+    private static final long HOUSEKEEPING_MILLIS = Duration.ofSeconds(30).toMillis();
+
+    private final TradingStrategy.State state = new TradingStrategy.State();
+    private final List<JobSettings> jobs = new ArrayList<>();
+    private final Map<JobSettings, JobResult> results = new IdentityHashMap<>();
+    private final long[] expiresMillis;
+    private final TriggerIndex[] triggerIndexes;
+    private final PriceSegmentRing[] priceSegments;
+    private final double[] prices;
+    private final List<JobSettings> candidates = new ArrayList<>();
+    private final List<JobSettings> fills = new ArrayList<>();
+
+    private long ticks;
+    private long firstTickNanos;
+    private long lastTickNanos;
+    private long firstTickMillis;
+    private long clockMillis;
+    private long nextHousekeepingMillis;
+
+    /**
+     * Runs copies of the given jobs, the originals are not modified.
+     */
+    public BacktestEngine(List<JobSettings> templates) {
+        List<List<JobSettings>> jobsByProduct = new ArrayList<>();
+        for (int productIndex = 0; productIndex < ProductRegistry.size(); productIndex++) {
+            jobsByProduct.add(new ArrayList<>());
+        }
+
+        expiresMillis = new long[templates.size()];
+        for (JobSettings template : templates) {
+            JobSettings job = copy(template);
+            if (job.getProductIndex() == ProductRegistry.UNKNOWN) {
+                throw new IllegalArgumentException("Unknown product ID: " + job.getProductId());
+            }
+            expiresMillis[jobs.size()] = job.getExpires().isEmpty()
+                    ? Long.MAX_VALUE
+                    : Instant.parse(job.getExpires()).toEpochMilli();
+            jobs.add(job);
+            jobsByProduct.get(job.getProductIndex()).add(job);
+
+            JobResult result = new JobResult();
+            result.setJobId(job.getJobId());
+            result.setProductId(job.getProductId());
+            result.setPercentageYieldThreshold(job.getPercentageYieldThreshold());
+            result.setTotalPercentageYieldThreshold(job.getTotalPercentageYieldThreshold());
+            result.setMaximumLoses(job.getMaximumLoses());
+            result.setPrecision(job.getPrecision());
+            results.put(job, result);
+        }
+
+        triggerIndexes = new TriggerIndex[ProductRegistry.size()];
+        priceSegments = new PriceSegmentRing[ProductRegistry.size()];
+        for (int productIndex = 0; productIndex < ProductRegistry.size(); productIndex++) {
+            triggerIndexes[productIndex] = new TriggerIndex(jobsByProduct.get(productIndex));
+            priceSegments[productIndex] = new PriceSegmentRing(ProductsService.MAX_SEGMENTS, SEGMENT_MILLIS);
+        }
+        prices = new double[ProductRegistry.size()];
+        Arrays.fill(prices, Double.NaN);
+    }
+
+    @Override
+    public void onMessage(CoinbaseTickerEvent tick) {
+        if (!tick.isTicker()) {
+            return;
+        }
+
+        if (ticks++ == 0) {
+            firstTickNanos = System.nanoTime();
+            firstTickMillis = tick.getReceiveTimeMillis();
+            nextHousekeepingMillis = firstTickMillis;
+        }
+        clockMillis = tick.getReceiveTimeMillis();
+        if (clockMillis >= nextHousekeepingMillis) {
+            deactivateCompletedJobs();
+            nextHousekeepingMillis = clockMillis + HOUSEKEEPING_MILLIS;
+        }
+
+        int productIndex = tick.getProductIndex();
+        double price = tick.getPrice();
+        prices[productIndex] = price;
+        PriceSegmentRing segments = priceSegments[productIndex];
+        segments.aggregatePrice(price, clockMillis);
+
+        if (triggerIndexes[productIndex].size() > 0 && segments.size() >= ProductsService.MIN_SEGMENTS) {
+            double midPrice = segments.getMid();
+            candidates.clear();
+            triggerIndexes[productIndex].collect(midPrice, price, candidates);
+            for (int index = 0; index < candidates.size(); index++) {
+                JobSettings job = candidates.get(index);
+                if ((job.isActive() || job.isSell()) && !job.isPending()) {
+                    evaluate(job, midPrice, price);
+                }
+            }
+            fillOrders(price);
+        }
+        lastTickNanos = System.nanoTime();
+    }
+
+    public BacktestResult getResult() {
+        BacktestResult result = new BacktestResult();
+        result.setTicks(ticks);
+        result.setElapsedNanos(lastTickNanos - firstTickNanos);
+        result.setFirstTickMillis(firstTickMillis);
+        result.setLastTickMillis(clockMillis);
+        for (JobSettings job : jobs) {
+            JobResult jobResult = results.get(job);
+            jobResult.setStartingFundsUsd(job.getStartingFundsUsd());
+            jobResult.setActive(job.isActive());
+            double price = prices[job.getProductIndex()];
+            if (!job.isSell()) {
+                jobResult.setFinalValueUsd(job.getFunds());
+            } else if (!Double.isNaN(price)) {
+                jobResult.setFinalValueUsd(job.getSize() * price * (1 - COINBASE_PERCENTAGE));
+            }
+            result.getJobs().add(jobResult);
+        }
+        return result;
+    }
+
+    private void evaluate(JobSettings job, double midPrice, double price) {
+        int decision = TradingStrategy.evaluate(state.load(job), midPrice, price);
+        if (TradingStrategy.isTrade(decision)) {
+            job.setPending(true);
+            fills.add(job);
+        } else if (TradingStrategy.apply(job, decision, state) && TradingStrategy.changesTriggers(decision)) {
+            triggerIndexes[job.getProductIndex()].invalidate(job);
+        }
+    }
+
+    private void fillOrders(double price) {
+        for (int index = 0; index < fills.size(); index++) {
+            JobSettings job = fills.get(index);
+            JobResult result = results.get(job);
+            if (!job.isSell()) {
+                double fees = job.getFunds() * COINBASE_PERCENTAGE;
+                double size = (job.getFunds() - fees) / price;
+                result.setBuys(result.getBuys() + 1);
+                result.setFeesUsd(result.getFeesUsd() + fees);
+                TradingStrategy.applyFill(job, settledValue(job.getFunds() - fees, fees), size);
+            } else {
+                double executedValue = job.getSize() * price;
+                double fees = executedValue * COINBASE_PERCENTAGE;
+                result.setSells(result.getSells() + 1);
+                result.setFeesUsd(result.getFeesUsd() + fees);
+                TradingStrategy.applyFill(job, settledValue(executedValue, fees), job.getSize());
+            }
+            triggerIndexes[job.getProductIndex()].invalidate(job);
+        }
+        fills.clear();
+    }
+
+    private void deactivateCompletedJobs() {
+        for (int index = 0; index < jobs.size(); index++) {
+            JobSettings job = jobs.get(index);
+            boolean expired = clockMillis > expiresMillis[index];
+            boolean reachTotalYieldThreshold = (job.getFunds() / job.getStartingFundsUsd()) > job.getTotalPercentageYieldThreshold();
+            if (job.isActive() && (expired || reachTotalYieldThreshold)) {
+                job.setActive(false);
+                triggerIndexes[job.getProductIndex()].invalidate(job);
+            }
+        }
+    }
+
+    private static double settledValue(double executedValue, double fees) {
+        return Math.floor((executedValue - fees) * 100.0) / 100.0;
+    }
+
+    private static JobSettings copy(JobSettings job) {
+        return mapper.convertValue(job, JobSettings.class);
+    }
+}
@@ -0,0 +1,48 @@
+package com.javi.autoapp.backtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Data;
+
+@Data
+public class BacktestResult {
+    private long ticks;
+    private long elapsedNanos;
+    private long firstTickMillis;
+    private long lastTickMillis;
+    private List<JobResult> jobs = new ArrayList<>();
+
+    public double getTicksPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : ticks / (elapsedNanos / 1_000_000_000.0);
+    }
+
+    public double getProfitLoss() {
+        return jobs.stream().mapToDouble(JobResult::getProfitLoss).sum();
+    }
+
+    @Data
+    public static class JobResult {
+        private String jobId;
+        private String productId;
+        private double percentageYieldThreshold;
+        private double totalPercentageYieldThreshold;
+        private double maximumLoses;
+        private int precision;
+        private double startingFundsUsd;
+
+        // Funds if the job ended on a buy, otherwise its size sold at the last price less fees
+        private double finalValueUsd;
+        private double feesUsd;
+        private int buys;
+        private int sells;
+        private boolean active;
+
+        public double getProfitLoss() {
+            return finalValueUsd - startingFundsUsd;
+        }
+
+        public int getTrades() {
+            return buys + sells;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.javi.autoapp.backtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.javi.autoapp.client.model.CoinbaseTickerEvent;
+import com.javi.autoapp.util.ProductRegistry;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import javax.websocket.MessageHandler;
+
+/**
+ * Price history downloaded from the candles endpoint, a JSON array of
+ * {@code [time, low, high, open, close, volume]} rows. Each candle is replayed as four ticks spread over
+ * its interval: open, then low and high in the order the candle most likely moved, then close.
+ */
+public class CandleHistory {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final int productIndex;
+    private final double[][] candles;
+    private final long granularityMillis;
+
+    public CandleHistory(String productId, double[][] candles, long granularityMillis) {
+        this.productIndex = ProductRegistry.indexOf(productId);
+        if (productIndex == ProductRegistry.UNKNOWN) {
+            throw new IllegalArgumentException("Unknown product ID: " + productId);
+        }
+        this.candles = candles.clone();
+        this.granularityMillis = granularityMillis;
+        Arrays.sort(this.candles, Comparator.comparingDouble(candle -> candle[0]));
+    }
+
+    public static CandleHistory read(String productId, Path file, long granularityMillis) throws IOException {
+        return new CandleHistory(productId, mapper.readValue(file.toFile(), double[][].class), granularityMillis);
+    }
+
+    /**
+     * Replays every candle oldest first.
+     *
+     * @return number of ticks replayed
+     */
+    public long replay(MessageHandler.Whole<CoinbaseTickerEvent> handler) {
+        CoinbaseTickerEvent event = new CoinbaseTickerEvent();
+        long step = granularityMillis / 4;
+        long replayed = 0;
+        for (double[] candle : candles) {
+            long startMillis = (long) candle[0] * 1000;
+            boolean falling = candle[4] < candle[3];
+            replayed += replay(handler, event, startMillis, candle[3]);
+            replayed += replay(handler, event, startMillis + step, falling ? candle[2] : candle[1]);
+            replayed += replay(handler, event, startMillis + (2 * step), falling ? candle[1] : candle[2]);
+            replayed += replay(handler, event, startMillis + (3 * step), candle[4]);
+        }
+        return replayed;
+    }
+
+    private int replay(
+            MessageHandler.Whole<CoinbaseTickerEvent> handler,
+            CoinbaseTickerEvent event,
+            long timeMillis,
+            double price) {
+        event.reset();
+        event.setProductIndex(productIndex);
+        event.setPrice(price);
+        event.setExchangeTimeMillis(timeMillis);
+        event.setReceiveTimeMillis(timeMillis);
+        handler.onMessage(event);
+        return 1;
+    }
+}
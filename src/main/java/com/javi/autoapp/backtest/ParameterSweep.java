@@ -0,0 +1,174 @@
+package com.javi.autoapp.backtest;
+
+import com.javi.autoapp.backtest.BacktestResult.JobResult;
+import com.javi.autoapp.ddb.model.JobSettings;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Backtests many variations of a job over the same {@link PriceTape} in a fork join pool and ranks them
+ * by gains. Candidates are split into chunks of independent jobs, each chunk replays the shared tape
+ * through its own {@link BacktestEngine}, so workers share nothing but the read only mapping and the
+ * sweep scales with the pool as long as there are a few chunks per worker.
+ */
+@RequiredArgsConstructor
+public class ParameterSweep {
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    private final PriceTape tape;
+    private final ForkJoinPool pool;
+
+    /**
+     * Values to try for each swept setting. Empty lists keep the template's value.
+     */
+    @Data
+    public static class Grid {
+        private List<Double> percentageYieldThresholds = new ArrayList<>();
+        private List<Double> totalPercentageYieldThresholds = new ArrayList<>();
+        private List<Double> maximumLoses = new ArrayList<>();
+        private List<Integer> precisions = new ArrayList<>();
+    }
+
+    /**
+     * Every combination of the grid's values.
+     */
+    public static List<JobSettings> grid(JobSettings template, Grid grid) {
+        List<JobSettings> candidates = new ArrayList<>();
+        for (double yield : valuesOr(grid.getPercentageYieldThresholds(), template.getPercentageYieldThreshold())) {
+            for (double totalYield : valuesOr(grid.getTotalPercentageYieldThresholds(), template.getTotalPercentageYieldThreshold())) {
+                for (double maximumLoses : valuesOr(grid.getMaximumLoses(), template.getMaximumLoses())) {
+                    for (int precision : valuesOr(grid.getPrecisions(), template.getPrecision())) {
+                        candidates.add(candidate(template, yield, totalYield, maximumLoses, precision));
+                    }
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Random combinations drawn uniformly between the lowest and highest of the grid's values for each
+     * setting, repeatable for a seed.
+     */
+    public static List<JobSettings> sample(JobSettings template, Grid bounds, int samples, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Double> yields = valuesOr(bounds.getPercentageYieldThresholds(), template.getPercentageYieldThreshold());
+        List<Double> totalYields = valuesOr(bounds.getTotalPercentageYieldThresholds(), template.getTotalPercentageYieldThreshold());
+        List<Double> losses = valuesOr(bounds.getMaximumLoses(), template.getMaximumLoses());
+        List<Integer> precisions = valuesOr(bounds.getPrecisions(), template.getPrecision());
+        int minPrecision = precisions.stream().min(Integer::compare).get();
+        int maxPrecision = precisions.stream().max(Integer::compare).get();
+
+        List<JobSettings> candidates = new ArrayList<>(samples);
+        for (int sample = 0; sample < samples; sample++) {
+            candidates.add(candidate(
+                    template,
+                    between(random, yields),
+                    between(random, totalYields),
+                    between(random, losses),
+                    random.nextInt(minPrecision, maxPrecision + 1)));
+        }
+        return candidates;
+    }
+
+    /**
+     * Backtests every candidate and returns the best {@code top} by gains, ties going to fewer fees.
+     */
+    public List<JobResult> run(List<JobSettings> candidates, int top) {
+        return run(candidates, top, Long.MAX_VALUE);
+    }
+
+    /**
+     * Like {@link #run(List, int)}, but no chunk is started after {@code timeoutMillis}, the sweep fails
+     * with a {@link CancellationException} instead.
+     */
+    public List<JobResult> run(List<JobSettings> candidates, int top, long timeoutMillis) {
+        if (candidates.isEmpty()) {
+            return new ArrayList<>();
+        }
+        int chunk = Math.max(1, candidates.size() / (pool.getParallelism() * CHUNKS_PER_WORKER));
+        long deadlineMillis = timeoutMillis == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + timeoutMillis;
+        List<JobResult> results = pool.invoke(new SweepTask(candidates, 0, candidates.size(), chunk, deadlineMillis));
+        results.sort(Comparator.comparingDouble(JobResult::getProfitLoss).reversed()
+                .thenComparingDouble(JobResult::getFeesUsd));
+        return new ArrayList<>(results.subList(0, Math.min(top, results.size())));
+    }
+
+    private static JobSettings candidate(
+            JobSettings template,
+            double percentageYieldThreshold,
+            double totalPercentageYieldThreshold,
+            double maximumLoses,
+            int precision) {
+        JobSettings settings = new JobSettings();
+        settings.setProductId(template.getProductId());
+        settings.setSell(false);
+        settings.setPrecision(precision);
+        settings.setPercentageYieldThreshold(percentageYieldThreshold);
+        settings.setTotalPercentageYieldThreshold(totalPercentageYieldThreshold);
+        settings.setMaximumLoses(maximumLoses);
+        settings.setProtectUsd(template.isProtectUsd());
+        settings.setFunds(template.getFunds());
+        settings.setStartingFundsUsd(template.getFunds());
+        settings.setExpires(template.getExpires());
+        settings.setTradeNow(template.isTradeNow());
+        return settings;
+    }
+
+    private static <T> List<T> valuesOr(List<T> values, T templateValue) {
+        if (values == null || values.isEmpty()) {
+            List<T> single = new ArrayList<>();
+            single.add(templateValue);
+            return single;
+        }
+        return values;
+    }
+
+    private static double between(SplittableRandom random, List<Double> values) {
+        double min = values.stream().mapToDouble(Double::doubleValue).min().getAsDouble();
+        double max = values.stream().mapToDouble(Double::doubleValue).max().getAsDouble();
+        return min == max ? min : random.nextDouble(min, max);
+    }
+
+    private final class SweepTask extends RecursiveTask<List<JobResult>> {
+        private final List<JobSettings> candidates;
+        private final int from;
+        private final int to;
+        private final int chunk;
+        private final long deadlineMillis;
+
+        SweepTask(List<JobSettings> candidates, int from, int to, int chunk, long deadlineMillis) {
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+            this.deadlineMillis = deadlineMillis;
+        }
+
+        @Override
+        protected List<JobResult> compute() {
+            if (to - from <= chunk) {
+                if (System.currentTimeMillis() > deadlineMillis) {
+                    throw new CancellationException("Sweep ran out of time");
+                }
+                BacktestEngine engine = new BacktestEngine(candidates.subList(from, to));
+                tape.replay(engine);
+                return engine.getResult().getJobs();
+            }
+
+            int middle = (from + to) >>> 1;
+            SweepTask left = new SweepTask(candidates, from, middle, chunk, deadlineMillis);
+            left.fork();
+            List<JobResult> results = new SweepTask(candidates, middle, to, chunk, deadlineMillis).compute();
+            results.addAll(left.join());
+            return results;
+        }
+    }
+}
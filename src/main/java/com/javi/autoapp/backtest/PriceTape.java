@@ -0,0 +1,117 @@
+package com.javi.autoapp.backtest;
+
+import com.javi.autoapp.client.model.CoinbaseTickerEvent;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import javax.websocket.MessageHandler;
+
+/**
+ * Price history flattened once into fixed width records of receive time, price and product index and
+ * mapped read only, so any number of threads can replay the same ticks without copying or decoding
+ * them again. Replay only uses absolute reads and a tick per call, the mapping itself is never
+ * repositioned. Product indexes are those of this process, tapes are not meant to outlive it.
+ */
+public class PriceTape implements TickSource, Closeable {
+    private static final int RECORD_BYTES = 24;
+    private static final int WRITE_BUFFER_BYTES = RECORD_BYTES * 4096;
+
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private final int records;
+
+    private PriceTape(Path file, MappedByteBuffer buffer) {
+        this.file = file;
+        this.buffer = buffer;
+        this.records = buffer.capacity() / RECORD_BYTES;
+    }
+
+    /**
+     * Records every tick of the source into a temporary file which is deleted on {@link #close()}.
+     * Ticks larger than a single mapping, about 89 million, are rejected.
+     */
+    public static PriceTape record(TickSource source) throws IOException {
+        Path file = Files.createTempFile("auto-app-", ".tape");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ByteBuffer records = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+            IOException[] failure = new IOException[1];
+            source.replay(tick -> {
+                if (failure[0] != null || !tick.isTicker()) {
+                    return;
+                }
+                records.putLong(tick.getReceiveTimeMillis());
+                records.putDouble(tick.getPrice());
+                records.putInt(tick.getProductIndex());
+                records.putInt(0);
+                if (!records.hasRemaining()) {
+                    failure[0] = flush(channel, records);
+                }
+            });
+            if (failure[0] == null) {
+                failure[0] = flush(channel, records);
+            }
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            if (channel.size() > (Integer.MAX_VALUE / RECORD_BYTES) * RECORD_BYTES) {
+                throw new IOException("Price history too large for a single tape: " + channel.size() + " bytes");
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new PriceTape(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    public int size() {
+        return records;
+    }
+
+    /**
+     * Replays the tape oldest first, safe to call from several threads at once.
+     */
+    @Override
+    public long replay(MessageHandler.Whole<CoinbaseTickerEvent> handler) {
+        CoinbaseTickerEvent event = new CoinbaseTickerEvent();
+        for (int record = 0, offset = 0; record < records; record++, offset += RECORD_BYTES) {
+            long receiveMillis = buffer.getLong(offset);
+            event.reset();
+            event.setPrice(buffer.getDouble(offset + 8));
+            event.setProductIndex(buffer.getInt(offset + 16));
+            event.setExchangeTimeMillis(receiveMillis);
+            event.setReceiveTimeMillis(receiveMillis);
+            handler.onMessage(event);
+        }
+        return records;
+    }
+
+    @Override
+    public void close() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private static IOException flush(FileChannel channel, ByteBuffer records) {
+        records.flip();
+        try {
+            while (records.hasRemaining()) {
+                channel.write(records);
+            }
+            return null;
+        } catch (IOException e) {
+            return e;
+        } finally {
+            records.clear();
+        }
+    }
+}
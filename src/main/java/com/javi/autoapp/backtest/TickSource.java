@@ -0,0 +1,16 @@
+package com.javi.autoapp.backtest;
+
+import com.javi.autoapp.client.model.CoinbaseTickerEvent;
+import java.io.IOException;
+import javax.websocket.MessageHandler;
+
+/**
+ * Replays price history as ticks with their receive time set, oldest first.
+ */
+@FunctionalInterface
+public interface TickSource {
+    /**
+     * @return number of ticks replayed
+     */
+    long replay(MessageHandler.Whole<CoinbaseTickerEvent> handler) throws IOException;
+}
@@ -0,0 +1,58 @@
+package com.javi.autoapp.client;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+/**
+ * Times every request until its response headers arrive, by method, the path template in the
+ * {@link #URI} attribute and status, and counts the requests in flight. Registered last so it sits
+ * closest to the connection and sees 429 responses before they are turned into errors.
+ */
+public class CoinbaseMetricsFilter implements ExchangeFilterFunction {
+    public static final String URI = CoinbaseMetricsFilter.class.getName() + ".uri";
+
+    private static final String UNKNOWN_URI = "other";
+
+    private final MeterRegistry meterRegistry;
+    private final AtomicInteger active = new AtomicInteger();
+
+    public CoinbaseMetricsFilter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.defer(() -> {
+            long startNanos = System.nanoTime();
+            active.incrementAndGet();
+            return next.exchange(request)
+                    .doOnSuccess(response -> record(request, response == null
+                            ? "NONE"
+                            : String.valueOf(response.statusCode().value()), startNanos))
+                    .doOnError(error -> record(request, error.getClass().getSimpleName(), startNanos))
+                    .doFinally(signal -> active.decrementAndGet());
+        });
+    }
+
+    private void record(ClientRequest request, String status, long startNanos) {
+        Timer.builder("autoapp.exchange.requests")
+                .description("Time from an exchange request being sent to its response")
+                .tags("method", request.method().name(),
+                        "uri", (String) request.attribute(URI).orElse(UNKNOWN_URI),
+                        "status", status)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+}
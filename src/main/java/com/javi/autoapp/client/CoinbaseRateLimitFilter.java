@@ -0,0 +1,42 @@
+package com.javi.autoapp.client;
+
+import java.util.concurrent.TimeUnit;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+/**
+ * Fails requests the exchange answered with 429 with a {@link RateLimitedException}, carrying the
+ * Retry-After seconds when the exchange sent them, so the caller can send them again rather than
+ * treating them as rejected.
+ */
+public class CoinbaseRateLimitFilter implements ExchangeFilterFunction {
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return next.exchange(request)
+                .flatMap(response -> {
+                    if (response.statusCode() != HttpStatus.TOO_MANY_REQUESTS) {
+                        return Mono.just(response);
+                    }
+                    long retryAfterMillis = retryAfterMillis(response.headers().asHttpHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+                    return response.bodyToMono(Void.class)
+                            .then(Mono.<ClientResponse>error(new RateLimitedException(retryAfterMillis)));
+                });
+    }
+
+    private static long retryAfterMillis(String retryAfter) {
+        if (retryAfter == null) {
+            return 0;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException e) {
+            return 0; // An HTTP date, left to the default pause
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.javi.autoapp.client;
+
+import com.javi.autoapp.util.SignatureTool;
+import java.net.URI;
+import java.time.Instant;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+/**
+ * Adds the {@code CB-ACCESS-*} headers to every request when it is sent, so the timestamp is taken
+ * after the rate limiter let the request out rather than when it was queued. The filter only sees the
+ * body inserter, so requests with a body put the bytes they send in the {@link #BODY} attribute.
+ */
+public class CoinbaseSigningFilter implements ExchangeFilterFunction {
+    public static final String BODY = CoinbaseSigningFilter.class.getName() + ".body";
+
+    private static final String CB_ACCESS_PASSPHRASE = "CB-ACCESS-PASSPHRASE";
+    private static final String CB_ACCESS_KEY = "CB-ACCESS-KEY";
+    private static final String CB_ACCESS_SIGN = "CB-ACCESS-SIGN";
+    private static final String CB_ACCESS_TIMESTAMP = "CB-ACCESS-TIMESTAMP";
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        // Deferred, the filter is applied when the request is built
+        return Mono.defer(() -> {
+            URI url = request.url();
+            String requestPath = url.getRawQuery() == null
+                    ? url.getRawPath()
+                    : url.getRawPath() + '?' + url.getRawQuery();
+            String timestamp = String.valueOf(Instant.now().getEpochSecond());
+            String signature = SignatureTool.sign(
+                    timestamp,
+                    request.method().name(),
+                    requestPath,
+                    (byte[]) request.attribute(BODY).orElse(null));
+            return next.exchange(ClientRequest.from(request)
+                    .headers(httpHeaders -> {
+                        httpHeaders.set(CB_ACCESS_SIGN, signature);
+                        httpHeaders.set(CB_ACCESS_TIMESTAMP, timestamp);
+                        httpHeaders.set(CB_ACCESS_PASSPHRASE, SignatureTool.PASSPHRASE);
+                        httpHeaders.set(CB_ACCESS_KEY, SignatureTool.KEY);
+                    }).build());
+        });
+    }
+}
@@ -0,0 +1,8 @@
+package com.javi.autoapp.client;
+
+import com.javi.autoapp.client.decoder.TickerEventDecoder;
+import javax.websocket.ClientEndpoint;
+
+@ClientEndpoint(decoders = {TickerEventDecoder.class})
+public class CoinbaseTickerEventWebSocket {
+}
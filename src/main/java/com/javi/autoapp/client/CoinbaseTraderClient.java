@@ -4,98 +4,128 @@ import static com.javi.autoapp.util.CoinbasePathConstants.END_QUERY_PARAM;
 import static com.javi.autoapp.util.CoinbasePathConstants.GET_ORDER_REQUEST_PATH;
 import static com.javi.autoapp.util.CoinbasePathConstants.GET_STATS_REQUEST_PATH;
 import static com.javi.autoapp.util.CoinbasePathConstants.GET_STATS_SLICES_REQUEST_PATH;
+import static com.javi.autoapp.util.CoinbasePathConstants.GET_TIME_REQUEST_PATH;
 import static com.javi.autoapp.util.CoinbasePathConstants.GRANULARITY;
 import static com.javi.autoapp.util.CoinbasePathConstants.GRANULARITY_QUERY_PARAM;
 import static com.javi.autoapp.util.CoinbasePathConstants.POST_ORDER_REQUEST_PATH;
 import static com.javi.autoapp.util.CoinbasePathConstants.START_QUERY_PARAM;
 
 import com.javi.autoapp.config.AppConfig;
-import com.javi.autoapp.util.SignatureTool;
-import io.github.resilience4j.ratelimiter.annotation.RateLimiter;
-import java.time.Duration;
-import java.time.Instant;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.ReadTimeoutException;
+import io.netty.handler.timeout.ReadTimeoutHandler;
 import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Mono;
+import reactor.ipc.netty.resources.PoolResources;
 
 @Slf4j
 @Service
 public class CoinbaseTraderClient {
-    private static final String RATE_LIMITER_NAME = "coinbaseClient";
-    private static final String CB_ACCESS_PASSPHRASE = "CB-ACCESS-PASSPHRASE";
-    private static final String CB_ACCESS_KEY = "CB-ACCESS-KEY";
-    private static final String CB_ACCESS_SIGN = "CB-ACCESS-SIGN";
-    private static final String CB_ACCESS_TIMESTAMP = "CB-ACCESS-TIMESTAMP";
+    public static final String TRIGGER_SEQUENCE_HEADER = "X-Trigger-Sequence";
 
     private final WebClient webClient;
     private final AppConfig appConfig;
 
-    public CoinbaseTraderClient(AppConfig appConfig) {
+    private final AtomicInteger openConnections = new AtomicInteger();
+
+    /**
+     * Requests share a fixed pool of {@code exchangePoolMaxConnections} kept alive between requests,
+     * with connect and read timeouts. A read timeout fails the request with a {@link TimeoutException},
+     * like the order pipeline's timeout, since the exchange may have processed it, and it is never
+     * shorter than {@code orderRequestTimeoutSeconds}. Open connections, requests in flight and their
+     * share of the pool are exported as gauges.
+     */
+    public CoinbaseTraderClient(AppConfig appConfig, MeterRegistry meterRegistry) {
         this.appConfig = appConfig;
+        CoinbaseMetricsFilter metricsFilter = new CoinbaseMetricsFilter(meterRegistry);
+        int maxConnections = Math.max(1, appConfig.getExchangePoolMaxConnections());
+        meterRegistry.gauge("autoapp.exchange.pool.connections", openConnections);
+        meterRegistry.gauge("autoapp.exchange.pool.active", metricsFilter, CoinbaseMetricsFilter::getActive);
+        meterRegistry.gauge("autoapp.exchange.pool.utilization", metricsFilter,
+                filter -> filter.getActive() / (double) maxConnections);
+
+        long readTimeoutMillis = appConfig.getExchangeReadTimeoutMillis();
+        long orderTimeoutMillis = TimeUnit.SECONDS.toMillis(appConfig.getOrderRequestTimeoutSeconds());
+        if (readTimeoutMillis < orderTimeoutMillis) {
+            log.warn("exchangeReadTimeoutMillis {} is shorter than orderRequestTimeoutSeconds, using {}",
+                    readTimeoutMillis, orderTimeoutMillis);
+            readTimeoutMillis = orderTimeoutMillis;
+        }
+        long readTimeout = readTimeoutMillis;
+
+        ReactorClientHttpConnector connector = new ReactorClientHttpConnector(options -> options
+                .poolResources(PoolResources.fixed(
+                        "coinbase", maxConnections, appConfig.getExchangePoolAcquireTimeoutMillis()))
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, appConfig.getExchangeConnectTimeoutMillis())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .afterChannelInit(channel -> {
+                    openConnections.incrementAndGet();
+                    channel.closeFuture().addListener(future -> openConnections.decrementAndGet());
+                })
+                .afterNettyContextInit(context -> context.addHandlerLast(new ReadTimeoutHandler(
+                        readTimeout, TimeUnit.MILLISECONDS))));
         webClient = WebClient
                 .builder()
+                .clientConnector(connector)
                 .defaultHeaders(httpHeaders -> {
                     httpHeaders.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
                     httpHeaders.setContentType(MediaType.APPLICATION_JSON);
-                }).build();
+                })
+                .filter(new CoinbaseSigningFilter())
+                .filter(new CoinbaseRateLimitFilter())
+                .filter((request, next) -> next.exchange(request).onErrorMap(
+                        ReadTimeoutException.class,
+                        error -> new TimeoutException("No response from the exchange in " + readTimeout + " ms")))
+                .filter(metricsFilter)
+                .build();
     }
 
-    @RateLimiter(name = RATE_LIMITER_NAME)
-    public Mono<ClientResponse> trade(
-            String timestamp,
-            String signature,
-            String body) {
+    /**
+     * Places an order. With {@code sendTriggerSequence} the sequence of the tick the order was decided
+     * on is sent in a header, so the exchange simulator can time the order from that tick.
+     */
+    public Mono<ClientResponse> trade(byte[] body, long triggerSequence) {
         return webClient.post()
                 .uri(appConfig.getCoinbaseApiUri() + POST_ORDER_REQUEST_PATH)
-                .headers(httpHeaders -> {
-                    httpHeaders.set(CB_ACCESS_SIGN, signature);
-                    httpHeaders.set(CB_ACCESS_TIMESTAMP, timestamp);
-                    httpHeaders.set(CB_ACCESS_PASSPHRASE, SignatureTool.PASSPHRASE);
-                    httpHeaders.set(CB_ACCESS_KEY, SignatureTool.KEY);
-                }).body(Mono.just(body), String.class).exchange();
+                .attribute(CoinbaseMetricsFilter.URI, POST_ORDER_REQUEST_PATH)
+                .attribute(CoinbaseSigningFilter.BODY, body)
+                .headers(headers -> {
+                    if (appConfig.isSendTriggerSequence() && triggerSequence > 0) {
+                        headers.set(TRIGGER_SEQUENCE_HEADER, Long.toString(triggerSequence));
+                    }
+                })
+                .syncBody(body)
+                .exchange();
     }
 
-    @RateLimiter(name = RATE_LIMITER_NAME)
-    public Mono<ClientResponse> getOrderStatus(
-            String timestamp,
-            String signature,
-            String id) {
+    public Mono<ClientResponse> getOrderStatus(String id) {
         return webClient.get()
                 .uri(appConfig.getCoinbaseApiUri() + GET_ORDER_REQUEST_PATH, id)
-                .headers(httpHeaders -> {
-                    httpHeaders.set(CB_ACCESS_SIGN, signature);
-                    httpHeaders.set(CB_ACCESS_TIMESTAMP, timestamp);
-                    httpHeaders.set(CB_ACCESS_PASSPHRASE, SignatureTool.PASSPHRASE);
-                    httpHeaders.set(CB_ACCESS_KEY, SignatureTool.KEY);
-                }).exchange();
+                .attribute(CoinbaseMetricsFilter.URI, GET_ORDER_REQUEST_PATH)
+                .exchange();
     }
 
-    @RateLimiter(name = RATE_LIMITER_NAME)
-    public Mono<ClientResponse> getDayTradeStatus(
-            String timestamp,
-            String signature,
-            String productId) {
+    public Mono<ClientResponse> getDayTradeStatus(String productId) {
         return webClient.get()
                 .uri(appConfig.getCoinbaseApiUri() + GET_STATS_REQUEST_PATH, productId)
-                .headers(httpHeaders -> {
-                    httpHeaders.set(CB_ACCESS_SIGN, signature);
-                    httpHeaders.set(CB_ACCESS_TIMESTAMP, timestamp);
-                    httpHeaders.set(CB_ACCESS_PASSPHRASE, SignatureTool.PASSPHRASE);
-                    httpHeaders.set(CB_ACCESS_KEY, SignatureTool.KEY);
-                }).exchange();
+                .attribute(CoinbaseMetricsFilter.URI, GET_STATS_REQUEST_PATH)
+                .exchange();
     }
 
-    @RateLimiter(name = RATE_LIMITER_NAME)
     public Mono<ClientResponse> getDayTradeStatusSlices(
             String start,
             String end,
-            String timestamp,
-            String signature,
             String productId) {
         String uri = UriComponentsBuilder.fromUriString(appConfig.getCoinbaseApiUri())
                 .path(GET_STATS_SLICES_REQUEST_PATH)
@@ -106,11 +136,17 @@ public class CoinbaseTraderClient {
                 .toUriString();
         return webClient.get()
                 .uri(uri)
-                .headers(httpHeaders -> {
-                    httpHeaders.set(CB_ACCESS_SIGN, signature);
-                    httpHeaders.set(CB_ACCESS_TIMESTAMP, timestamp);
-                    httpHeaders.set(CB_ACCESS_PASSPHRASE, SignatureTool.PASSPHRASE);
-                    httpHeaders.set(CB_ACCESS_KEY, SignatureTool.KEY);
-                }).exchange();
+                .attribute(CoinbaseMetricsFilter.URI, GET_STATS_SLICES_REQUEST_PATH)
+                .exchange();
+    }
+
+    /**
+     * Exchange time, the cheapest request there is, used to keep pooled connections open.
+     */
+    public Mono<ClientResponse> getTime() {
+        return webClient.get()
+                .uri(appConfig.getCoinbaseApiUri() + GET_TIME_REQUEST_PATH)
+                .attribute(CoinbaseMetricsFilter.URI, GET_TIME_REQUEST_PATH)
+                .exchange();
     }
 }
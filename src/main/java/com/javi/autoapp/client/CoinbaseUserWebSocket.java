@@ -0,0 +1,7 @@
+package com.javi.autoapp.client;
+
+import javax.websocket.ClientEndpoint;
+
+@ClientEndpoint
+public class CoinbaseUserWebSocket {
+}
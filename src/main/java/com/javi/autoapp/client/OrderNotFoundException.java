@@ -0,0 +1,10 @@
+package com.javi.autoapp.client;
+
+/**
+ * The exchange answered 404 for an order status request, it has no order with the client order ID.
+ */
+public class OrderNotFoundException extends RuntimeException {
+    public OrderNotFoundException(String orderId) {
+        super("Order not found: " + orderId);
+    }
+}
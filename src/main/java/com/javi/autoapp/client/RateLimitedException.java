@@ -0,0 +1,18 @@
+package com.javi.autoapp.client;
+
+/**
+ * The exchange answered 429, the request was not processed and can be sent again after
+ * {@link #getRetryAfterMillis()}, or 0 when the exchange did not say.
+ */
+public class RateLimitedException extends RuntimeException {
+    private final long retryAfterMillis;
+
+    public RateLimitedException(long retryAfterMillis) {
+        super("Rate limited by the exchange");
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,125 @@
+package com.javi.autoapp.client.decoder;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.javi.autoapp.client.model.CoinbaseTicker;
+import com.javi.autoapp.client.model.CoinbaseTickerEvent;
+import com.javi.autoapp.util.AsciiParser;
+import com.javi.autoapp.util.ProductRegistry;
+import java.io.IOException;
+import javax.websocket.DecodeException;
+import javax.websocket.Decoder;
+import javax.websocket.EndpointConfig;
+
+/**
+ * Token level decoder for the ticker channel. Frames are read with a shared {@link JsonFactory} straight
+ * into a single {@link CoinbaseTickerEvent} owned by this decoder, so the returned event is only valid
+ * until the next frame is decoded. Frames other than tickers (subscriptions, heartbeats) are returned
+ * as an empty event without reading past their type.
+ */
+public class TickerEventDecoder implements Decoder.Text<CoinbaseTickerEvent> {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final String TYPE = "type";
+    private static final String PRODUCT_ID = "product_id";
+    private static final String PRICE = "price";
+    private static final String LAST_SIZE = "last_size";
+    private static final String SEQUENCE = "sequence";
+    private static final String TIME = "time";
+
+    private final CoinbaseTickerEvent event = new CoinbaseTickerEvent();
+
+    @Override
+    public CoinbaseTickerEvent decode(String s) throws DecodeException {
+        event.reset();
+        try (JsonParser parser = JSON_FACTORY.createParser(s)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return event;
+            }
+
+            boolean ticker = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case TYPE:
+                        if (!isTickerType(parser)) {
+                            event.reset();
+                            return event;
+                        }
+                        ticker = true;
+                        break;
+                    case PRODUCT_ID:
+                        event.setProductIndex(ProductRegistry.indexOf(
+                                parser.getTextCharacters(),
+                                parser.getTextOffset(),
+                                parser.getTextLength()));
+                        break;
+                    case PRICE:
+                        event.setPrice(AsciiParser.parseDecimal(
+                                parser.getTextCharacters(),
+                                parser.getTextOffset(),
+                                parser.getTextLength()));
+                        break;
+                    case LAST_SIZE:
+                        event.setSize(AsciiParser.parseDecimal(
+                                parser.getTextCharacters(),
+                                parser.getTextOffset(),
+                                parser.getTextLength()));
+                        break;
+                    case SEQUENCE:
+                        event.setSequence(parser.getLongValue());
+                        break;
+                    case TIME:
+                        event.setExchangeTimeMillis(AsciiParser.parseIsoInstantMillis(
+                                parser.getTextCharacters(),
+                                parser.getTextOffset(),
+                                parser.getTextLength()));
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+
+            if (!ticker) {
+                event.reset();
+            }
+            return event;
+        } catch (IOException e) {
+            throw new DecodeException(s, e.getMessage(), e);
+        }
+    }
+
+    private boolean isTickerType(JsonParser parser) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.VALUE_STRING) {
+            return false;
+        }
+        char[] buffer = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        int length = parser.getTextLength();
+        if (length != CoinbaseTicker.TICKER_TYPE.length()) {
+            return false;
+        }
+        for (int index = 0; index < length; index++) {
+            if (buffer[offset + index] != CoinbaseTicker.TICKER_TYPE.charAt(index)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean willDecode(String s) {
+        return (s != null);
+    }
+
+    @Override
+    public void init(EndpointConfig endpointConfig) {
+
+    }
+
+    @Override
+    public void destroy() {
+
+    }
+}
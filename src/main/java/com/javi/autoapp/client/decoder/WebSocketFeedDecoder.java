@@ -8,9 +8,10 @@ import javax.websocket.Decoder;
 import javax.websocket.EndpointConfig;
 
 public class WebSocketFeedDecoder implements Decoder.Text<CoinbaseTicker> {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
     @Override
     public CoinbaseTicker decode(String s) throws DecodeException {
-        ObjectMapper mapper = new ObjectMapper();
         try {
             return mapper.readValue(s, CoinbaseTicker.class);
         } catch (IOException e) {
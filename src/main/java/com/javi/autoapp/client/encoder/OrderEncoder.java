@@ -0,0 +1,73 @@
+package com.javi.autoapp.client.encoder;
+
+import com.javi.autoapp.client.model.CoinbaseOrderRequest;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes market orders as the JSON body of the orders endpoint into a buffer owned by this encoder, then
+ * copies it once into the bytes that are both signed and sent. Amounts are written like
+ * {@link String#valueOf(double)} without creating the String. Not thread safe.
+ */
+public class OrderEncoder {
+    private static final int INITIAL_CAPACITY = 192;
+
+    private final StringBuilder buffer = new StringBuilder(INITIAL_CAPACITY);
+
+    /**
+     * @param amount the size to sell, or the funds to spend on a buy
+     */
+    public EncodedOrder encode(String clientOid, String productId, boolean sell, double amount) {
+        buffer.setLength(0);
+        buffer.append("{\"type\":\"market\"");
+        appendField("client_oid", clientOid);
+        appendField("side", sell ? CoinbaseOrderRequest.SELL : CoinbaseOrderRequest.BUY);
+        buffer.append(",\"").append(sell ? "size" : "funds").append("\":\"").append(amount).append('"');
+        appendField("product_id", productId);
+        buffer.append('}');
+
+        byte[] bytes = new byte[buffer.length()];
+        for (int index = 0; index < bytes.length; index++) {
+            char character = buffer.charAt(index);
+            if (character > 0x7F) {
+                return new EncodedOrder(buffer.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            bytes[index] = (byte) character;
+        }
+        return new EncodedOrder(bytes);
+    }
+
+    private void appendField(String name, String value) {
+        buffer.append(",\"").append(name).append("\":\"");
+        for (int index = 0; index < value.length(); index++) {
+            char character = value.charAt(index);
+            if (character == '"' || character == '\\') {
+                buffer.append('\\').append(character);
+            } else if (character < 0x20) {
+                buffer.append(String.format("\\u%04x", (int) character));
+            } else {
+                buffer.append(character);
+            }
+        }
+        buffer.append('"');
+    }
+
+    /**
+     * The encoded body, decoded back to text only when it is logged.
+     */
+    public static final class EncodedOrder {
+        private final byte[] bytes;
+
+        private EncodedOrder(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
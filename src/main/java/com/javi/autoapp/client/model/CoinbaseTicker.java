@@ -7,7 +7,15 @@ import lombok.Data;
 @Data
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class CoinbaseTicker {
+    public static final String TICKER_TYPE = "ticker";
+
+    private String type;
     private String price;
+    private long sequence;
+    private String time;
+
+    @JsonProperty("last_size")
+    private String lastSize;
 
     @JsonProperty("product_id")
     private String productId;
@@ -0,0 +1,31 @@
+package com.javi.autoapp.client.model;
+
+import com.javi.autoapp.util.ProductRegistry;
+import lombok.Data;
+
+@Data
+public class CoinbaseTickerEvent {
+    public static final int NO_PRODUCT = ProductRegistry.UNKNOWN;
+
+    private int productIndex = NO_PRODUCT;
+    private double price = Double.NaN;
+    private double size = Double.NaN;
+    private long sequence = 0;
+    private long exchangeTimeMillis = 0;
+
+    // Set when replaying recorded ticks, live ticks are received now
+    private long receiveTimeMillis = 0;
+
+    public boolean isTicker() {
+        return productIndex != NO_PRODUCT && !Double.isNaN(price);
+    }
+
+    public void reset() {
+        productIndex = NO_PRODUCT;
+        price = Double.NaN;
+        size = Double.NaN;
+        sequence = 0;
+        exchangeTimeMillis = 0;
+        receiveTimeMillis = 0;
+    }
+}
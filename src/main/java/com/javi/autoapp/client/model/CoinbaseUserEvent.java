@@ -0,0 +1,31 @@
+package com.javi.autoapp.client.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+/**
+ * Message of the authenticated user channel. Only received messages carry the client order ID, later
+ * messages for the order only have the exchange's order ID.
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class CoinbaseUserEvent {
+    public static final String RECEIVED = "received";
+    public static final String DONE = "done";
+    public static final String ERROR = "error";
+
+    private String type;
+
+    @JsonProperty("order_id")
+    private String orderId;
+
+    @JsonProperty("client_oid")
+    private String clientOid;
+
+    @JsonProperty("product_id")
+    private String productId;
+
+    private String reason;
+    private String message;
+}
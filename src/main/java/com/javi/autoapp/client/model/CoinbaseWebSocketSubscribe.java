@@ -3,6 +3,7 @@ package com.javi.autoapp.client.model;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import lombok.Data;
@@ -11,7 +12,9 @@ import lombok.Data;
 @JsonInclude(Include.NON_EMPTY)
 public class CoinbaseWebSocketSubscribe {
     public static final List<String> TICKER_CHANNEL = Collections.singletonList("ticker");
+    public static final List<String> TICKER_HEARTBEAT_CHANNELS = Arrays.asList("ticker", "heartbeat");
     public static final List<String> FULL_CHANNEL = Collections.singletonList("full");
+    public static final List<String> USER_HEARTBEAT_CHANNELS = Arrays.asList("user", "heartbeat");
     public static final String SUBSCRIBE = "subscribe";
     public static final String UNSUBSCRIBE = "unsubscribe";
 
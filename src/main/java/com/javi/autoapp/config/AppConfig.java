@@ -15,4 +15,103 @@ public class AppConfig {
 
     @Value("${coinbaseApiUri}")
     private String coinbaseApiUri;
+
+    @Value("${streamingTickerDecoder:true}")
+    private boolean streamingTickerDecoder;
+
+    @Value("${tickDrivenEvaluation:true}")
+    private boolean tickDrivenEvaluation;
+
+    @Value("${housekeepingIntervalSeconds:30}")
+    private long housekeepingIntervalSeconds;
+
+    @Value("${evaluationThreads:4}")
+    private int evaluationThreads;
+
+    @Value("${marketDataHeartbeatTimeoutSeconds:10}")
+    private long marketDataHeartbeatTimeoutSeconds;
+
+    @Value("${marketDataMaxBackoffSeconds:60}")
+    private long marketDataMaxBackoffSeconds;
+
+    @Value("${marketDataSnapshotPath:}")
+    private String marketDataSnapshotPath;
+
+    @Value("${marketDataSnapshotIntervalSeconds:30}")
+    private long marketDataSnapshotIntervalSeconds;
+
+    @Value("${marketDataSnapshotMaxAgeSeconds:3600}")
+    private long marketDataSnapshotMaxAgeSeconds;
+
+    @Value("${tickJournalEnabled:false}")
+    private boolean tickJournalEnabled;
+
+    @Value("${tickJournalDirectory:}")
+    private String tickJournalDirectory;
+
+    @Value("${tickJournalSegmentMegabytes:64}")
+    private long tickJournalSegmentMegabytes;
+
+    @Value("${tickJournalSegmentMinutes:60}")
+    private long tickJournalSegmentMinutes;
+
+    @Value("${tickJournalRetentionMegabytes:1024}")
+    private long tickJournalRetentionMegabytes;
+
+    @Value("${tickJournalRetentionHours:48}")
+    private long tickJournalRetentionHours;
+
+    @Value("${sweepParallelism:2}")
+    private int sweepParallelism;
+
+    @Value("${sweepMaxCandidates:10000}")
+    private int sweepMaxCandidates;
+
+    @Value("${sweepTimeoutSeconds:300}")
+    private long sweepTimeoutSeconds;
+
+    @Value("${orderPipelineMaxInFlight:3}")
+    private int orderPipelineMaxInFlight;
+
+    @Value("${orderPipelineQueueCapacity:1000}")
+    private int orderPipelineQueueCapacity;
+
+    @Value("${orderRequestTimeoutSeconds:10}")
+    private long orderRequestTimeoutSeconds;
+
+    @Value("${exchangeRequestsPerSecond:3}")
+    private double exchangeRequestsPerSecond;
+
+    @Value("${exchangePoolMaxConnections:8}")
+    private int exchangePoolMaxConnections;
+
+    @Value("${exchangePoolAcquireTimeoutMillis:5000}")
+    private long exchangePoolAcquireTimeoutMillis;
+
+    @Value("${exchangeConnectTimeoutMillis:3000}")
+    private int exchangeConnectTimeoutMillis;
+
+    @Value("${exchangeReadTimeoutMillis:10000}")
+    private long exchangeReadTimeoutMillis;
+
+    @Value("${exchangeKeepAliveSeconds:30}")
+    private long exchangeKeepAliveSeconds;
+
+    @Value("${exchangeWarmConnections:2}")
+    private int exchangeWarmConnections;
+
+    @Value("${userChannelEnabled:true}")
+    private boolean userChannelEnabled;
+
+    @Value("${pendingOrderReconcileSeconds:300}")
+    private long pendingOrderReconcileSeconds;
+
+    @Value("${statsCacheTtlSeconds:60}")
+    private long statsCacheTtlSeconds;
+
+    @Value("${statsRefreshAheadSeconds:15}")
+    private long statsRefreshAheadSeconds;
+
+    @Value("${sendTriggerSequence:false}")
+    private boolean sendTriggerSequence;
 }
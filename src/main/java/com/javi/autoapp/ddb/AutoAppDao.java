@@ -4,7 +4,12 @@ import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
 import com.javi.autoapp.ddb.model.JobSettings;
 import com.javi.autoapp.ddb.model.JobStatus;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cache.annotation.CacheConfig;
@@ -18,6 +23,11 @@ import org.springframework.stereotype.Component;
 public class AutoAppDao {
     private final DynamoDBMapper mapper;
 
+    // Copy of each job last saved in this process, which every other copy of the job is out of date
+    // against, and the ones saved with saveJobLater and not written yet, by job ID
+    private final Map<String, JobSettings> liveJobs = new ConcurrentHashMap<>();
+    private final Map<String, JobSettings> unsavedJobs = new ConcurrentHashMap<>();
+
     public JobSettings getJobSettings(String jobId) {
         JobSettings job = new JobSettings();
         job.setJobId(jobId);
@@ -32,12 +42,101 @@ public class AutoAppDao {
         return mapper.query(JobSettings.class, query);
     }
 
+    /**
+     * Latest copy of the job, the one last saved in this process or else the stored one. Changes to a
+     * job must start from this copy so they keep the changes not written yet.
+     */
+    public JobSettings getCurrentJob(String jobId) {
+        JobSettings live = liveJobs.get(jobId);
+        return live != null ? live : getJobSettings(jobId);
+    }
+
+    /**
+     * Latest copy of a loaded job, the one last saved in this process or else the loaded one.
+     */
+    public JobSettings getCurrentJob(JobSettings loaded) {
+        return liveJobs.getOrDefault(loaded.getJobId(), loaded);
+    }
+
+    /**
+     * Whether another copy of the job was saved since this one was loaded. Saves of a stale copy are
+     * dropped, so a copy held from before a change cannot revert it.
+     */
+    public boolean isStale(JobSettings job) {
+        JobSettings live = liveJobs.get(job.getJobId());
+        return live != null && live != job;
+    }
+
+    /**
+     * Writes the job now, replacing any version waiting to be written.
+     */
     public void startOrUpdateJob(JobSettings job) {
-        mapper.save(job);
+        if (dropStale(job)) {
+            return;
+        }
+        liveJobs.put(job.getJobId(), job);
+        unsavedJobs.remove(job.getJobId());
+        writeJob(job);
+    }
+
+    /**
+     * Keeps the job to be written by the next {@link #flushJobs} that includes it, so a job changed
+     * many times between flushes is written once. Until then the stored copy is out of date, callers
+     * loading jobs should prefer {@link #getCurrentJob}.
+     */
+    public void saveJobLater(JobSettings job) {
+        if (dropStale(job)) {
+            return;
+        }
+        liveJobs.put(job.getJobId(), job);
+        unsavedJobs.put(job.getJobId(), job);
+    }
+
+    /**
+     * Writes the job now if it has changes waiting to be written, for changes that must be stored
+     * before acting on them.
+     */
+    public void flushJob(JobSettings job) {
+        JobSettings unsaved = unsavedJobs.remove(job.getJobId());
+        if (unsaved != null) {
+            writeJob(unsaved);
+        }
+    }
+
+    /**
+     * Writes the waiting changes of the given jobs in batches. Jobs whose batch failed are kept for the
+     * next flush unless they were saved again meanwhile.
+     *
+     * @return number of jobs written
+     */
+    public int flushJobs(Collection<JobSettings> jobs) {
+        List<JobSettings> batch = new ArrayList<>();
+        for (JobSettings job : jobs) {
+            JobSettings unsaved = unsavedJobs.remove(job.getJobId());
+            if (unsaved != null) {
+                batch.add(unsaved);
+            }
+        }
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        List<DynamoDBMapper.FailedBatch> failed = writeJobs(batch);
+        if (!failed.isEmpty()) {
+            log.error("Failed to write {} batches of jobs, retrying on the next flush. Error: {}",
+                    failed.size(), failed.get(0).getException().getMessage());
+            batch.stream()
+                    .filter(job -> !isStale(job))
+                    .forEach(job -> unsavedJobs.putIfAbsent(job.getJobId(), job));
+            return 0;
+        }
+        return batch.size();
     }
 
     public void deleteJob(JobSettings job) {
-        mapper.delete(job);
+        liveJobs.remove(job.getJobId());
+        unsavedJobs.remove(job.getJobId());
+        removeJob(job);
     }
 
     public List<JobStatus> getJobStatuses() {
@@ -56,5 +155,31 @@ public class AutoAppDao {
         mapper.save(status);
     }
 
+    @PreDestroy
+    public void flushAllJobs() {
+        int written = flushJobs(new ArrayList<>(unsavedJobs.values()));
+        if (written > 0) {
+            log.info("Wrote {} jobs on shutdown", written);
+        }
+    }
 
+    private boolean dropStale(JobSettings job) {
+        if (isStale(job)) {
+            log.warn("Dropping changes to an out of date copy of job ID: {}", job.getJobId());
+            return true;
+        }
+        return false;
+    }
+
+    protected void writeJob(JobSettings job) {
+        mapper.save(job);
+    }
+
+    protected List<DynamoDBMapper.FailedBatch> writeJobs(List<JobSettings> jobs) {
+        return mapper.batchSave(jobs);
+    }
+
+    protected void removeJob(JobSettings job) {
+        mapper.delete(job);
+    }
 }
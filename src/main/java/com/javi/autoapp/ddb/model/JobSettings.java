@@ -28,11 +28,18 @@ import static com.javi.autoapp.ddb.util.AutoAppDaoConstants.TRADE_NOW;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBAttribute;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIgnore;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBRangeKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
+import com.javi.autoapp.util.ProductRegistry;
 import java.util.UUID;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
 
 @DynamoDBTable(tableName = AUTO_APP_TABLE_NAME)
 @Data
@@ -51,6 +58,12 @@ public class JobSettings {
     @DynamoDBAttribute(attributeName = PRODUCT_ID)
     private String productId = "";
 
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private int productIndex = ProductRegistry.UNKNOWN;
+
     @DynamoDBAttribute(attributeName = SELL)
     private boolean sell = false;
 
@@ -107,4 +120,14 @@ public class JobSettings {
 
     @DynamoDBAttribute(attributeName = INIT)
     private boolean init = true;
+
+    public void setProductId(String productId) {
+        this.productId = productId;
+        this.productIndex = ProductRegistry.indexOf(productId);
+    }
+
+    @DynamoDBIgnore
+    public int getProductIndex() {
+        return productIndex;
+    }
 }
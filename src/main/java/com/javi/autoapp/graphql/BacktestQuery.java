@@ -0,0 +1,111 @@
+package com.javi.autoapp.graphql;
+
+import com.javi.autoapp.backtest.BacktestResult.JobResult;
+import com.javi.autoapp.backtest.ParameterSweep;
+import com.javi.autoapp.backtest.PriceTape;
+import com.javi.autoapp.config.AppConfig;
+import com.javi.autoapp.ddb.model.JobSettings;
+import com.javi.autoapp.graphql.type.Currency;
+import com.javi.autoapp.journal.TickJournalReader;
+import graphql.kickstart.tools.GraphQLQueryResolver;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sweeps run one at a time on a pool of {@code sweepParallelism} workers shared by all queries, off the
+ * GraphQL request thread, and give up after {@code sweepTimeoutSeconds}.
+ */
+@Slf4j
+@Component
+public class BacktestQuery implements GraphQLQueryResolver {
+    private final AppConfig appConfig;
+    private final ForkJoinPool pool;
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    public BacktestQuery(AppConfig appConfig) {
+        this.appConfig = appConfig;
+        this.pool = new ForkJoinPool(Math.max(1, appConfig.getSweepParallelism()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    public CompletableFuture<List<JobResult>> getSweep(
+            Currency currency,
+            String from,
+            String to,
+            List<Double> percentageYieldThresholds,
+            List<Double> totalPercentageYieldThresholds,
+            List<Double> maximumLoses,
+            List<Integer> precisions,
+            boolean protectUsd,
+            double funds,
+            int top) {
+        if (appConfig.getTickJournalDirectory().isEmpty()) {
+            throw new IllegalStateException("No tick journal directory configured to sweep over.");
+        }
+
+        JobSettings template = new JobSettings();
+        template.setProductId(currency.getLabel());
+        template.setProtectUsd(protectUsd);
+        template.setFunds(funds);
+        template.setStartingFundsUsd(funds);
+
+        ParameterSweep.Grid grid = new ParameterSweep.Grid();
+        grid.setPercentageYieldThresholds(percentageYieldThresholds);
+        grid.setTotalPercentageYieldThresholds(totalPercentageYieldThresholds);
+        grid.setMaximumLoses(maximumLoses);
+        grid.setPrecisions(precisions);
+        List<JobSettings> candidates = ParameterSweep.grid(template, grid);
+        if (candidates.size() > appConfig.getSweepMaxCandidates()) {
+            throw new IllegalStateException("Will not sweep more than " + appConfig.getSweepMaxCandidates() + " combinations, got " + candidates.size() + ".");
+        }
+
+        long fromMillis = Instant.parse(from).toEpochMilli();
+        long toMillis = Instant.parse(to).toEpochMilli();
+        if (!sweeping.compareAndSet(false, true)) {
+            throw new IllegalStateException("A sweep is already running, try again once it is done.");
+        }
+
+        CompletableFuture<List<JobResult>> result;
+        try {
+            result = CompletableFuture.supplyAsync(() -> sweep(template, candidates, fromMillis, toMillis, top), pool);
+        } catch (RuntimeException error) {
+            sweeping.set(false);
+            throw error;
+        }
+        return result.whenComplete((results, error) -> sweeping.set(false));
+    }
+
+    /**
+     * Runs on a pool worker, the replays fork onto the rest of the pool.
+     */
+    private List<JobResult> sweep(JobSettings template, List<JobSettings> candidates, long fromMillis, long toMillis, int top) {
+        long startMillis = System.currentTimeMillis();
+        TickJournalReader reader = new TickJournalReader(Paths.get(appConfig.getTickJournalDirectory()));
+        int productIndex = template.getProductIndex();
+        try (PriceTape tape = PriceTape.record(handler -> reader.replay(fromMillis, toMillis, tick -> {
+            if (tick.getProductIndex() == productIndex) {
+                handler.onMessage(tick);
+            }
+        }))) {
+            log.info("Sweeping {} combinations for {} over {} ticks", candidates.size(), template.getProductId(), tape.size());
+            long remainingMillis = TimeUnit.SECONDS.toMillis(appConfig.getSweepTimeoutSeconds()) - (System.currentTimeMillis() - startMillis);
+            return new ParameterSweep(tape, pool).run(candidates, top, Math.max(0, remainingMillis));
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        }
+    }
+}
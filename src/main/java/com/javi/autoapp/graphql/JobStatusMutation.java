@@ -6,6 +6,7 @@ import com.javi.autoapp.ddb.AutoAppDao;
 import com.javi.autoapp.ddb.model.JobSettings;
 import com.javi.autoapp.graphql.type.Currency;
 import com.javi.autoapp.ddb.model.JobStatus;
+import com.javi.autoapp.service.AutoTradingService;
 import com.javi.autoapp.util.CacheHelper;
 import graphql.GraphQLError;
 import graphql.GraphqlErrorBuilder;
@@ -15,6 +16,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -29,6 +31,7 @@ public class JobStatusMutation implements GraphQLMutationResolver {
     private static final double MINIMUM_PERCENTAGE_YIELD = 1.01;
     private final CacheManager cacheManager;
     private final AutoAppDao autoAppDao;
+    private final AutoTradingService autoTradingService;
 
     public JobStatus createJob(
             Currency currency,
@@ -84,37 +87,36 @@ public class JobStatusMutation implements GraphQLMutationResolver {
             Optional<Boolean> protectUsd,
             Optional<String> expires,
             Optional<Boolean> tradeNow) throws IllegalStateException {
-        // Job settings
-        JobSettings settings = autoAppDao.getJobSettings(jobID);
-        if (settings == null) {
-            throw new IllegalStateException("Unable to find specified job.");
-        }
-
         if (percentageYieldThreshold.isPresent() && percentageYieldThreshold.get() < MINIMUM_PERCENTAGE_YIELD) {
             throw new IllegalStateException("Will not trade less than " + MINIMUM_PERCENTAGE_YIELD + " yield. Anything less will result in losses.");
         }
 
-        JobStatus status = autoAppDao.getJobStatus(jobID);
-        increaseFundsBy.ifPresent(funds -> {
-            if (settings.isActive() && !settings.isPending() && !settings.isSell()) {
-                settings.setStartingFundsUsd(settings.getStartingFundsUsd() + funds);
-                settings.setFunds(settings.getFunds() + funds);
-                status.setStartingFundsUsd(settings.getStartingFundsUsd());
-                status.setCurrentFundsUsd(settings.getFunds());
-                status.setCurrentValueUsd(settings.getFunds());
-                autoAppDao.updateJobStatus(status);
-            } else {
-                settings.setIncreaseFundsBy(settings.getIncreaseFundsBy() + funds);
-            }
-        });
-        percentageYieldThreshold.ifPresent(settings::setPercentageYieldThreshold);
-        precision.ifPresent(settings::setPrecision);
-        totalPercentageYieldThreshold.ifPresent(settings::setTotalPercentageYieldThreshold);
-        maximumLoses.ifPresent(settings::setMaximumLoses);
-        protectUsd.ifPresent(settings::setProtectUsd);
-        expires.ifPresent(settings::setExpires);
-        tradeNow.ifPresent(settings::setTradeNow);
-        autoAppDao.startOrUpdateJob(settings);
+        // Job settings, changed on the job's owner thread starting from its latest copy
+        JobSettings settings = autoTradingService.updateJob(jobID, job -> {
+            increaseFundsBy.ifPresent(funds -> {
+                if (job.isActive() && !job.isPending() && !job.isSell()) {
+                    job.setStartingFundsUsd(job.getStartingFundsUsd() + funds);
+                    job.setFunds(job.getFunds() + funds);
+                    JobStatus status = autoAppDao.getJobStatus(jobID);
+                    status.setStartingFundsUsd(job.getStartingFundsUsd());
+                    status.setCurrentFundsUsd(job.getFunds());
+                    status.setCurrentValueUsd(job.getFunds());
+                    autoAppDao.updateJobStatus(status);
+                } else {
+                    job.setIncreaseFundsBy(job.getIncreaseFundsBy() + funds);
+                }
+            });
+            percentageYieldThreshold.ifPresent(job::setPercentageYieldThreshold);
+            precision.ifPresent(job::setPrecision);
+            totalPercentageYieldThreshold.ifPresent(job::setTotalPercentageYieldThreshold);
+            maximumLoses.ifPresent(job::setMaximumLoses);
+            protectUsd.ifPresent(job::setProtectUsd);
+            expires.ifPresent(job::setExpires);
+            tradeNow.ifPresent(job::setTradeNow);
+        }).join();
+        if (settings == null) {
+            throw new IllegalStateException("Unable to find specified job.");
+        }
 
         // Bust the cache
         CacheHelper.bustCache(cacheManager);
@@ -124,9 +126,10 @@ public class JobStatusMutation implements GraphQLMutationResolver {
 
     public JobStatus stopJob(String id) {
         // Stop job
-        JobSettings job = autoAppDao.getJobSettings(id);
-        job.setActive(false);
-        autoAppDao.startOrUpdateJob(job);
+        JobSettings job = autoTradingService.updateJob(id, current -> current.setActive(false)).join();
+        if (job == null) {
+            throw new IllegalStateException("Unable to find specified job.");
+        }
 
         // Bust the cache
         CacheHelper.bustCache(cacheManager);
@@ -140,10 +143,10 @@ public class JobStatusMutation implements GraphQLMutationResolver {
     public List<JobStatus> stopAllJobs() {
         // Stop job
         List<JobSettings> jobs = autoAppDao.getAllJobSettings();
-        jobs.forEach(job -> {
-            job.setActive(false);
-            autoAppDao.startOrUpdateJob(job);
-        });
+        jobs.stream()
+                .map(job -> autoTradingService.updateJob(job.getJobId(), current -> current.setActive(false)))
+                .collect(Collectors.toList())
+                .forEach(CompletableFuture::join);
 
         // Bust the cache
         CacheHelper.bustCache(cacheManager);
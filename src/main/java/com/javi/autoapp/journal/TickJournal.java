@@ -0,0 +1,282 @@
+package com.javi.autoapp.journal;
+
+import static com.javi.autoapp.journal.TickJournalFormat.EXCHANGE_TIME_OFFSET;
+import static com.javi.autoapp.journal.TickJournalFormat.MAGIC;
+import static com.javi.autoapp.journal.TickJournalFormat.PRICE_OFFSET;
+import static com.javi.autoapp.journal.TickJournalFormat.PRODUCT_ID_BYTES;
+import static com.javi.autoapp.journal.TickJournalFormat.PRODUCT_OFFSET;
+import static com.javi.autoapp.journal.TickJournalFormat.RECEIVE_TIME_OFFSET;
+import static com.javi.autoapp.journal.TickJournalFormat.RECORD_BYTES;
+import static com.javi.autoapp.journal.TickJournalFormat.SEQUENCE_OFFSET;
+import static com.javi.autoapp.journal.TickJournalFormat.SIZE_OFFSET;
+import static com.javi.autoapp.journal.TickJournalFormat.VERSION;
+
+import com.javi.autoapp.client.model.CoinbaseTickerEvent;
+import com.javi.autoapp.util.ProductRegistry;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append only journal of decoded ticks in memory mapped files of fixed width records. Appending writes a
+ * record straight into the mapped file, the OS writes the pages back. A new file is started when the
+ * current one is full or older than the segment age, and the oldest files are deleted once the journal
+ * exceeds the retention size or age.
+ *
+ * <p>The next file is opened and mapped ahead of time on a maintenance thread, so starting it on the
+ * ingest thread only swaps buffers. Naming it, flushing and closing the full file and deleting old files
+ * happen on the maintenance thread too. Ticks are dropped while no next file is ready.
+ */
+@Slf4j
+public class TickJournal implements Closeable {
+    private static final long RETRY_MILLIS = 60_000;
+    private static final String SPARE_PREFIX = "ticks-";
+    private static final String SPARE_SUFFIX = ".spare";
+
+    private final Path directory;
+    private final int segmentRecords;
+    private final long segmentMillis;
+    private final long retentionBytes;
+    private final long retentionMillis;
+    private final int headerBytes;
+    private final ScheduledExecutorService maintenance;
+
+    private Segment current;
+    private long segmentStartMillis;
+    private boolean dropping;
+
+    // Set by the maintenance thread once mapped, taken by the ingest thread when it starts a new file
+    private volatile Segment spare;
+
+    public TickJournal(
+            Path directory,
+            long segmentBytes,
+            long segmentMillis,
+            long retentionBytes,
+            long retentionMillis) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.headerBytes = TickJournalFormat.headerBytes(ProductRegistry.size());
+        this.segmentRecords = (int) Math.max(1, Math.min(Integer.MAX_VALUE - headerBytes, segmentBytes - headerBytes) / RECORD_BYTES);
+        this.segmentMillis = segmentMillis;
+        this.retentionBytes = retentionBytes;
+        this.retentionMillis = retentionMillis;
+        deleteSpares();
+        this.spare = openSpare();
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tick-journal-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Records a tick. Ticks are dropped while the next journal file is not ready.
+     */
+    public synchronized void append(CoinbaseTickerEvent event, long receiveMillis) {
+        if (current == null || current.buffer.remaining() < RECORD_BYTES || receiveMillis - segmentStartMillis >= segmentMillis) {
+            if (!rotate(receiveMillis)) {
+                return;
+            }
+        }
+
+        // Receive time last, a zero receive time marks the end of the data
+        MappedByteBuffer buffer = current.buffer;
+        int position = buffer.position();
+        buffer.putLong(position + EXCHANGE_TIME_OFFSET, event.getExchangeTimeMillis());
+        buffer.putLong(position + SEQUENCE_OFFSET, event.getSequence());
+        buffer.putDouble(position + PRICE_OFFSET, event.getPrice());
+        buffer.putDouble(position + SIZE_OFFSET, event.getSize());
+        buffer.putInt(position + PRODUCT_OFFSET, event.getProductIndex());
+        buffer.putLong(position + RECEIVE_TIME_OFFSET, receiveMillis);
+        buffer.position(position + RECORD_BYTES);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        maintenance.shutdown();
+        try {
+            maintenance.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (current != null) {
+            current.close();
+            current = null;
+        }
+        Segment unused = spare;
+        spare = null;
+        if (unused != null) {
+            unused.channel.close();
+            Files.deleteIfExists(unused.path);
+        }
+    }
+
+    /**
+     * Swaps in the spare file, or keeps the current one while it has room and the spare is not ready.
+     */
+    private boolean rotate(long receiveMillis) {
+        Segment next = spare;
+        if (next == null) {
+            boolean full = current == null || current.buffer.remaining() < RECORD_BYTES;
+            if (full && !dropping) {
+                dropping = true;
+                log.warn("No tick journal file ready, dropping ticks");
+            }
+            return !full;
+        }
+        spare = null;
+        dropping = false;
+
+        Segment previous = current;
+        long startMillis = Math.max(receiveMillis, segmentStartMillis + 1); // Unique file names
+        current = next;
+        segmentStartMillis = startMillis;
+        maintenance.execute(() -> {
+            name(next, startMillis);
+            if (previous != null) {
+                closeQuietly(previous);
+            }
+            try {
+                enforceRetention(startMillis);
+            } catch (IOException error) {
+                log.error("Failed to delete old tick journal files. Error: {}", error.getMessage());
+            }
+            prepareSpare();
+        });
+        return true;
+    }
+
+    /**
+     * Runs on the maintenance thread, trying again every {@code RETRY_MILLIS} until a spare is mapped.
+     */
+    private void prepareSpare() {
+        try {
+            spare = openSpare();
+        } catch (IOException error) {
+            log.error("Failed to prepare a tick journal file, retrying in {} ms. Error: {}", RETRY_MILLIS, error.getMessage());
+            maintenance.schedule(this::prepareSpare, RETRY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private Segment openSpare() throws IOException {
+        Path path = Files.createTempFile(directory, SPARE_PREFIX, SPARE_SUFFIX);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, headerBytes + ((long) segmentRecords * RECORD_BYTES));
+            writeHeader(buffer);
+            return new Segment(path, channel, buffer);
+        } catch (IOException error) {
+            channel.close();
+            throw error;
+        }
+    }
+
+    /**
+     * Spares left over by a previous run that was not closed.
+     */
+    private void deleteSpares() throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            for (Path path : paths.filter(path -> path.getFileName().toString().endsWith(SPARE_SUFFIX)).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * Renames the swapped in spare after its first tick, so readers and retention only see it from then.
+     */
+    private void name(Segment segment, long startMillis) {
+        Path path = directory.resolve(TickJournalFormat.fileName(startMillis));
+        try {
+            Files.move(segment.path, path);
+            segment.path = path;
+            log.info("Started tick journal file {}", path);
+        } catch (IOException error) {
+            log.error("Failed to name tick journal file {}. Error: {}", path, error.getMessage());
+        }
+    }
+
+    private void closeQuietly(Segment segment) {
+        try {
+            segment.close();
+        } catch (IOException error) {
+            log.error("Failed to close tick journal file {}. Error: {}", segment.path, error.getMessage());
+        }
+    }
+
+    private void writeHeader(MappedByteBuffer buffer) {
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(ProductRegistry.size());
+        for (int productIndex = 0; productIndex < ProductRegistry.size(); productIndex++) {
+            byte[] productId = ProductRegistry.getProductId(productIndex).getBytes(StandardCharsets.US_ASCII);
+            int start = buffer.position();
+            buffer.put(productId, 0, Math.min(productId.length, PRODUCT_ID_BYTES));
+            buffer.position(start + PRODUCT_ID_BYTES);
+        }
+    }
+
+    /**
+     * Deletes the oldest files, never the current one, until the journal is within the retention size
+     * and no file only holds ticks older than the retention age.
+     */
+    private void enforceRetention(long nowMillis) throws IOException {
+        List<Path> files;
+        try (Stream<Path> paths = Files.list(directory)) {
+            files = paths
+                    .filter(path -> TickJournalFormat.firstReceiveMillis(path) >= 0)
+                    .sorted((first, second) -> Long.compare(
+                            TickJournalFormat.firstReceiveMillis(first),
+                            TickJournalFormat.firstReceiveMillis(second)))
+                    .collect(Collectors.toList());
+        }
+
+        long totalBytes = 0;
+        for (Path file : files) {
+            totalBytes += Files.size(file);
+        }
+
+        for (int index = 0; index < files.size() - 1; index++) {
+            long nextStartMillis = TickJournalFormat.firstReceiveMillis(files.get(index + 1));
+            if (totalBytes <= retentionBytes && nowMillis - nextStartMillis <= retentionMillis) {
+                break;
+            }
+            totalBytes -= Files.size(files.get(index));
+            Files.delete(files.get(index));
+            log.info("Deleted tick journal file {}", files.get(index));
+        }
+    }
+
+    private static final class Segment implements Closeable {
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private Path path;
+
+        private Segment(Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        /**
+         * Flushes the written pages, the mapping itself is released once the buffer is collected.
+         */
+        @Override
+        public void close() throws IOException {
+            buffer.force();
+            channel.close();
+        }
+    }
+}
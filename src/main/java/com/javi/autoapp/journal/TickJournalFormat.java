@@ -0,0 +1,50 @@
+package com.javi.autoapp.journal;
+
+import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Layout of tick journal files. Each file is named after the receive time of its first tick and starts
+ * with a header mapping the product numbers used in its records to product IDs, followed by fixed
+ * width records. The file is zero filled when mapped, so the first record with a zero receive time
+ * marks the end of the data.
+ *
+ * <p>Header: magic, version, product count, then one fixed width ASCII product ID per product.
+ * <br>Record: receive time millis, exchange time millis, sequence, price, size, product number, padding.
+ */
+final class TickJournalFormat {
+    static final int MAGIC = 0x41414a31;
+    static final int VERSION = 1;
+    static final int PRODUCT_ID_BYTES = 16;
+    static final int RECORD_BYTES = (3 * Long.BYTES) + (2 * Double.BYTES) + (2 * Integer.BYTES);
+
+    static final int RECEIVE_TIME_OFFSET = 0;
+    static final int EXCHANGE_TIME_OFFSET = 8;
+    static final int SEQUENCE_OFFSET = 16;
+    static final int PRICE_OFFSET = 24;
+    static final int SIZE_OFFSET = 32;
+    static final int PRODUCT_OFFSET = 40;
+
+    private static final String SUFFIX = ".ticks";
+    private static final Pattern FILE_NAME = Pattern.compile("ticks-(\\d+)\\" + SUFFIX);
+
+    private TickJournalFormat() {
+    }
+
+    static int headerBytes(int productCount) {
+        return (3 * Integer.BYTES) + (productCount * PRODUCT_ID_BYTES);
+    }
+
+    static String fileName(long firstReceiveMillis) {
+        return "ticks-" + firstReceiveMillis + SUFFIX;
+    }
+
+    /**
+     * Receive time of the first tick in a journal file, or -1 if the path is not a journal file.
+     */
+    static long firstReceiveMillis(Path path) {
+        Matcher matcher = FILE_NAME.matcher(path.getFileName().toString());
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : -1;
+    }
+}
@@ -0,0 +1,164 @@
+package com.javi.autoapp.journal;
+
+import static com.javi.autoapp.journal.TickJournalFormat.EXCHANGE_TIME_OFFSET;
+import static com.javi.autoapp.journal.TickJournalFormat.MAGIC;
+import static com.javi.autoapp.journal.TickJournalFormat.PRICE_OFFSET;
+import static com.javi.autoapp.journal.TickJournalFormat.PRODUCT_ID_BYTES;
+import static com.javi.autoapp.journal.TickJournalFormat.PRODUCT_OFFSET;
+import static com.javi.autoapp.journal.TickJournalFormat.RECEIVE_TIME_OFFSET;
+import static com.javi.autoapp.journal.TickJournalFormat.RECORD_BYTES;
+import static com.javi.autoapp.journal.TickJournalFormat.SEQUENCE_OFFSET;
+import static com.javi.autoapp.journal.TickJournalFormat.SIZE_OFFSET;
+
+import com.javi.autoapp.client.model.CoinbaseTickerEvent;
+import com.javi.autoapp.util.ProductRegistry;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.websocket.MessageHandler;
+
+/**
+ * Streams ticks recorded by {@link TickJournal} back out for a time range, in the order they were
+ * recorded. Product numbers are mapped through each file's header, so journals stay readable after
+ * products are added. Ticks are handed to a {@link MessageHandler} as a single reused event with its
+ * receive time set, for backtests and the exchange simulator. They are not meant for a live
+ * {@code ProductsService}, which would fire its tick listeners and count them as feed activity.
+ */
+public class TickJournalReader {
+    private final Path directory;
+
+    public TickJournalReader(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Replays the ticks received from {@code fromMillis} inclusive to {@code toMillis} exclusive.
+     *
+     * @return number of ticks replayed
+     */
+    public long replay(long fromMillis, long toMillis, MessageHandler.Whole<CoinbaseTickerEvent> handler)
+            throws IOException {
+        List<Path> files;
+        try (Stream<Path> paths = Files.list(directory)) {
+            files = paths
+                    .filter(path -> TickJournalFormat.firstReceiveMillis(path) >= 0)
+                    .sorted((first, second) -> Long.compare(
+                            TickJournalFormat.firstReceiveMillis(first),
+                            TickJournalFormat.firstReceiveMillis(second)))
+                    .collect(Collectors.toList());
+        }
+
+        CoinbaseTickerEvent event = new CoinbaseTickerEvent();
+        long replayed = 0;
+        for (int index = 0; index < files.size(); index++) {
+            long startMillis = TickJournalFormat.firstReceiveMillis(files.get(index));
+            boolean endsBeforeRange = index + 1 < files.size()
+                    && TickJournalFormat.firstReceiveMillis(files.get(index + 1)) <= fromMillis;
+            if (startMillis >= toMillis) {
+                break;
+            }
+            if (!endsBeforeRange) {
+                replayed += replayFile(files.get(index), fromMillis, toMillis, handler, event);
+            }
+        }
+        return replayed;
+    }
+
+    private long replayFile(
+            Path file,
+            long fromMillis,
+            long toMillis,
+            MessageHandler.Whole<CoinbaseTickerEvent> handler,
+            CoinbaseTickerEvent event) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.capacity() < 3 * Integer.BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a tick journal file: " + file);
+        }
+
+        // Map the product numbers of the file to the current registry
+        int productCount = buffer.getInt(2 * Integer.BYTES);
+        int[] productIndexes = new int[productCount];
+        byte[] productId = new byte[PRODUCT_ID_BYTES];
+        for (int product = 0; product < productCount; product++) {
+            buffer.position(TickJournalFormat.headerBytes(product));
+            buffer.get(productId);
+            int length = 0;
+            while (length < PRODUCT_ID_BYTES && productId[length] != 0) {
+                length++;
+            }
+            productIndexes[product] = ProductRegistry.indexOf(new String(productId, 0, length, StandardCharsets.US_ASCII));
+        }
+
+        int headerBytes = TickJournalFormat.headerBytes(productCount);
+        int capacity = (buffer.capacity() - headerBytes) / RECORD_BYTES;
+        int records = recordCount(buffer, headerBytes, capacity);
+        long replayed = 0;
+        for (int record = firstRecord(buffer, headerBytes, records, fromMillis); record < records; record++) {
+            int position = headerBytes + (record * RECORD_BYTES);
+            long receiveMillis = receiveMillis(buffer, headerBytes, record);
+            if (receiveMillis >= toMillis) {
+                break;
+            }
+
+            int product = buffer.getInt(position + PRODUCT_OFFSET);
+            event.reset();
+            event.setProductIndex(product >= 0 && product < productCount ? productIndexes[product] : ProductRegistry.UNKNOWN);
+            event.setPrice(buffer.getDouble(position + PRICE_OFFSET));
+            event.setSize(buffer.getDouble(position + SIZE_OFFSET));
+            event.setSequence(buffer.getLong(position + SEQUENCE_OFFSET));
+            event.setExchangeTimeMillis(buffer.getLong(position + EXCHANGE_TIME_OFFSET));
+            event.setReceiveTimeMillis(receiveMillis);
+            handler.onMessage(event);
+            replayed++;
+        }
+        return replayed;
+    }
+
+    /**
+     * Number of records written, found by binary search for the first zero receive time.
+     */
+    private static int recordCount(MappedByteBuffer buffer, int headerBytes, int capacity) {
+        int low = 0;
+        int high = capacity;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (receiveMillis(buffer, headerBytes, middle) != 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Binary search for the first record received at or after {@code fromMillis}.
+     */
+    private static int firstRecord(MappedByteBuffer buffer, int headerBytes, int records, long fromMillis) {
+        int low = 0;
+        int high = records;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (receiveMillis(buffer, headerBytes, middle) < fromMillis) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static long receiveMillis(MappedByteBuffer buffer, int headerBytes, int record) {
+        return buffer.getLong(headerBytes + (record * RECORD_BYTES) + RECEIVE_TIME_OFFSET);
+    }
+}
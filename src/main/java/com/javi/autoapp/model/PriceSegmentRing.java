@@ -0,0 +1,269 @@
+package com.javi.autoapp.model;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed capacity history of price segments for a single product, newest segment last. Segment fields
+ * are kept in parallel primitive arrays indexed by segment serial modulo capacity. Sums over closed
+ * segments and monotonic deques over their highs and lows are maintained as segments close and are
+ * evicted, so the rolling mid, change, max and min are O(1) and a tick allocates nothing.
+ *
+ * <p>All methods synchronize on the ring since ticks are written from the WebSocket thread while the
+ * trading threads read.
+ */
+public class PriceSegmentRing {
+    private static final int SNAPSHOT_SEGMENT_BYTES = Long.BYTES + (4 * Double.BYTES) + Long.BYTES;
+
+    private final int capacity;
+    private final long segmentMillis;
+
+    private final double[] openPrices;
+    private final double[] highPrices;
+    private final double[] lowPrices;
+    private final double[] changePrices;
+    private final long[] counts;
+    private final long[] startTimes;
+
+    // Serials of closed segments, highs decreasing and lows increasing from head to tail
+    private final long[] maxDeque;
+    private final long[] minDeque;
+    private int maxHead;
+    private int maxSize;
+    private int minHead;
+    private int minSize;
+
+    private long firstSerial;
+    private long currentSerial = -1;
+    private double closedOpenSum;
+    private double closedChangeSum;
+
+    public PriceSegmentRing(int capacity, long segmentMillis) {
+        this.capacity = capacity;
+        this.segmentMillis = segmentMillis;
+        openPrices = new double[capacity];
+        highPrices = new double[capacity];
+        lowPrices = new double[capacity];
+        changePrices = new double[capacity];
+        counts = new long[capacity];
+        startTimes = new long[capacity];
+        maxDeque = new long[capacity];
+        minDeque = new long[capacity];
+    }
+
+    /**
+     * Aggregates a price into the current segment, starting a new segment if the current one is older
+     * than the segment length.
+     *
+     * @return true if a new segment was started
+     */
+    public synchronized boolean aggregatePrice(double price, long timeMillis) {
+        boolean rolled = false;
+        if (isEmpty() || timeMillis - startTimes[slot(currentSerial)] > segmentMillis) {
+            startSegment(timeMillis);
+            rolled = true;
+        }
+
+        int slot = slot(currentSerial);
+        long count = counts[slot];
+        if (openPrices[slot] <= 0) {
+            openPrices[slot] = price;
+        } else {
+            openPrices[slot] = ((openPrices[slot] * count) + price) / (count + 1);
+        }
+        counts[slot] = count + 1;
+
+        if (price > highPrices[slot]) {
+            highPrices[slot] = price;
+        }
+
+        if (price < lowPrices[slot]) {
+            lowPrices[slot] = price;
+        }
+        return rolled;
+    }
+
+    /**
+     * Appends a segment summarised from an external bucket, used to fill a gap in the feed. Ignored
+     * unless the bucket starts after the window of the current segment.
+     *
+     * @return true if the segment was appended
+     */
+    public synchronized boolean backfillSegment(long startMillis, double price, double high, double low) {
+        if (!isEmpty() && startMillis < startTimes[slot(currentSerial)] + segmentMillis) {
+            return false;
+        }
+        appendSegment(startMillis, price, high, low, 0.0, 1);
+        return true;
+    }
+
+    /**
+     * Bytes written by {@link #writeTo(ByteBuffer)} for a full ring.
+     */
+    public int getSnapshotBytes() {
+        return Integer.BYTES + (capacity * SNAPSHOT_SEGMENT_BYTES);
+    }
+
+    /**
+     * Writes the segments oldest first.
+     */
+    public synchronized void writeTo(ByteBuffer buffer) {
+        buffer.putInt(size());
+        for (long serial = firstSerial; serial <= currentSerial; serial++) {
+            int slot = slot(serial);
+            buffer.putLong(startTimes[slot]);
+            buffer.putDouble(openPrices[slot]);
+            buffer.putDouble(highPrices[slot]);
+            buffer.putDouble(lowPrices[slot]);
+            buffer.putDouble(changePrices[slot]);
+            buffer.putLong(counts[slot]);
+        }
+    }
+
+    /**
+     * Replaces the segments with those written by {@link #writeTo(ByteBuffer)}, keeping the newest if the
+     * capacity is smaller than when they were written.
+     */
+    public synchronized void readFrom(ByteBuffer buffer) {
+        clear();
+        int size = buffer.getInt();
+        for (int index = 0; index < size; index++) {
+            long startMillis = buffer.getLong();
+            double price = buffer.getDouble();
+            double high = buffer.getDouble();
+            double low = buffer.getDouble();
+            double change = buffer.getDouble();
+            appendSegment(startMillis, price, high, low, change, buffer.getLong());
+        }
+    }
+
+    public synchronized int size() {
+        return isEmpty() ? 0 : (int) (currentSerial - firstSerial + 1);
+    }
+
+    public synchronized double getMid() {
+        if (isEmpty()) {
+            return Double.NaN;
+        }
+        return (closedOpenSum + openPrices[slot(currentSerial)]) / size();
+    }
+
+    public synchronized double getChange() {
+        if (isEmpty()) {
+            return Double.NaN;
+        }
+        return (closedChangeSum + changePrices[slot(currentSerial)]) / size();
+    }
+
+    public synchronized double getMax() {
+        if (isEmpty()) {
+            return Double.NaN;
+        }
+        double max = highPrices[slot(currentSerial)];
+        if (maxSize > 0) {
+            max = Math.max(max, highPrices[slot(maxDeque[maxHead])]);
+        }
+        return max;
+    }
+
+    public synchronized double getMin() {
+        if (isEmpty()) {
+            return Double.NaN;
+        }
+        double min = lowPrices[slot(currentSerial)];
+        if (minSize > 0) {
+            min = Math.min(min, lowPrices[slot(minDeque[minHead])]);
+        }
+        return min;
+    }
+
+    public synchronized void clear() {
+        firstSerial = 0;
+        currentSerial = -1;
+        closedOpenSum = 0.0;
+        closedChangeSum = 0.0;
+        maxHead = 0;
+        maxSize = 0;
+        minHead = 0;
+        minSize = 0;
+    }
+
+    /**
+     * Appends a segment with the given fields. The change is only kept for the first segment, later ones
+     * derive it from the previous mid when they close.
+     */
+    private void appendSegment(long startMillis, double price, double high, double low, double change, long count) {
+        startSegment(startMillis);
+        int slot = slot(currentSerial);
+        openPrices[slot] = price;
+        highPrices[slot] = high;
+        lowPrices[slot] = low;
+        changePrices[slot] = change;
+        counts[slot] = count;
+    }
+
+    private void startSegment(long timeMillis) {
+        if (!isEmpty()) {
+            closeCurrentSegment();
+        }
+
+        currentSerial++;
+        if (currentSerial - firstSerial + 1 > capacity) {
+            evictFirstSegment();
+        }
+
+        int slot = slot(currentSerial);
+        openPrices[slot] = 0.0;
+        highPrices[slot] = 0.0;
+        lowPrices[slot] = Double.MAX_VALUE;
+        changePrices[slot] = 0.0;
+        counts[slot] = 0;
+        startTimes[slot] = timeMillis;
+    }
+
+    private void closeCurrentSegment() {
+        int slot = slot(currentSerial);
+        if (currentSerial > firstSerial) {
+            changePrices[slot] = openPrices[slot] - openPrices[slot(currentSerial - 1)];
+        }
+        closedOpenSum += openPrices[slot];
+        closedChangeSum += changePrices[slot];
+
+        while (maxSize > 0 && highPrices[slot(maxDeque[dequeSlot(maxHead, maxSize - 1)])] <= highPrices[slot]) {
+            maxSize--;
+        }
+        maxDeque[dequeSlot(maxHead, maxSize++)] = currentSerial;
+
+        while (minSize > 0 && lowPrices[slot(minDeque[dequeSlot(minHead, minSize - 1)])] >= lowPrices[slot]) {
+            minSize--;
+        }
+        minDeque[dequeSlot(minHead, minSize++)] = currentSerial;
+    }
+
+    private void evictFirstSegment() {
+        int slot = slot(firstSerial);
+        closedOpenSum -= openPrices[slot];
+        closedChangeSum -= changePrices[slot];
+
+        if (maxSize > 0 && maxDeque[maxHead] == firstSerial) {
+            maxHead = dequeSlot(maxHead, 1);
+            maxSize--;
+        }
+        if (minSize > 0 && minDeque[minHead] == firstSerial) {
+            minHead = dequeSlot(minHead, 1);
+            minSize--;
+        }
+        firstSerial++;
+    }
+
+    private boolean isEmpty() {
+        return currentSerial < firstSerial;
+    }
+
+    private int slot(long serial) {
+        return (int) (serial % capacity);
+    }
+
+    private int dequeSlot(int head, int offset) {
+        return (head + offset) % capacity;
+    }
+}
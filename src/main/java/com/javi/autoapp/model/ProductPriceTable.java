@@ -0,0 +1,132 @@
+package com.javi.autoapp.model;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latest and previous price per product, indexed by the dense product id. Prices are held as raw
+ * double bits in atomic arrays so the ticker thread can publish and the trading thread can read
+ * without locks, boxing or parsing. A missing price reads as {@link Double#NaN}.
+ *
+ * <p>Each product's price, sequence and exchange time are written under a version that is odd while a
+ * write is in progress, so {@link #read} returns the three from the same tick, retrying if a write
+ * overlapped it. The single field getters do not wait and may return fields of different ticks, but
+ * the price is written before the sequence, so a price read after a sequence is at least as new.
+ */
+public class ProductPriceTable {
+    private static final long NO_PRICE = Double.doubleToRawLongBits(Double.NaN);
+
+    private final AtomicLongArray versions;
+    private final AtomicLongArray prices;
+    private final AtomicLongArray previousPrices;
+    private final AtomicLongArray sequences;
+    private final AtomicLongArray exchangeTimes;
+
+    /**
+     * One product's latest tick as read by {@link #read}, reused by the reading thread.
+     */
+    public static final class Entry {
+        private double price;
+        private long sequence;
+        private long exchangeTimeMillis;
+
+        public double getPrice() {
+            return price;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public long getExchangeTimeMillis() {
+            return exchangeTimeMillis;
+        }
+    }
+
+    public ProductPriceTable(int size) {
+        versions = new AtomicLongArray(size);
+        prices = new AtomicLongArray(size);
+        previousPrices = new AtomicLongArray(size);
+        sequences = new AtomicLongArray(size);
+        exchangeTimes = new AtomicLongArray(size);
+        for (int index = 0; index < size; index++) {
+            clear(index);
+        }
+    }
+
+    public void update(int index, double price, long sequence, long exchangeTimeMillis) {
+        long version = beginWrite(index);
+        prices.set(index, Double.doubleToRawLongBits(price));
+        exchangeTimes.set(index, exchangeTimeMillis);
+        sequences.set(index, sequence);
+        versions.set(index, version + 2);
+    }
+
+    /**
+     * Reads the product's price, sequence and exchange time of the same tick into {@code entry}.
+     */
+    public Entry read(int index, Entry entry) {
+        while (true) {
+            long version = versions.get(index);
+            if ((version & 1) == 0) {
+                entry.price = Double.longBitsToDouble(prices.get(index));
+                entry.sequence = sequences.get(index);
+                entry.exchangeTimeMillis = exchangeTimes.get(index);
+                if (versions.get(index) == version) {
+                    return entry;
+                }
+            }
+            Thread.yield();
+        }
+    }
+
+    public double getPrice(int index) {
+        return Double.longBitsToDouble(prices.get(index));
+    }
+
+    public double getPreviousPrice(int index) {
+        return Double.longBitsToDouble(previousPrices.get(index));
+    }
+
+    /**
+     * Sets the previous price if none has been recorded yet and returns the value that was already
+     * there, or {@link Double#NaN} if this call set it.
+     */
+    public double putPreviousPriceIfAbsent(int index, double price) {
+        if (previousPrices.compareAndSet(index, NO_PRICE, Double.doubleToRawLongBits(price))) {
+            return Double.NaN;
+        }
+        return getPreviousPrice(index);
+    }
+
+    public long getSequence(int index) {
+        return sequences.get(index);
+    }
+
+    public long getExchangeTimeMillis(int index) {
+        return exchangeTimes.get(index);
+    }
+
+    public void clear(int index) {
+        long version = beginWrite(index);
+        prices.set(index, NO_PRICE);
+        previousPrices.set(index, NO_PRICE);
+        exchangeTimes.set(index, 0);
+        sequences.set(index, 0);
+        versions.set(index, version + 2);
+    }
+
+    /**
+     * Marks the product as being written, waiting for a write from another thread to finish.
+     *
+     * @return the even version before this write
+     */
+    private long beginWrite(int index) {
+        while (true) {
+            long version = versions.get(index);
+            if ((version & 1) == 0 && versions.compareAndSet(index, version, version + 1)) {
+                return version;
+            }
+            Thread.yield();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.javi.autoapp.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket for exchange requests. When the exchange answers 429 the rate is halved and no tokens
+ * are handed out until its Retry-After has passed, then each successful request steps the rate back up
+ * to the configured one.
+ */
+class AdaptiveTokenBucket {
+    private static final double MIN_RATE = 0.5;
+    private static final double RECOVERY_STEP = 0.05; // Of the configured rate, per successful request
+    private static final long DEFAULT_PAUSE_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MIN_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final double maxRate;
+    private double rate;
+    private double tokens;
+    private long refilledNanos;
+    private long pausedUntilNanos;
+
+    AdaptiveTokenBucket(double requestsPerSecond) {
+        this.maxRate = Math.max(MIN_RATE, requestsPerSecond);
+        this.rate = maxRate;
+        this.tokens = maxRate;
+        this.refilledNanos = System.nanoTime();
+        this.pausedUntilNanos = refilledNanos;
+    }
+
+    /**
+     * Blocks until a token is available and takes it.
+     */
+    void acquire() throws InterruptedException {
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                long now = System.nanoTime();
+                refill(now);
+                if (now - pausedUntilNanos < 0) {
+                    waitNanos = pausedUntilNanos - now;
+                } else if (tokens >= 1.0) {
+                    tokens -= 1.0;
+                    return;
+                } else {
+                    waitNanos = (long) ((1.0 - tokens) / rate * TimeUnit.SECONDS.toNanos(1));
+                }
+            }
+            TimeUnit.NANOSECONDS.sleep(Math.max(waitNanos, MIN_WAIT_NANOS));
+        }
+    }
+
+    synchronized void onSuccess() {
+        rate = Math.min(maxRate, rate + maxRate * RECOVERY_STEP);
+    }
+
+    /**
+     * Requests in flight when the limit was hit are likely rate limited too, only the first one while
+     * paused lowers the rate.
+     */
+    synchronized void onRateLimited(long retryAfterMillis) {
+        long now = System.nanoTime();
+        refill(now);
+        if (now - pausedUntilNanos >= 0) {
+            rate = Math.max(MIN_RATE, rate / 2.0);
+        }
+        tokens = 0.0;
+        long pauseNanos = retryAfterMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(retryAfterMillis) : DEFAULT_PAUSE_NANOS;
+        if (now + pauseNanos - pausedUntilNanos > 0) {
+            pausedUntilNanos = now + pauseNanos;
+        }
+    }
+
+    synchronized double getRate() {
+        return rate;
+    }
+
+    private void refill(long now) {
+        if (now - pausedUntilNanos > 0) {
+            tokens = Math.min(maxRate, tokens + (now - Math.max(refilledNanos, pausedUntilNanos)) * rate / TimeUnit.SECONDS.toNanos(1));
+        }
+        refilledNanos = now;
+    }
+}
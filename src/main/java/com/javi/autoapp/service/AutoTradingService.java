@@ -1,69 +1,137 @@
 package com.javi.autoapp.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.javi.autoapp.client.CoinbaseTraderClient;
-import com.javi.autoapp.client.model.CoinbaseOrderRequest;
+import com.javi.autoapp.client.OrderNotFoundException;
+import com.javi.autoapp.client.encoder.OrderEncoder;
 import com.javi.autoapp.client.model.CoinbaseOrderResponse;
-import com.javi.autoapp.client.model.CoinbaseStatsResponse;
+import com.javi.autoapp.config.AppConfig;
 import com.javi.autoapp.ddb.AutoAppDao;
 import com.javi.autoapp.ddb.model.JobSettings;
 import com.javi.autoapp.ddb.model.JobStatus;
 import com.javi.autoapp.graphql.type.Status;
+import com.javi.autoapp.model.ProductPriceTable;
 import com.javi.autoapp.util.CacheHelper;
-import com.javi.autoapp.util.SignatureTool;
-import io.netty.handler.codec.http.HttpMethod;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
+import com.javi.autoapp.util.ProductRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.OptionalDouble;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import javax.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.ClientResponse;
+import reactor.core.publisher.Mono;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class AutoTradingService implements Runnable {
-    private static final double COINBASE_PERCENTAGE = 0.0149;
-    private static final double RETURN_YIELD = 1.0;
-    private final ObjectMapper mapper = new ObjectMapper();
+    private static final long NO_PENDING_TICK = 0L;
+    private static final String ORDER_STATUS_KEY = "order-status:";
 
+    private final AppConfig appConfig;
     private final CacheManager cacheManager;
     private final CoinbaseTraderClient coinbaseTraderClient;
     private final AutoAppDao autoAppDao;
     private final ProductsService productsService;
+    private final ProductStatsCache productStatsCache;
+    private final JobEvaluationEngine evaluationEngine;
+    private final OrderPipeline orderPipeline;
+    private final UserChannelService userChannelService;
+    private final MeterRegistry meterRegistry;
 
+    private ScheduledExecutorService executor;
     private ScheduledFuture<?> scheduledFuture;
-    private boolean bustCache = true;
+    private volatile boolean bustCache = true;
+    private final ThreadLocal<TradingStrategy.State> strategyStates = ThreadLocal.withInitial(TradingStrategy.State::new);
+    private final ThreadLocal<OrderEncoder> orderEncoders = ThreadLocal.withInitial(OrderEncoder::new);
+    private final ThreadLocal<ProductPriceTable.Entry> ticks = ThreadLocal.withInitial(ProductPriceTable.Entry::new);
+
+    // Latest loaded or changed copy of each job, so responses for orders sent from an older copy are
+    // applied to the one being evaluated, and the jobs with an order request still awaiting a response
+    private volatile Map<String, JobSettings> currentJobs = new ConcurrentHashMap<>();
+    private final Set<String> ordersInFlight = ConcurrentHashMap.newKeySet();
+
+    // Jobs with an order status or stats request queued or in flight, so slow responses are not requested again
+    private final Set<String> statusChecksInFlight = ConcurrentHashMap.newKeySet();
+    private final Set<String> statsInFlight = ConcurrentHashMap.newKeySet();
+
+    // Jobs of the orders sent by client order ID, so done orders on the user channel find their job,
+    // when each pending job's order status was last requested, jobs whose order was done before
+    // the trade response came back, and pending jobs whose trade request timed out so the exchange
+    // may never have received their order
+    private final Map<String, String> orderJobIds = new ConcurrentHashMap<>();
+    private final Map<String, Long> statusCheckMillis = new ConcurrentHashMap<>();
+    private final Set<String> doneBeforePending = ConcurrentHashMap.newKeySet();
+    private final Set<String> unconfirmedOrders = ConcurrentHashMap.newKeySet();
+
+    // Tick driven evaluation: trigger indexes of jobs by product index, and the receive time of the
+    // first tick of each product not yet evaluated so a burst of ticks coalesces into one evaluation
+    private volatile List<TriggerIndex> triggerIndexes = Collections.emptyList();
+    private final List<List<JobSettings>> tickCandidates = new ArrayList<>();
+    private final AtomicLongArray pendingTicks = new AtomicLongArray(ProductRegistry.size());
+    private final Runnable[] productEvaluations = new Runnable[ProductRegistry.size()];
+    private Timer tickToDecisionTimer;
 
     @PostConstruct
     public void postConstruct() {
-        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
-        scheduledFuture = executor.scheduleAtFixedRate(this, 0, 30, TimeUnit.SECONDS);
+        executor = Executors.newSingleThreadScheduledExecutor();
+        scheduledFuture = executor.scheduleAtFixedRate(this, 0, appConfig.getHousekeepingIntervalSeconds(), TimeUnit.SECONDS);
+        userChannelService.addDoneListener(this::onOrderDone);
+
+        if (appConfig.isTickDrivenEvaluation()) {
+            tickToDecisionTimer = Timer.builder("autoapp.tick.decision.latency")
+                    .description("Time from the first coalesced tick for a product to its jobs being evaluated")
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(meterRegistry);
+            for (int partition = 0; partition < evaluationEngine.getPartitionCount(); partition++) {
+                tickCandidates.add(new ArrayList<>());
+            }
+            for (int productIndex = 0; productIndex < productEvaluations.length; productIndex++) {
+                final int index = productIndex;
+                productEvaluations[productIndex] = () -> evaluateProduct(index);
+            }
+            productsService.addTickListener(this::onTick);
+        }
     }
 
+    /**
+     * Housekeeping cycle. Loads jobs and updates subscriptions on the timer thread, then hands each
+     * product's jobs to its owner thread for expiry, cleanup, pending order checks and evaluation.
+     */
     @Override
     public void run(){
         if (bustCache) {
             CacheHelper.bustCache(cacheManager);
             bustCache = false;
         }
-        List<JobSettings> jobs = autoAppDao.getAllJobSettings();
+        // Copies saved in this process, written or not, are newer than the stored jobs
+        List<JobSettings> jobs = autoAppDao.getAllJobSettings().stream()
+                .map(autoAppDao::getCurrentJob)
+                .collect(Collectors.toList());
 
         if (jobs.isEmpty()) {
             productsService.clearStaleData();
+            triggerIndexes = Collections.emptyList();
+            currentJobs = new ConcurrentHashMap<>();
             return;
         } else {
             log.info("Processing {} jobs.", jobs.size());
@@ -74,17 +142,143 @@ public class AutoTradingService implements Runnable {
                 .map(JobSettings::getProductId)
                 .collect(Collectors.toSet());
 
-        try {
-            productsService.updateSubscribedCurrencies(productIds);
-        } catch (Exception error) {
-            log.error("Failed to update subcription tickers. Error: {}", error.getMessage());
+        productsService.updateSubscribedCurrencies(productIds);
+
+        currentJobs = jobs.stream().collect(Collectors.toMap(JobSettings::getJobId, job -> job, (first, second) -> second, ConcurrentHashMap::new));
+        orderJobIds.values().retainAll(currentJobs.keySet());
+        statusCheckMillis.keySet().retainAll(currentJobs.keySet());
+        unconfirmedOrders.retainAll(currentJobs.keySet());
+        List<TriggerIndex> indexes = groupByProduct(jobs);
+        if (appConfig.isTickDrivenEvaluation()) {
+            triggerIndexes = indexes;
         }
 
+        indexes.stream()
+                .filter(index -> index.size() > 0)
+                .forEach(index -> evaluationEngine.execute(
+                        index.getJobs().get(0).getProductIndex(),
+                        () -> housekeep(index.getJobs())));
+
+        List<JobSettings> unknownProductJobs = jobs.stream()
+                .filter(job -> job.getProductIndex() == ProductRegistry.UNKNOWN)
+                .collect(Collectors.toList());
+        if (!unknownProductJobs.isEmpty()) {
+            evaluationEngine.execute(ProductRegistry.UNKNOWN, () -> housekeep(unknownProductJobs));
+        }
+
+        productsService.clearActiveFeeds();
+    }
+
+    /**
+     * Runs on the jobs' owner thread, which also writes their changes since the last cycle, so a batch
+     * write never lands after a newer synchronous one.
+     */
+    private void housekeep(List<JobSettings> jobs) {
         deactivateCompletedJobs(jobs);
         cleanupCompletedJobs(jobs);
         checkPendingOrders(jobs);
         autoTrade(jobs);
-        productsService.clearActiveFeeds();
+        autoAppDao.flushJobs(jobs);
+    }
+
+    /**
+     * Applies a change to the latest copy of the job and writes it, on the job's owner thread so the
+     * change is not interleaved with the job's evaluation. The changed job replaces the one being
+     * evaluated right away rather than on the next housekeeping cycle. Completes with the changed
+     * job, or null if there is no such job.
+     */
+    public CompletableFuture<JobSettings> updateJob(String jobId, Consumer<JobSettings> change) {
+        JobSettings job = autoAppDao.getCurrentJob(jobId);
+        if (job == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<JobSettings> updated = new CompletableFuture<>();
+        evaluationEngine.execute(job.getProductIndex(), () -> {
+            try {
+                JobSettings current = autoAppDao.getCurrentJob(job);
+                change.accept(current);
+                autoAppDao.startOrUpdateJob(current);
+                replaceJob(current);
+                updated.complete(current);
+            } catch (RuntimeException e) {
+                updated.completeExceptionally(e);
+            }
+        });
+        return updated;
+    }
+
+    private void onTick(int productIndex) {
+        if (pendingTicks.compareAndSet(productIndex, NO_PENDING_TICK, System.nanoTime())) {
+            evaluationEngine.execute(productIndex, productEvaluations[productIndex]);
+        }
+    }
+
+    private void evaluateProduct(int productIndex) {
+        long firstTickNanos = pendingTicks.getAndSet(productIndex, NO_PENDING_TICK);
+        List<TriggerIndex> indexes = triggerIndexes;
+        if (productIndex >= indexes.size() || indexes.get(productIndex).size() == 0) {
+            return;
+        }
+
+        // Without enough history every job would need a stats call, leave those to housekeeping
+        double midPrice = productsService.getMid(productIndex);
+        ProductPriceTable.Entry tick = ticks.get();
+        double price = productsService.readPrice(productIndex, tick);
+        if (Double.isNaN(midPrice) || Double.isNaN(price)) {
+            return;
+        }
+
+        // Every candidate is decided on the same tick, whose sequence is sent with their orders
+        List<JobSettings> candidates = tickCandidates.get(evaluationEngine.partitionOf(productIndex));
+        candidates.clear();
+        indexes.get(productIndex).collect(midPrice, price, candidates);
+        for (JobSettings job : candidates) {
+            if (isTradable(job)) {
+                evaluate(job, midPrice, price, tick.getSequence());
+            }
+        }
+        tickToDecisionTimer.record(System.nanoTime() - firstTickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private List<TriggerIndex> groupByProduct(List<JobSettings> jobs) {
+        List<List<JobSettings>> grouped = new ArrayList<>(ProductRegistry.size());
+        for (int productIndex = 0; productIndex < ProductRegistry.size(); productIndex++) {
+            grouped.add(new ArrayList<>());
+        }
+        jobs.stream()
+                .filter(job -> job.getProductIndex() != ProductRegistry.UNKNOWN)
+                .forEach(job -> grouped.get(job.getProductIndex()).add(job));
+        return grouped.stream()
+                .map(TriggerIndex::new)
+                .collect(Collectors.toList());
+    }
+
+    private JobSettings currentCopy(JobSettings job) {
+        return autoAppDao.getCurrentJob(currentJobs.getOrDefault(job.getJobId(), job));
+    }
+
+    /**
+     * Swaps the job into the jobs being evaluated and rebuilds its product's trigger index with it, on
+     * the job's owner thread.
+     */
+    private void replaceJob(JobSettings job) {
+        currentJobs.put(job.getJobId(), job);
+        List<TriggerIndex> indexes = triggerIndexes;
+        int productIndex = job.getProductIndex();
+        if (productIndex == ProductRegistry.UNKNOWN || productIndex >= indexes.size()) {
+            return;
+        }
+        List<JobSettings> jobs = new ArrayList<>(indexes.get(productIndex).getJobs());
+        jobs.removeIf(other -> other.getJobId().equals(job.getJobId()));
+        jobs.add(job);
+        indexes.set(productIndex, new TriggerIndex(jobs));
+    }
+
+    private void invalidateTriggers(JobSettings job) {
+        List<TriggerIndex> indexes = triggerIndexes;
+        if (job.getProductIndex() != ProductRegistry.UNKNOWN && job.getProductIndex() < indexes.size()) {
+            indexes.get(job.getProductIndex()).invalidate(job);
+        }
     }
 
     private void deactivateCompletedJobs(List<JobSettings> jobs) {
@@ -97,50 +291,117 @@ public class AutoTradingService implements Runnable {
                 .forEach(job -> {
                     log.info("Deactivating expired job: {}", job.getJobId());
                     job.setActive(false);
-                    autoAppDao.startOrUpdateJob(job);
-                    bustCache = true;
+                    autoAppDao.saveJobLater(job);
                 });
     }
 
+    /**
+     * Pending jobs are settled when the user channel reports their order done. Their order status is
+     * only polled while the user channel is down, or every {@code pendingOrderReconcileSeconds} in case
+     * a done message was missed.
+     */
     private void checkPendingOrders(List<JobSettings> jobs) {
-        jobs.stream().filter(JobSettings::isPending).forEach(job -> {
-            String timestamp = String.valueOf(Instant.now().getEpochSecond());
-            String signature;
-            try {
-                signature = SignatureTool.getSignature(
-                        timestamp,
-                        HttpMethod.GET.name(),
-                        SignatureTool.getOrdersRequestPath(job.getOrderId())
-                );
-            } catch (Exception e) {
-                log.error("Exception occurred in order polling thread. Error: {}", e.getMessage());
-                return;
+        boolean pushed = userChannelService.isConnected();
+        long reconcileBefore = System.currentTimeMillis() - appConfig.getPendingOrderReconcileSeconds() * 1000;
+        jobs.stream()
+                .filter(JobSettings::isPending)
+                .filter(job -> !pushed || statusCheckMillis.getOrDefault(job.getJobId(), 0L) <= reconcileBefore)
+                .forEach(this::checkOrderStatus);
+    }
+
+    private void checkOrderStatus(JobSettings job) {
+        if (!statusChecksInFlight.add(job.getJobId())) {
+            return;
+        }
+        statusCheckMillis.put(job.getJobId(), System.currentTimeMillis());
+        orderPipeline.submit(
+                OrderPipeline.Priority.FILL_CHECK,
+                ORDER_STATUS_KEY + job.getOrderId(),
+                getOrderStatus(job.getOrderId()))
+                .doFinally(signal -> statusChecksInFlight.remove(job.getJobId()))
+                .subscribe(order -> evaluationEngine.execute(job.getProductIndex(), () -> {
+                    // Skip responses already applied to a newer copy of the job
+                    JobSettings current = currentCopy(job);
+                    if (!current.isPending() || !current.getOrderId().equals(job.getOrderId())) {
+                        return;
+                    }
+                    unconfirmedOrders.remove(job.getJobId());
+                    try {
+                        log.info("Finalized transaction for job ID: {}", job.getJobId());
+                        updatePendingJob(order, current);
+                    } catch (JsonProcessingException e) {
+                        e.printStackTrace();
+                    }
+                }), error -> {
+                    if (error instanceof OrderNotFoundException) {
+                        evaluationEngine.execute(job.getProductIndex(), () -> onOrderNotFound(currentCopy(job), job.getOrderId()));
+                    } else {
+                        log.error("Failed to get order status. Error: {}", error.getMessage());
+                    }
+                });
+    }
+
+    /**
+     * A job whose trade request timed out and whose order the exchange does not know was never placed,
+     * it is released with a new order ID so it can trade again. Other jobs keep polling.
+     */
+    private void onOrderNotFound(JobSettings job, String orderId) {
+        if (!job.isPending() || !job.getOrderId().equals(orderId)) {
+            return;
+        }
+        if (!unconfirmedOrders.remove(job.getJobId())) {
+            log.warn("Order {} of job ID: {} not found", orderId, job.getJobId());
+            return;
+        }
+        log.warn("Timed out order {} of job ID: {} never reached the exchange, releasing the job", orderId, job.getJobId());
+        orderJobIds.remove(orderId);
+        statusCheckMillis.remove(job.getJobId());
+        job.setPending(false);
+        job.setOrderId(UUID.randomUUID().toString());
+        autoAppDao.saveJobLater(job);
+        invalidateTriggers(job);
+    }
+
+    /**
+     * Called on the user channel's thread. A done message has no fill amounts, so the order status is
+     * requested once on the job's owner thread to settle it.
+     */
+    private void onOrderDone(String clientOid) {
+        String jobId = orderJobIds.get(clientOid);
+        JobSettings job = jobId == null ? null : currentJobs.get(jobId);
+        if (job == null) {
+            return;
+        }
+        evaluationEngine.execute(job.getProductIndex(), () -> {
+            JobSettings current = currentCopy(job);
+            if (ordersInFlight.contains(jobId)) {
+                doneBeforePending.add(jobId); // Settled once the trade response marks it pending
+            } else if (current.isPending() && clientOid.equals(current.getOrderId())) {
+                checkOrderStatus(current);
             }
-            coinbaseTraderClient.getOrderStatus(
-                    timestamp,
-                    signature,
-                    job.getOrderId()
-            ).subscribe(resp -> {
-                if (resp.statusCode().isError()) {
-                    resp.bodyToMono(String.class).subscribe(error -> log.error("Failed to get order status. Error: {}", error));
-                } else {
-                    resp.bodyToMono(CoinbaseOrderResponse.class).subscribe(order -> {
-                        try {
-                            log.info("Finalized transaction for job ID: {}", job.getJobId());
-                            updatePendingJob(order, job);
-                        } catch (JsonProcessingException e) {
-                            e.printStackTrace();
-                        }
-                    });
-                }
-            });
         });
     }
 
+    private Mono<CoinbaseOrderResponse> getOrderStatus(String orderId) {
+        return coinbaseTraderClient.getOrderStatus(orderId)
+                .flatMap(response -> {
+                    if (response.statusCode() == HttpStatus.NOT_FOUND) {
+                        return response.bodyToMono(Void.class)
+                                .then(Mono.<CoinbaseOrderResponse>error(new OrderNotFoundException(orderId)));
+                    }
+                    return response.statusCode().isError()
+                            ? response.bodyToMono(String.class)
+                                    .flatMap(error -> Mono.<CoinbaseOrderResponse>error(new IllegalStateException(error)))
+                            : response.bodyToMono(CoinbaseOrderResponse.class);
+                });
+    }
+
     private void updatePendingJob(
             CoinbaseOrderResponse response,
             JobSettings job) throws JsonProcessingException {
-        if (response.isSettled()) {
+        if (!response.isSettled()) {
+            statusCheckMillis.remove(job.getJobId()); // Done but not settled yet, poll it next cycle
+        } else {
             double value;
             double size;
             try {
@@ -153,22 +414,17 @@ public class AutoTradingService implements Runnable {
                 return;
             }
 
+            orderJobIds.remove(job.getOrderId());
+            statusCheckMillis.remove(job.getJobId());
             JobStatus jobStatus = autoAppDao.getJobStatus(job.getJobId());
-            if (!job.isSell()) {
-                job.setSell(true);
-                job.setSize(size);
+            double startingFundsUsd = job.getStartingFundsUsd();
+            TradingStrategy.applyFill(job, value, size);
+            if (job.isSell()) {
                 jobStatus.setCurrentFundsUsd(0.0);
                 jobStatus.setSize(size);
                 jobStatus.setCurrentValueUsd(value);
-            }
-            else {
-                job.setSell(false);
-                job.setFunds(value);
-
-                if (job.isActive() && job.getIncreaseFundsBy() > 0.0) {
-                    job.setStartingFundsUsd(job.getStartingFundsUsd() + job.getIncreaseFundsBy());
-                    job.setFunds(job.getFunds() + job.getIncreaseFundsBy());
-                    job.setIncreaseFundsBy(0.0);
+            } else {
+                if (job.getStartingFundsUsd() != startingFundsUsd) {
                     jobStatus.setStartingFundsUsd(job.getStartingFundsUsd());
                 }
 
@@ -177,14 +433,6 @@ public class AutoTradingService implements Runnable {
                 jobStatus.setSize(0.0);
                 jobStatus.setCurrentValueUsd(job.getFunds());
             }
-
-            job.setOrderId(UUID.randomUUID().toString());
-            job.setInit(false);
-            job.setPending(false);
-            job.setCrossedLowThreshold(false);
-            job.setCrossedPercentageYieldThreshold(false);
-            job.setMaxYieldValue(0.0);
-            job.setTradeNow(false);
             autoAppDao.startOrUpdateJob(job);
 
             // Update job status
@@ -197,179 +445,124 @@ public class AutoTradingService implements Runnable {
             jobStatus.setGainsLosses(value - jobStatus.getStartingFundsUsd());
             autoAppDao.updateJobStatus(jobStatus);
 
+            invalidateTriggers(job);
             bustCache = true;
         }
     }
 
     private void autoTrade(List<JobSettings> jobs) {
         jobs.stream()
-                .filter(job -> job.isActive() || job.isSell())
-                .filter(job -> !job.isPending())
+                .filter(this::isTradable)
                 .forEach(job -> {
                     // Check for latest price
-                    OptionalDouble priceOptional = productsService.getPrice(job.getProductId());
-                    if (!priceOptional.isPresent()) {
+                    ProductPriceTable.Entry tick = ticks.get();
+                    double latestPrice = productsService.readPrice(job.getProductIndex(), tick);
+                    if (Double.isNaN(latestPrice)) {
                         return;
                     }
-                    double price = roundPrice(priceOptional.getAsDouble(), job.getPrecision());
 
                     // Check for latest history
-                    OptionalDouble midPriceOptional = productsService.getMid(job.getProductId());
-                    double midPrice;
-                    if (!midPriceOptional.isPresent()) {
-                        try {
-                            CoinbaseStatsResponse statsResponse = productsService.getProductStats(job.getProductId());
-                            midPrice = roundPrice(Double.parseDouble(statsResponse.getOpen()), job.getPrecision());
-                        } catch (Exception e) {
-                            log.error("Unable to get price stats for product ID: {}", job.getProductId());
-                            return;
+                    double latestMidPrice = productsService.getMid(job.getProductIndex());
+                    if (Double.isNaN(latestMidPrice)) {
+                        if (productsService.isWarmingUp(job.getProductIndex())) {
+                            return; // History is being seeded, skip the stats call
                         }
-                    } else {
-                        midPrice = roundPrice(midPriceOptional.getAsDouble(), job.getPrecision());
+                        evaluateWithStats(job);
+                        return;
                     }
 
-                    if (job.isTradeNow()) {
-                        trade(job);
-                    } else if (job.isInit()) {
-                        handleMidMarketBuy(job, midPrice, price);
-                    } else if (job.isSell()) {
-                        crest(job, midPrice, price);
-                    } else {
-                        trough(job, midPrice, price);
-                    }
+                    evaluate(job, latestMidPrice, latestPrice, tick.getSequence());
                 });
     }
 
-    private void trough(JobSettings job, double midPrice, double price) {
-        double expectedBuy = job.getFunds() / price;
-        double expectedFees = expectedBuy * COINBASE_PERCENTAGE;
-        double expectedSize = expectedBuy - expectedFees;
-        double percentYield = expectedSize / job.getSize();
-        double priceWantedAbsolute = job.getFunds() / ((job.getPercentageYieldThreshold() * job.getSize()) / (1 - COINBASE_PERCENTAGE));
-        double priceWanted = roundPrice(priceWantedAbsolute, job.getPrecision());
-
-        double priceIncreasePercent = job.getPercentageYieldThreshold() + COINBASE_PERCENTAGE - 1.0;
-        double priceThreshold = 1.0 - (priceIncreasePercent / 2.0);
-        double minPriceThreshold = 1.0 - (priceIncreasePercent * 1.5);
-        double lowThreshold = roundPrice(midPrice * priceThreshold, job.getPrecision());
-        double minPrice = roundPrice(midPrice * minPriceThreshold, job.getPrecision());
-
-        log.info("Checking trough jobId: {} - ProductId: {}, CurrentYield: {}, YieldWanted: {}, CurrentPrice: {}, PriceWanted: {}, MidPrice: {}, MinPrice: {}, LowThreshold: {}, Change: {}",
-                job.getJobId(),
-                job.getProductId(),
-                percentYield,
-                job.getPercentageYieldThreshold(),
-                price,
-                priceWanted,
-                midPrice,
-                minPrice,
-                lowThreshold,
-                productsService.getChange(job.getProductId()).orElse(0.0));
-
-        if (priceWanted < minPrice) {
-            handleMidMarketBuy(job, midPrice, price);
-        } else if ((price < lowThreshold) || (lowThreshold < minPrice && price < midPrice)) {
-            handlePercentageYieldThreshold(job, percentYield, false);
-        } else {
-            log.info("Price not below mid threshold required for trough period. CurrentPrice: {}", price);
-        }
+    private boolean isTradable(JobSettings job) {
+        return (job.isActive() || job.isSell())
+                && !job.isPending()
+                && !ordersInFlight.contains(job.getJobId());
     }
 
-    private void crest(JobSettings job, double midPrice, double price) {
-        double expectedSale = price * job.getSize();
-        double expectedFees = expectedSale * COINBASE_PERCENTAGE;
-        double expectedFunds = expectedSale - expectedFees;
-        double percentYield = expectedFunds / job.getFunds();
-        double priceWantedAbsolute = (job.getPercentageYieldThreshold() * job.getFunds()) / (job.getSize() - (job.getSize() * COINBASE_PERCENTAGE));
-        double priceWanted = roundPrice(priceWantedAbsolute, job.getPrecision());
-        double absoluteValue = job.getFunds() / job.getSize();
-        double value = roundPrice(absoluteValue, job.getPrecision());
-
-        double priceIncreasePercent = job.getPercentageYieldThreshold() + COINBASE_PERCENTAGE - 1.0;
-        double priceThreshold = 1.0 + (priceIncreasePercent / 2.0);
-        double maxPriceThreshold = 1.0 + (priceIncreasePercent * 1.5);
-        double highThreshold = roundPrice(midPrice * priceThreshold, job.getPrecision());
-        double maxPrice = roundPrice(midPrice * maxPriceThreshold, job.getPrecision());
-
-        log.info("Checking crest jobId: {} - ProductId: {}, CurrentYield: {}, YieldWanted: {}, CurrentPrice: {}, PriceWanted: {}, MidPrice: {}, MaxPrice: {}, Value: {}, HighThreshold: {}, Change: {}",
-                job.getJobId(),
-                job.getProductId(),
-                percentYield,
-                job.getPercentageYieldThreshold(),
-                price,
-                priceWanted,
-                midPrice,
-                maxPrice,
-                value,
-                highThreshold,
-                productsService.getChange(job.getProductId()).orElse(0.0));
-
-        if (maxPrice < value) {
-            log.warn("{} - Max price of {} fell below current value of {}", job.getProductId(), maxPrice, value);
-            if (job.isProtectUsd() && (percentYield < job.getMaximumLoses())) {
-                log.warn("Maximum losses reached for this trade. CurrentYield: {}, MaximumLoses: {}", percentYield, job.getMaximumLoses());
-                trade(job);
-            }
-        } else if ((price > highThreshold) || (highThreshold > maxPrice && price > midPrice)) {
-            handlePercentageYieldThreshold(job, percentYield, true);
-        } else {
-            log.info("Price not above mid threshold required for crest period. CurrentPrice: {}", price);
-        }
+    private void evaluate(JobSettings job, double midPrice, double price, long tickSequence) {
+        TradingStrategy.State state = strategyStates.get().load(job);
+        int decision = TradingStrategy.evaluate(state, midPrice, price);
+        applyDecision(job, decision, state, tickSequence);
     }
 
-    private void handleMidMarketBuy(JobSettings job, double midPrice, double price) {
-        double priceIncreasePercent = (job.getPercentageYieldThreshold() + COINBASE_PERCENTAGE - 1.0) / 2.0;
-        double priceThreshold = 1.0 - priceIncreasePercent;
-        double priceWanted = roundPrice(midPrice * priceThreshold, job.getPrecision());
-
-        log.info("Checking mid market buy jobId: {} - ProductId: {}, CurrentPrice: {}, MidPrice: {}, PriceWanted: {}, Change: {}",
-                job.getJobId(),
-                job.getProductId(),
-                price,
-                midPrice,
-                priceWanted,
-                productsService.getChange(job.getProductId()).orElse(0.0));
-
-        if ((job.isCrossedLowThreshold() && price > job.getMinValue())) {
-            trade(job);
-        }
-
-        if (!job.isCrossedLowThreshold() && price < priceWanted) {
-            log.info("Job ID: {} - Crossed {} below low threshold.", job.getJobId(), job.getProductId());
-            job.setCrossedLowThreshold(true);
-            job.setMinValue(price);
-            autoAppDao.startOrUpdateJob(job);
-            bustCache = true;
-        }
-
-        if (job.isCrossedLowThreshold() && price < job.getMinValue()) {
-            job.setMinValue(price);
-            autoAppDao.startOrUpdateJob(job);
-            bustCache = true;
+    /**
+     * Evaluates the job against the product's open price once the stats arrive, on the job's owner
+     * thread.
+     */
+    private void evaluateWithStats(JobSettings job) {
+        if (!statsInFlight.add(job.getJobId())) {
+            return;
         }
+        productStatsCache.getStats(job.getProductIndex())
+                .doFinally(signal -> statsInFlight.remove(job.getJobId()))
+                .subscribe(stats -> evaluationEngine.execute(job.getProductIndex(), () -> {
+                    JobSettings current = currentCopy(job);
+                    ProductPriceTable.Entry tick = ticks.get();
+                    double latestPrice = productsService.readPrice(current.getProductIndex(), tick);
+                    if (!isTradable(current) || Double.isNaN(latestPrice)) {
+                        return;
+                    }
+                    double openPrice;
+                    try {
+                        openPrice = Double.parseDouble(stats.getOpen());
+                    } catch (Exception e) {
+                        log.error("Unable to get price stats for product ID: {}", job.getProductId());
+                        return;
+                    }
+                    evaluate(current, openPrice, latestPrice, tick.getSequence());
+                }), error -> log.error("Unable to get price stats for product ID: {}", job.getProductId()));
     }
 
-    private void handlePercentageYieldThreshold(JobSettings job, double percentYield, boolean sell) {
-        if ((job.isCrossedPercentageYieldThreshold() && percentYield < job.getMaxYieldValue())) {
-            trade(job);
+    private void applyDecision(JobSettings job, int decision, TradingStrategy.State state, long tickSequence) {
+        if (decision == TradingStrategy.HOLD) {
+            if (log.isDebugEnabled()) {
+                log.debug("Holding jobId: {} - ProductId: {}, Sell: {}, CurrentPrice: {}, MidPrice: {}, PriceWanted: {}, Threshold: {}, CurrentYield: {}, Change: {}",
+                        job.getJobId(),
+                        job.getProductId(),
+                        job.isSell(),
+                        state.getPrice(),
+                        state.getMidPrice(),
+                        state.getPriceWanted(),
+                        state.getThreshold(),
+                        state.getPercentYield(),
+                        productsService.getChange(job.getProductIndex()));
+            }
+            return;
         }
 
-        if (!job.isCrossedPercentageYieldThreshold() && percentYield > job.getPercentageYieldThreshold()) {
-            log.info("Job ID: {} - Crossed {} yield threshold of {}",
-                    job.getJobId(),
-                    job.getProductId(),
-                    job.getPercentageYieldThreshold()
-            );
-            job.setCrossedPercentageYieldThreshold(true);
-            job.setMaxYieldValue(percentYield);
-            autoAppDao.startOrUpdateJob(job);
-            bustCache = true;
+        if (TradingStrategy.isTrade(decision)) {
+            if (decision == TradingStrategy.STOP_LOSS) {
+                log.warn("Maximum losses reached for job ID: {} - ProductId: {}, Value: {}, MidPrice: {}, CurrentYield: {}, MaximumLoses: {}",
+                        job.getJobId(),
+                        job.getProductId(),
+                        state.getValue(),
+                        state.getMidPrice(),
+                        state.getPercentYield(),
+                        job.getMaximumLoses());
+            } else {
+                log.info("Job ID: {} - Trading {} at {}, MidPrice: {}, CurrentYield: {}",
+                        job.getJobId(),
+                        job.getProductId(),
+                        state.getPrice(),
+                        state.getMidPrice(),
+                        state.getPercentYield());
+            }
+            trade(job, tickSequence);
+            return;
         }
 
-        if (job.isCrossedPercentageYieldThreshold() && percentYield > job.getMaxYieldValue()) {
-            job.setMaxYieldValue(percentYield);
-            autoAppDao.startOrUpdateJob(job);
-            bustCache = true;
+        if (decision == TradingStrategy.CROSSED_LOW_THRESHOLD) {
+            log.info("Job ID: {} - Crossed {} below low threshold of {}", job.getJobId(), job.getProductId(), state.getPriceWanted());
+        } else if (decision == TradingStrategy.CROSSED_YIELD_THRESHOLD) {
+            log.info("Job ID: {} - Crossed {} yield threshold of {}", job.getJobId(), job.getProductId(), job.getPercentageYieldThreshold());
+        }
+        if (TradingStrategy.apply(job, decision, state)) {
+            autoAppDao.saveJobLater(job);
+            if (TradingStrategy.changesTriggers(decision)) {
+                invalidateTriggers(job);
+            }
         }
     }
 
@@ -377,6 +570,7 @@ public class AutoTradingService implements Runnable {
         jobs.stream()
                 .filter(job -> !job.isActive())
                 .filter(job -> !job.isPending())
+                .filter(job -> !ordersInFlight.contains(job.getJobId()))
                 .forEach(job -> {
                     log.info("Removing completed job: {}", job.getJobId());
                     autoAppDao.deleteJob(job);
@@ -384,65 +578,81 @@ public class AutoTradingService implements Runnable {
                 });
     }
 
-    private void trade(JobSettings job) {
-        // Send trade request
-        CoinbaseOrderRequest request = new CoinbaseOrderRequest();
-        request.setOrderId(job.getOrderId());
-        request.setProductId(job.getProductId());
-
-        if (job.isSell()) {
-            request.setSide(CoinbaseOrderRequest.SELL);
-            request.setSize(String.valueOf(job.getSize()));
-        } else {
-            request.setSide(CoinbaseOrderRequest.BUY);
-            request.setFunds(String.valueOf(job.getFunds()));
+    /**
+     * Sends the job's order, naming {@code triggerSequence}, the sequence of the tick the decision was
+     * made on.
+     */
+    private void trade(JobSettings job, long triggerSequence) {
+        // A housekeeping cycle that raced a change to the job may still evaluate the copy it loaded
+        if (autoAppDao.isStale(job)) {
+            log.info("Skipping trade for job ID: {}, it was changed since it was loaded", job.getJobId());
+            return;
         }
 
-        boolean success = false;
-        try {
-            success = sendTradeRequest(request);
-        } catch (Exception e) {
-            log.error("Failed trade request.");
-        }
+        // A restart must find the order ID the order is sent with
+        autoAppDao.flushJob(job);
+        OrderEncoder.EncodedOrder order = orderEncoders.get().encode(
+                job.getOrderId(),
+                job.getProductId(),
+                job.isSell(),
+                job.isSell() ? job.getSize() : job.getFunds());
+
+        // Hold the job until the exchange responds, the response is applied on the job's owner thread
+        ordersInFlight.add(job.getJobId());
+        orderJobIds.put(job.getOrderId(), job.getJobId());
+        invalidateTriggers(job);
+        orderPipeline.submit(OrderPipeline.Priority.ORDER, sendTradeRequest(order, triggerSequence))
+                .onErrorResume(TimeoutException.class, error -> {
+                    // The order may still be placed, poll its status rather than sending a second one
+                    log.warn("Trade request for job ID: {} timed out, checking its order status", job.getJobId());
+                    unconfirmedOrders.add(job.getJobId());
+                    return Mono.just(true);
+                })
+                .onErrorResume(error -> {
+                    log.error("Failed trade request. Error: {}", error.getMessage());
+                    return Mono.just(false);
+                })
+                .defaultIfEmpty(false)
+                .subscribe(success -> evaluationEngine.execute(
+                        job.getProductIndex(),
+                        () -> completeTrade(currentCopy(job), success)));
+    }
 
+    private void completeTrade(JobSettings job, boolean success) {
         // Update job to hold until sell is complete
+        ordersInFlight.remove(job.getJobId());
+        invalidateTriggers(job);
         if (success) {
             job.setPending(true);
             autoAppDao.startOrUpdateJob(job);
             bustCache = true;
+            if (!unconfirmedOrders.contains(job.getJobId())) {
+                statusCheckMillis.put(job.getJobId(), System.currentTimeMillis()); // Otherwise polled next cycle
+            }
+            if (doneBeforePending.remove(job.getJobId())) {
+                checkOrderStatus(job);
+            }
         } else {
+            orderJobIds.remove(job.getOrderId());
+            doneBeforePending.remove(job.getJobId());
+            unconfirmedOrders.remove(job.getJobId());
             job.setOrderId(UUID.randomUUID().toString());
-            autoAppDao.startOrUpdateJob(job);
-            bustCache = true;
+            autoAppDao.saveJobLater(job);
         }
     }
 
-    private boolean sendTradeRequest(CoinbaseOrderRequest order)
-            throws NoSuchAlgorithmException, InvalidKeyException, JsonProcessingException {
-        String timestamp = String.valueOf(Instant.now().getEpochSecond());
-        String signature = SignatureTool.getSignature(
-                timestamp,
-                HttpMethod.POST.name(),
-                SignatureTool.getOrdersRequestPath(),
-                mapper.writeValueAsString(order)
-        );
-
-        log.info("Sending trade request: {}", mapper.writeValueAsString(order));
+    private Mono<Boolean> sendTradeRequest(OrderEncoder.EncodedOrder order, long triggerSequence) {
+        log.info("Sending trade request: {}", order);
 
-
-        ClientResponse response = coinbaseTraderClient.trade(timestamp, signature, mapper.writeValueAsString(order)).block();
-
-        if (response.statusCode().isError()) {
-            log.error("Failed to place order.");
-            response.bodyToMono(String.class).subscribe(error -> log.error("Failed to place order. Error: {}", error));
-            return false;
-        }
-
-        return true;
-    }
-
-    private double roundPrice(double absolutePrice, double precision) {
-        double precisionPlace = Math.pow(10, -precision);
-        return Math.round(absolutePrice * precisionPlace) / precisionPlace;
+        return coinbaseTraderClient.trade(order.getBytes(), triggerSequence)
+                .flatMap(response -> {
+                    if (response.statusCode().isError()) {
+                        log.error("Failed to place order.");
+                        return response.bodyToMono(String.class)
+                                .doOnNext(error -> log.error("Failed to place order. Error: {}", error))
+                                .then(Mono.just(false));
+                    }
+                    return response.bodyToMono(Void.class).thenReturn(true);
+                });
     }
 }
@@ -0,0 +1,67 @@
+package com.javi.autoapp.service;
+
+import com.javi.autoapp.client.CoinbaseTraderClient;
+import com.javi.autoapp.config.AppConfig;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Opens {@code exchangeWarmConnections} pooled connections to the exchange at startup and sends a time
+ * request on each every {@code exchangeKeepAliveSeconds}, so they are not closed as idle and the first
+ * order after a quiet period does not wait for a TCP and TLS handshake. Requests go through the order
+ * pipeline at the lowest priority, so they are only sent when no other request is waiting.
+ */
+@Slf4j
+@Component
+public class ExchangeKeepAlive {
+    private final CoinbaseTraderClient coinbaseTraderClient;
+    private final OrderPipeline orderPipeline;
+    private final int connections;
+    private final ScheduledExecutorService executor;
+
+    public ExchangeKeepAlive(AppConfig appConfig, CoinbaseTraderClient coinbaseTraderClient, OrderPipeline orderPipeline) {
+        this.coinbaseTraderClient = coinbaseTraderClient;
+        this.orderPipeline = orderPipeline;
+        this.connections = Math.min(
+                Math.max(0, appConfig.getExchangeWarmConnections()),
+                Math.max(1, appConfig.getOrderPipelineMaxInFlight()));
+        if (connections == 0 || appConfig.getExchangeKeepAliveSeconds() <= 0) {
+            this.executor = null;
+            return;
+        }
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "exchange-keep-alive");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.scheduleWithFixedDelay(
+                this::ping, 0, appConfig.getExchangeKeepAliveSeconds(), TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Sends the time requests concurrently, so each one holds a separate pooled connection.
+     */
+    private void ping() {
+        Mono<Void> time = coinbaseTraderClient.getTime()
+                .flatMap(response -> response.bodyToMono(Void.class));
+        Flux.range(0, connections)
+                .flatMap(index -> orderPipeline.submit(OrderPipeline.Priority.KEEP_ALIVE, time), connections)
+                .subscribe(
+                        done -> { },
+                        error -> log.warn("Failed to keep exchange connections alive. Error: {}", error.getMessage()));
+    }
+}
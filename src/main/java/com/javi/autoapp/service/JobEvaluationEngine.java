@@ -0,0 +1,56 @@
+package com.javi.autoapp.service;
+
+import com.javi.autoapp.config.AppConfig;
+import com.javi.autoapp.util.ProductRegistry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * Partitions job evaluation by product across a fixed pool of single threaded workers. Every product
+ * has exactly one owner thread, so all state of a product's jobs is only touched from that thread and
+ * needs no locking, while products on different partitions are evaluated in parallel.
+ */
+@Slf4j
+@Component
+public class JobEvaluationEngine {
+    private final ExecutorService[] partitions;
+
+    public JobEvaluationEngine(AppConfig appConfig) {
+        partitions = new ExecutorService[Math.max(1, appConfig.getEvaluationThreads())];
+        for (int partition = 0; partition < partitions.length; partition++) {
+            String name = "job-evaluation-" + partition;
+            partitions[partition] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                thread.setUncaughtExceptionHandler((failed, error) ->
+                        log.error("Job evaluation failed on {}. Error: {}", failed.getName(), error.getMessage(), error));
+                return thread;
+            });
+        }
+    }
+
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+    public int partitionOf(int productIndex) {
+        return productIndex == ProductRegistry.UNKNOWN ? 0 : productIndex % partitions.length;
+    }
+
+    /**
+     * Runs the task on the thread owning the product.
+     */
+    public void execute(int productIndex, Runnable task) {
+        partitions[partitionOf(productIndex)].execute(task);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ExecutorService partition : partitions) {
+            partition.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.javi.autoapp.service;
+
+import com.javi.autoapp.client.RateLimitedException;
+import com.javi.autoapp.config.AppConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+/**
+ * Sends every exchange request, highest {@link Priority} first, at the rate of an
+ * {@link AdaptiveTokenBucket} and with at most {@code orderPipelineMaxInFlight} in flight. The bucket
+ * starts at {@code exchangeRequestsPerSecond} and backs off when the exchange answers 429, and the
+ * rate limited request is queued again ahead of later ones of its priority. Requests wait in a queue
+ * of {@code orderPipelineQueueCapacity}, once it is full only orders are accepted, and each one fails
+ * with a {@link TimeoutException} after {@code orderRequestTimeoutSeconds} in flight. Callers get the
+ * result on a network thread and hand it to the job's owner thread.
+ */
+@Slf4j
+@Component
+public class OrderPipeline {
+    private static final int MAX_RATE_LIMITED_RETRIES = 3;
+
+    public enum Priority {
+        ORDER,
+        FILL_CHECK,
+        STATS,
+        KEEP_ALIVE
+    }
+
+    private final Duration timeout;
+    private final int queueCapacity;
+    private final AdaptiveTokenBucket tokens;
+    private final Semaphore inFlight;
+    private final PriorityBlockingQueue<Submission> queue = new PriorityBlockingQueue<>();
+    private final Map<String, Submission> queuedByKey = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger sending = new AtomicInteger();
+    private final AtomicInteger[] queuedByPriority = new AtomicInteger[Priority.values().length];
+    private final Timer[] waitTimers = new Timer[Priority.values().length];
+    private final Counter rejected;
+    private final Counter coalesced;
+    private final Counter rateLimited;
+    private final Counter timedOut;
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+
+    public OrderPipeline(AppConfig appConfig, MeterRegistry meterRegistry) {
+        int maxInFlight = Math.max(1, appConfig.getOrderPipelineMaxInFlight());
+        this.timeout = Duration.ofSeconds(appConfig.getOrderRequestTimeoutSeconds());
+        this.queueCapacity = Math.max(1, appConfig.getOrderPipelineQueueCapacity());
+        this.tokens = new AdaptiveTokenBucket(appConfig.getExchangeRequestsPerSecond());
+        this.inFlight = new Semaphore(maxInFlight);
+        this.rejected = meterRegistry.counter("autoapp.orders.rejected");
+        this.coalesced = meterRegistry.counter("autoapp.orders.coalesced");
+        this.rateLimited = meterRegistry.counter("autoapp.orders.ratelimited");
+        this.timedOut = meterRegistry.counter("autoapp.orders.timeouts");
+        meterRegistry.gauge("autoapp.orders.rate", tokens, AdaptiveTokenBucket::getRate);
+        for (Priority priority : Priority.values()) {
+            Tags tags = Tags.of("priority", priority.name().toLowerCase(Locale.ROOT));
+            queuedByPriority[priority.ordinal()] = meterRegistry.gauge("autoapp.orders.queued", tags, new AtomicInteger());
+            waitTimers[priority.ordinal()] = Timer.builder("autoapp.orders.wait")
+                    .description("Time from a request being queued to it being sent")
+                    .tags(tags)
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(meterRegistry);
+        }
+
+        this.dispatcher = new Thread(this::dispatch, "order-pipeline");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Queues the request when the returned Mono is subscribed, it completes with the request's result,
+     * or fails when the queue is full, the request times out or fails.
+     */
+    public <T> Mono<T> submit(Priority priority, Mono<T> request) {
+        return submit(priority, null, request);
+    }
+
+    /**
+     * Like {@link #submit(Priority, Mono)}, but joins a request with the same key still in the queue
+     * instead of queueing another, so the key must identify requests returning the same type.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> submit(Priority priority, String key, Mono<T> request) {
+        return Mono.create(sink -> {
+            MonoSink<Object> caller = (MonoSink<Object>) (MonoSink<?>) sink;
+            if (key != null) {
+                Submission existing = queuedByKey.get(key);
+                if (existing != null && existing.join(caller)) {
+                    coalesced.increment();
+                    return;
+                }
+            }
+            if (priority != Priority.ORDER && queued.get() >= queueCapacity) {
+                rejected.increment();
+                sink.error(new IllegalStateException("Order pipeline is full"));
+                return;
+            }
+
+            Submission submission = new Submission(priority, key, (Mono<Object>) request, caller);
+            if (key != null) {
+                queuedByKey.put(key, submission);
+            }
+            enqueue(submission);
+        });
+    }
+
+    /**
+     * Requests queued or in flight.
+     */
+    public int getQueued() {
+        return queued.get() + sending.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        dispatcher.interrupt();
+    }
+
+    private void enqueue(Submission submission) {
+        submission.queuedNanos = System.nanoTime();
+        queued.incrementAndGet();
+        queuedByPriority[submission.priority.ordinal()].incrementAndGet();
+        queue.add(submission);
+    }
+
+    /**
+     * Runs on the dispatcher thread. A slot and a token are taken before the next request, so a request
+     * queued while waiting for them is still sent in priority order.
+     */
+    private void dispatch() {
+        while (running) {
+            try {
+                inFlight.acquire();
+                tokens.acquire();
+                send(queue.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception error) {
+                inFlight.release();
+                log.error("Failed to dispatch exchange request. Error: {}", error.getMessage());
+            }
+        }
+    }
+
+    private void send(Submission submission) {
+        submission.dispatch();
+        sending.incrementAndGet();
+        if (submission.key != null) {
+            queuedByKey.remove(submission.key, submission);
+        }
+        queued.decrementAndGet();
+        queuedByPriority[submission.priority.ordinal()].decrementAndGet();
+        waitTimers[submission.priority.ordinal()].record(System.nanoTime() - submission.queuedNanos, TimeUnit.NANOSECONDS);
+
+        submission.request
+                .timeout(timeout)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .doFinally(signal -> {
+                    sending.decrementAndGet();
+                    inFlight.release();
+                })
+                .subscribe(result -> {
+                    tokens.onSuccess();
+                    submission.success(result.orElse(null));
+                }, error -> {
+                    if (error instanceof RateLimitedException) {
+                        rateLimited.increment();
+                        tokens.onRateLimited(((RateLimitedException) error).getRetryAfterMillis());
+                        if (submission.attempts++ < MAX_RATE_LIMITED_RETRIES) {
+                            enqueue(submission); // Keeps its sequence, ahead of later requests of its priority
+                            return;
+                        }
+                    } else if (error instanceof TimeoutException) {
+                        timedOut.increment();
+                    }
+                    submission.error(error);
+                });
+    }
+
+    private final class Submission implements Comparable<Submission> {
+        private final Priority priority;
+        private final long order = sequence.getAndIncrement();
+        private final String key;
+        private final Mono<Object> request;
+        private final List<MonoSink<Object>> callers = new ArrayList<>(1);
+        private boolean dispatched;
+        private long queuedNanos;
+        private int attempts;
+
+        private Submission(Priority priority, String key, Mono<Object> request, MonoSink<Object> caller) {
+            this.priority = priority;
+            this.key = key;
+            this.request = request;
+            this.callers.add(caller);
+        }
+
+        private synchronized boolean join(MonoSink<Object> caller) {
+            if (dispatched) {
+                return false;
+            }
+            callers.add(caller);
+            return true;
+        }
+
+        private synchronized void dispatch() {
+            dispatched = true;
+        }
+
+        private void success(Object result) {
+            callers.forEach(caller -> caller.success(result));
+        }
+
+        private void error(Throwable error) {
+            callers.forEach(caller -> caller.error(error));
+        }
+
+        @Override
+        public int compareTo(Submission other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(order, other.order);
+        }
+    }
+}
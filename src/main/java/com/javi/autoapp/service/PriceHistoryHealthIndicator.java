@@ -0,0 +1,26 @@
+package com.javi.autoapp.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports the progress of seeding price history from candles under {@code /actuator/health}. Always up,
+ * products still warming up trade once their history is seeded.
+ */
+@Component
+@RequiredArgsConstructor
+public class PriceHistoryHealthIndicator extends AbstractHealthIndicator {
+    private final ProductsService productsService;
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) {
+        int pending = productsService.getWarmUpPending();
+        builder.up()
+                .withDetail("warmingUp", pending > 0)
+                .withDetail("pendingProducts", pending)
+                .withDetail("seededProducts", productsService.getWarmUpSeeded())
+                .withDetail("failedProducts", productsService.getWarmUpFailed());
+    }
+}
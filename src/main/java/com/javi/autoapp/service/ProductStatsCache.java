@@ -0,0 +1,116 @@
+package com.javi.autoapp.service;
+
+import com.javi.autoapp.client.model.CoinbaseStatsResponse;
+import com.javi.autoapp.config.AppConfig;
+import com.javi.autoapp.util.ProductRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+/**
+ * Product stats by product, kept for {@code statsCacheTtlSeconds}. Stats older than
+ * {@code statsRefreshAheadSeconds} before expiring are still returned while a refresh is sent in the
+ * background, and callers asking for a product whose stats are being fetched share that request, so
+ * there is at most one stats request per product in the order pipeline.
+ */
+@Slf4j
+@Component
+public class ProductStatsCache {
+    private final ProductsService productsService;
+    private final OrderPipeline orderPipeline;
+    private final long ttlMillis;
+    private final long refreshAfterMillis;
+    private final AtomicReferenceArray<CachedStats> stats = new AtomicReferenceArray<>(ProductRegistry.size());
+    private final AtomicReferenceArray<MonoProcessor<CoinbaseStatsResponse>> requests =
+            new AtomicReferenceArray<>(ProductRegistry.size());
+    private final Counter hits;
+    private final Counter misses;
+    private final Timer refreshLatency;
+
+    public ProductStatsCache(
+            AppConfig appConfig,
+            ProductsService productsService,
+            OrderPipeline orderPipeline,
+            MeterRegistry meterRegistry) {
+        this.productsService = productsService;
+        this.orderPipeline = orderPipeline;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(appConfig.getStatsCacheTtlSeconds());
+        this.refreshAfterMillis = Math.max(0, ttlMillis - TimeUnit.SECONDS.toMillis(appConfig.getStatsRefreshAheadSeconds()));
+        this.hits = meterRegistry.counter("autoapp.stats.cache.hits");
+        this.misses = meterRegistry.counter("autoapp.stats.cache.misses");
+        this.refreshLatency = Timer.builder("autoapp.stats.refresh.latency")
+                .description("Time from a stats refresh being queued to its response")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Stats of the product, from the cache or the request already in flight for it when there is one.
+     * Looked up when the returned Mono is subscribed, and safe to subscribe from any thread.
+     */
+    public Mono<CoinbaseStatsResponse> getStats(int productIndex) {
+        if (productIndex == ProductRegistry.UNKNOWN) {
+            return Mono.error(new IllegalArgumentException("Unknown product"));
+        }
+        return Mono.defer(() -> {
+            CachedStats cached = stats.get(productIndex);
+            long age = cached == null ? Long.MAX_VALUE : System.currentTimeMillis() - cached.fetchedMillis;
+            if (age >= ttlMillis) {
+                misses.increment();
+                return refresh(productIndex);
+            }
+            hits.increment();
+            if (age >= refreshAfterMillis) {
+                refresh(productIndex).subscribe(
+                        response -> { },
+                        error -> log.warn("Failed to refresh stats for {}. Error: {}",
+                                ProductRegistry.getProductId(productIndex), error.getMessage()));
+            }
+            return Mono.just(cached.stats);
+        });
+    }
+
+    /**
+     * The request in flight for the product, or a new one queued in the order pipeline.
+     */
+    private Mono<CoinbaseStatsResponse> refresh(int productIndex) {
+        MonoProcessor<CoinbaseStatsResponse> inFlight = requests.get(productIndex);
+        if (inFlight != null) {
+            return inFlight;
+        }
+        MonoProcessor<CoinbaseStatsResponse> request = MonoProcessor.create();
+        if (!requests.compareAndSet(productIndex, null, request)) {
+            return refresh(productIndex); // Lost the race to another caller, share its request
+        }
+
+        long startNanos = System.nanoTime();
+        orderPipeline.submit(
+                OrderPipeline.Priority.STATS,
+                productsService.getProductStats(ProductRegistry.getProductId(productIndex)))
+                .doOnSuccess(response -> {
+                    refreshLatency.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+                    if (response != null) {
+                        stats.set(productIndex, new CachedStats(response, System.currentTimeMillis()));
+                    }
+                })
+                .doFinally(signal -> requests.compareAndSet(productIndex, request, null))
+                .subscribe(request);
+        return request;
+    }
+
+    private static final class CachedStats {
+        private final CoinbaseStatsResponse stats;
+        private final long fetchedMillis;
+
+        private CachedStats(CoinbaseStatsResponse stats, long fetchedMillis) {
+            this.stats = stats;
+            this.fetchedMillis = fetchedMillis;
+        }
+    }
+}
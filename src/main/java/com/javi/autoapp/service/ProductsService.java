@@ -1,242 +1,796 @@
 package com.javi.autoapp.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.javi.autoapp.client.CoinbaseTickerEventWebSocket;
 import com.javi.autoapp.client.CoinbaseTickerWebSocket;
 import com.javi.autoapp.client.CoinbaseTraderClient;
 import com.javi.autoapp.client.model.CoinbaseStatsResponse;
 import com.javi.autoapp.client.model.CoinbaseTicker;
+import com.javi.autoapp.client.model.CoinbaseTickerEvent;
 import com.javi.autoapp.client.model.CoinbaseWebSocketSubscribe;
 import com.javi.autoapp.config.AppConfig;
 import com.javi.autoapp.graphql.type.Currency;
-import com.javi.autoapp.model.ProductPriceSegment;
-import com.javi.autoapp.util.SignatureTool;
+import com.javi.autoapp.journal.TickJournal;
+import com.javi.autoapp.model.PriceSegmentRing;
+import com.javi.autoapp.model.ProductPriceTable;
+import com.javi.autoapp.util.MappedSnapshotFile;
+import com.javi.autoapp.util.ProductRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import java.io.IOException;
 import java.net.URI;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Deque;
 import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
 import java.util.OptionalDouble;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedDeque;
-import java.util.stream.Collectors;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntConsumer;
+import javax.annotation.PreDestroy;
 import javax.websocket.ContainerProvider;
 import javax.websocket.DeploymentException;
 import javax.websocket.MessageHandler;
 import javax.websocket.Session;
 import javax.websocket.WebSocketContainer;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.http.HttpMethod;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.ClientResponse;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @Slf4j
 @Service
-public class ProductsService implements MessageHandler.Whole<CoinbaseTicker> {
+public class ProductsService implements MessageHandler.Whole<CoinbaseTickerEvent> {
     public static final int MIN_SEGMENTS = 5;
     public static final int MAX_SEGMENTS = 35;
 
+    private static final long SEGMENT_MILLIS = Duration.ofMinutes(15).toMillis();
     private static final double CHANGE_LOW_THRESHOLD = 0.995;
     private static final double CHANGE_HIGH_THRESHOLD = 1.005;
+    private static final long MIN_BACKOFF_MILLIS = 1000;
+    private static final Duration CANDLE_TIMEOUT = Duration.ofSeconds(60);
+    private static final int CANDLE_RETRIES = 2;
 
     private final ObjectMapper mapper = new ObjectMapper();
     private final CoinbaseTraderClient coinbaseTraderClient;
+    private final OrderPipeline orderPipeline;
     private final AppConfig appConfig;
-    private Session session;
-    private final Set<String> activeFeeds;
-    private final Map<String, String> pricesMap;
-    private final Map<String, String> previousPricesMap;
-    private final Map<String, Deque<ProductPriceSegment>> priceSegments15Map;
+    private final ScheduledExecutorService connector;
+    private final Counter reconnects;
+    private final Counter backfilledBuckets;
+    private final Timer downtime;
+    private final Counter warmUpSegments;
+    private final AtomicLongArray warmingUp;
+    private final AtomicInteger warmUpPending = new AtomicInteger();
+    private final AtomicInteger warmUpSeeded = new AtomicInteger();
+    private final AtomicInteger warmUpFailed = new AtomicInteger();
+    private final Set<String> subscribedProducts;
+    private final MappedSnapshotFile snapshotFile;
+    private final ByteBuffer snapshotBuffer;
+    private final TickJournal tickJournal;
+    private Set<String> wantedProducts = Collections.emptySet();
+    private long connectBackoffMillis;
+    private long nextConnectMillis;
+    // When the feed was lost, for the reconnect metrics, and when the history stops, for the backfill
+    private long disconnectedMillis;
+    private long backfillFromMillis;
+    private volatile long lastMessageMillis;
+    private volatile Session session;
+    private final AtomicLongArray activeFeeds;
+    private final ProductPriceTable priceTable;
+    private final PriceSegmentRing[] priceSegments15;
+    private volatile IntConsumer[] tickListeners = new IntConsumer[0];
 
-    public ProductsService(AppConfig appConfig, CoinbaseTraderClient coinbaseTraderClient) {
+    public ProductsService(
+            AppConfig appConfig,
+            CoinbaseTraderClient coinbaseTraderClient,
+            OrderPipeline orderPipeline,
+            MeterRegistry meterRegistry) {
         this.appConfig = appConfig;
         this.coinbaseTraderClient = coinbaseTraderClient;
-        this.activeFeeds = Collections.synchronizedSet(new HashSet<>());
-        activeFeeds.add(Currency.BTC.getLabel());
-        this.priceSegments15Map = new ConcurrentHashMap<>();
-        this.pricesMap = new ConcurrentHashMap<>();
-        this.previousPricesMap = new ConcurrentHashMap<>();
+        this.orderPipeline = orderPipeline;
+        this.activeFeeds = new AtomicLongArray((ProductRegistry.size() + Long.SIZE - 1) / Long.SIZE);
+        markActiveFeed(Currency.BTC.ordinal());
+        this.priceSegments15 = new PriceSegmentRing[ProductRegistry.size()];
+        for (int productIndex = 0; productIndex < priceSegments15.length; productIndex++) {
+            priceSegments15[productIndex] = new PriceSegmentRing(MAX_SEGMENTS, SEGMENT_MILLIS);
+        }
+        this.priceTable = new ProductPriceTable(ProductRegistry.size());
+        this.subscribedProducts = new HashSet<>();
+        this.reconnects = meterRegistry.counter("autoapp.marketdata.reconnects");
+        this.backfilledBuckets = meterRegistry.counter("autoapp.marketdata.backfilled.buckets");
+        this.downtime = meterRegistry.timer("autoapp.marketdata.downtime");
+        this.warmUpSegments = meterRegistry.counter("autoapp.marketdata.warmup.segments");
+        this.warmingUp = new AtomicLongArray(activeFeeds.length());
+        this.connector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "market-data-connector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.tickJournal = openTickJournal();
+        this.snapshotBuffer = ByteBuffer.allocate(getMaxSnapshotBytes());
+        this.snapshotFile = openSnapshotFile(snapshotBuffer.capacity());
+        if (snapshotFile != null) {
+            this.connector.execute(this::restoreSnapshot);
+            this.connector.scheduleWithFixedDelay(
+                    this::saveSnapshot,
+                    appConfig.getMarketDataSnapshotIntervalSeconds(),
+                    appConfig.getMarketDataSnapshotIntervalSeconds(),
+                    TimeUnit.SECONDS);
+        }
+        this.connector.scheduleWithFixedDelay(() -> {
+            try {
+                superviseConnection();
+            } catch (Exception error) {
+                log.error("Failed to supervise the market data feed. Error: {}", error.getMessage());
+            }
+        }, 1, 1, TimeUnit.SECONDS);
     }
 
     public OptionalDouble getPrice(String productId) {
-        String priceString = pricesMap.get(productId);
+        return toOptional(getPrice(ProductRegistry.indexOf(productId)));
+    }
 
-        if (priceString == null) {
-            return OptionalDouble.empty();
+    /**
+     * Latest price for the product, or {@link Double#NaN} when no tick has been received yet.
+     */
+    public double getPrice(int productIndex) {
+        if (productIndex == ProductRegistry.UNKNOWN) {
+            return Double.NaN;
         }
+        return smoothPrice(productIndex, priceTable.getPrice(productIndex));
+    }
 
-        try {
-            String previousPriceString = previousPricesMap.get(productId);
-            if (previousPriceString == null) {
-                previousPricesMap.put(productId, priceString);
-                return OptionalDouble.of(Double.parseDouble(priceString));
-            } else {
-                double previousPrice = Double.parseDouble(previousPriceString);
-                double price = Double.parseDouble(priceString);
-                double priceDifference = price / previousPrice;
-                if (priceDifference > CHANGE_LOW_THRESHOLD && priceDifference < CHANGE_HIGH_THRESHOLD) {
-                    return OptionalDouble.of(previousPrice);
-                } else {
-                    return OptionalDouble.of(price);
-                }
-            }
-        } catch (Exception e) {
-            return OptionalDouble.empty();
+    /**
+     * Reads the product's latest tick into {@code tick} and returns its price like
+     * {@link #getPrice(int)}, so the price a decision is made on comes with the sequence of its tick.
+     */
+    public double readPrice(int productIndex, ProductPriceTable.Entry tick) {
+        if (productIndex == ProductRegistry.UNKNOWN) {
+            return Double.NaN;
+        }
+        return smoothPrice(productIndex, priceTable.read(productIndex, tick).getPrice());
+    }
+
+    private double smoothPrice(int productIndex, double price) {
+        if (Double.isNaN(price)) {
+            return Double.NaN;
+        }
+
+        double previousPrice = priceTable.putPreviousPriceIfAbsent(productIndex, price);
+        if (Double.isNaN(previousPrice)) {
+            return price;
+        }
+
+        double priceDifference = price / previousPrice;
+        if (priceDifference > CHANGE_LOW_THRESHOLD && priceDifference < CHANGE_HIGH_THRESHOLD) {
+            return previousPrice;
+        } else {
+            return price;
         }
     }
 
     public OptionalDouble getMid(String productId) {
-        Deque<ProductPriceSegment> priceSegment = priceSegments15Map.get(productId);
-        if (priceSegment != null && priceSegment.size() >= MIN_SEGMENTS) {
-            return priceSegment.stream().mapToDouble(ProductPriceSegment::getOpenPrice).average();
+        return toOptional(getMid(ProductRegistry.indexOf(productId)));
+    }
+
+    public double getMid(int productIndex) {
+        PriceSegmentRing priceSegments = getSegments(productIndex);
+        if (priceSegments != null && priceSegments.size() >= MIN_SEGMENTS) {
+            return priceSegments.getMid();
         } else {
-            return OptionalDouble.empty();
+            return Double.NaN;
         }
     }
 
     public OptionalDouble getChange(String productId) {
-        Deque<ProductPriceSegment> priceSegment = priceSegments15Map.get(productId);
-        if (priceSegment != null && priceSegment.size() >= MIN_SEGMENTS) {
-            return priceSegment.stream().mapToDouble(ProductPriceSegment::getChangePrice).average();
+        return toOptional(getChange(ProductRegistry.indexOf(productId)));
+    }
+
+    public double getChange(int productIndex) {
+        PriceSegmentRing priceSegments = getSegments(productIndex);
+        if (priceSegments != null && priceSegments.size() >= MIN_SEGMENTS) {
+            return priceSegments.getChange();
         } else {
-            return OptionalDouble.empty();
+            return Double.NaN;
         }
     }
 
     public OptionalDouble getMax(String productId) {
-        Deque<ProductPriceSegment> priceSegment = priceSegments15Map.get(productId);
-        if (priceSegment != null && priceSegment.size() >= MIN_SEGMENTS) {
-            return priceSegment.stream().mapToDouble(ProductPriceSegment::getHighPrice).max();
+        return toOptional(getMax(ProductRegistry.indexOf(productId)));
+    }
+
+    public double getMax(int productIndex) {
+        PriceSegmentRing priceSegments = getSegments(productIndex);
+        if (priceSegments != null && priceSegments.size() >= MIN_SEGMENTS) {
+            return priceSegments.getMax();
         } else {
-            return OptionalDouble.empty();
+            return Double.NaN;
         }
     }
 
     public OptionalDouble getMin(String productId) {
-        Deque<ProductPriceSegment> priceSegment = priceSegments15Map.get(productId);
-        if (priceSegment != null && priceSegment.size() >= MIN_SEGMENTS) {
-            return priceSegment.stream().mapToDouble(ProductPriceSegment::getLowPrice).min();
+        return toOptional(getMin(ProductRegistry.indexOf(productId)));
+    }
+
+    public double getMin(int productIndex) {
+        PriceSegmentRing priceSegments = getSegments(productIndex);
+        if (priceSegments != null && priceSegments.size() >= MIN_SEGMENTS) {
+            return priceSegments.getMin();
         } else {
-            return OptionalDouble.empty();
+            return Double.NaN;
         }
     }
 
+    /**
+     * Registers a listener called on the WebSocket thread with the product index after every price
+     * update. Listeners must hand work off rather than evaluate inline.
+     */
+    public synchronized void addTickListener(IntConsumer listener) {
+        IntConsumer[] listeners = Arrays.copyOf(tickListeners, tickListeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+        tickListeners = listeners;
+    }
+
+    /**
+     * True while the product's history is being seeded from candles after it was subscribed.
+     */
+    public boolean isWarmingUp(int productIndex) {
+        return productIndex != ProductRegistry.UNKNOWN && isBitSet(warmingUp, productIndex);
+    }
+
+    public int getWarmUpPending() {
+        return warmUpPending.get();
+    }
+
+    public int getWarmUpSeeded() {
+        return warmUpSeeded.get();
+    }
+
+    public int getWarmUpFailed() {
+        return warmUpFailed.get();
+    }
+
     public Set<String> getActiveFeeds() {
-        return activeFeeds;
+        Set<String> productIds = new HashSet<>();
+        for (int productIndex = 0; productIndex < ProductRegistry.size(); productIndex++) {
+            if (isActiveFeed(productIndex)) {
+                productIds.add(ProductRegistry.getProductId(productIndex));
+            }
+        }
+        return productIds;
     }
 
     public void clearActiveFeeds() {
-        activeFeeds.clear();
+        for (int word = 0; word < activeFeeds.length(); word++) {
+            activeFeeds.set(word, 0L);
+        }
     }
 
     public void clearStaleData() {
-        activeFeeds.clear();
-        priceSegments15Map.clear();
+        clearActiveFeeds();
+        for (PriceSegmentRing priceSegments : priceSegments15) {
+            priceSegments.clear();
+        }
     }
 
     @Override
-    public void onMessage(CoinbaseTicker message) {
-        if (message.getProductId() == null || message.getPrice() == null) {
+    public void onMessage(CoinbaseTickerEvent message) {
+        long receiveMillis = System.currentTimeMillis();
+        lastMessageMillis = receiveMillis;
+        if (!message.isTicker()) {
             return;
         }
+        if (message.getReceiveTimeMillis() != 0) {
+            receiveMillis = message.getReceiveTimeMillis(); // Replayed tick
+        } else if (tickJournal != null) {
+            tickJournal.append(message, receiveMillis);
+        }
+
+        int productIndex = message.getProductIndex();
+        markActiveFeed(productIndex);
+
+        priceTable.update(productIndex, message.getPrice(), message.getSequence(), message.getExchangeTimeMillis());
+
+        if (priceSegments15[productIndex].aggregatePrice(message.getPrice(), receiveMillis)) {
+            log.info("Creating a new 15 minute price segment for {}", ProductRegistry.getProductId(productIndex));
+        }
+
+        for (IntConsumer listener : tickListeners) {
+            listener.accept(productIndex);
+        }
+    }
+
+    /**
+     * Brings the ticker subscriptions in line with the given products on the connector thread. Products
+     * are subscribed and unsubscribed individually on the open session, so products that stay keep
+     * their history and feed, and the caller never waits for a connect.
+     */
+    public void updateSubscribedCurrencies(Set<String> productIds) {
+        if (productIds.isEmpty()) {
+            return; // Nothing to update
+        }
+
+        // Hold off trading on products without history until the connector has had a chance to seed them
+        Set<String> wantedProductIds = new HashSet<>(productIds);
+        wantedProductIds.stream()
+                .filter(productId -> getSegments(ProductRegistry.indexOf(productId)) != null)
+                .filter(productId -> getSegments(ProductRegistry.indexOf(productId)).size() == 0)
+                .forEach(productId -> setWarmingUp(productId, true));
+        connector.execute(() -> {
+            try {
+                applySubscriptions(wantedProductIds);
+            } catch (Exception error) {
+                log.error("Failed to update subcription tickers. Error: {}", error.getMessage());
+            } finally {
+                wantedProductIds.forEach(productId -> setWarmingUp(productId, false));
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        connector.shutdownNow();
+        if (tickJournal != null) {
+            try {
+                tickJournal.close();
+            } catch (IOException error) {
+                log.error("Failed to close the tick journal. Error: {}", error.getMessage());
+            }
+        }
+        if (snapshotFile != null) {
+            saveSnapshot();
+            try {
+                snapshotFile.close();
+            } catch (IOException error) {
+                log.error("Failed to close the market data snapshot. Error: {}", error.getMessage());
+            }
+        }
+    }
+
+    private void applySubscriptions(Set<String> productIds) throws IOException {
+        wantedProducts = productIds;
+        if (!isConnected()) {
+            superviseConnection(); // Subscribes to the wanted products once connected
+            return;
+        }
+
+        Set<String> removedProductIds = new HashSet<>(subscribedProducts);
+        removedProductIds.removeAll(productIds);
+        Set<String> addedProductIds = new HashSet<>(productIds);
+        addedProductIds.removeAll(subscribedProducts);
+
+        // Remove any stale data for unsubscribed feeds
+        if (!removedProductIds.isEmpty()) {
+            log.info("Unsubscribing from the following currency feeds: {}", removedProductIds);
+            sendSubscription(CoinbaseWebSocketSubscribe.UNSUBSCRIBE, removedProductIds);
+            subscribedProducts.removeAll(removedProductIds);
+            removedProductIds.forEach(productId -> clearSegments(ProductRegistry.indexOf(productId)));
+        }
+
+        // Subscribe to newly required product IDs, any history they have is from an earlier subscription
+        if (!addedProductIds.isEmpty()) {
+            log.info("Subscribing to the following currency feeds: {}", addedProductIds);
+            addedProductIds.forEach(productId -> clearSegments(ProductRegistry.indexOf(productId)));
+            warmUp(addedProductIds);
+            sendSubscription(CoinbaseWebSocketSubscribe.SUBSCRIBE, addedProductIds);
+            subscribedProducts.addAll(addedProductIds);
+        }
+    }
+
+    /**
+     * Runs every second on the connector thread. A session that is closed or has not delivered a message
+     * (tickers or heartbeats) within the heartbeat timeout is replaced, retrying with exponential backoff.
+     * Before reconnecting, products that were already subscribed are backfilled from the candles endpoint
+     * for the time the feed was down and new products are warmed up, then every wanted product is
+     * subscribed again.
+     */
+    private void superviseConnection() {
+        long now = System.currentTimeMillis();
+        if (wantedProducts.isEmpty() || isConnected() || now < nextConnectMillis) {
+            return;
+        }
+
+        if (session != null && disconnectedMillis == 0) {
+            disconnectedMillis = Math.min(now, lastMessageMillis);
+            backfillFromMillis = backfillFromMillis == 0 ? disconnectedMillis : Math.min(backfillFromMillis, disconnectedMillis);
+            log.warn("Market data feed lost, last message {} ms ago", now - lastMessageMillis);
+        }
+
+        // Fill history first, Coinbase closes sessions that do not subscribe within a few seconds
+        Set<String> resumedProductIds = new HashSet<>(subscribedProducts);
+        resumedProductIds.retainAll(wantedProducts);
+        Set<String> restartedProductIds = new HashSet<>(subscribedProducts);
+        restartedProductIds.addAll(wantedProducts);
+        restartedProductIds.removeAll(resumedProductIds);
+        restartedProductIds.forEach(productId -> clearSegments(ProductRegistry.indexOf(productId)));
+        if (backfillFromMillis != 0 && now - backfillFromMillis >= SEGMENT_MILLIS) {
+            long backfillMillis = Math.max(backfillFromMillis - SEGMENT_MILLIS, now - (MAX_SEGMENTS * SEGMENT_MILLIS));
+            fillSegments(resumedProductIds, backfillMillis, now, backfilledBuckets);
+        }
+        restartedProductIds.retainAll(wantedProducts);
+        warmUp(restartedProductIds);
+
+        // History is now current for every wanted product, a failed connect only needs to fill the gap
+        subscribedProducts.clear();
+        subscribedProducts.addAll(wantedProducts);
+
+        try {
+            connect();
+            log.info("Subscribing to the following currency feeds: {}", wantedProducts);
+            sendSubscription(CoinbaseWebSocketSubscribe.SUBSCRIBE, wantedProducts);
+        } catch (Exception error) {
+            connectBackoffMillis = connectBackoffMillis == 0
+                    ? MIN_BACKOFF_MILLIS
+                    : Math.min(connectBackoffMillis * 2, appConfig.getMarketDataMaxBackoffSeconds() * 1000);
+            nextConnectMillis = System.currentTimeMillis() + connectBackoffMillis;
+            if (disconnectedMillis == 0) {
+                disconnectedMillis = now;
+            }
+            if (backfillFromMillis == 0) {
+                backfillFromMillis = now;
+            }
+            log.error("Failed to connect to the market data feed, retrying in {} ms. Error: {}",
+                    connectBackoffMillis, error.getMessage());
+            return;
+        }
+        connectBackoffMillis = 0;
+        nextConnectMillis = 0;
+        backfillFromMillis = 0;
+
+        if (disconnectedMillis != 0) {
+            reconnects.increment();
+            downtime.record(System.currentTimeMillis() - disconnectedMillis, TimeUnit.MILLISECONDS);
+            disconnectedMillis = 0;
+        }
+    }
 
-        activeFeeds.add(message.getProductId());
+    private TickJournal openTickJournal() {
+        if (!appConfig.isTickJournalEnabled()) {
+            return null;
+        }
+        try {
+            return new TickJournal(
+                    Paths.get(appConfig.getTickJournalDirectory()),
+                    appConfig.getTickJournalSegmentMegabytes() * 1024 * 1024,
+                    TimeUnit.MINUTES.toMillis(appConfig.getTickJournalSegmentMinutes()),
+                    appConfig.getTickJournalRetentionMegabytes() * 1024 * 1024,
+                    TimeUnit.HOURS.toMillis(appConfig.getTickJournalRetentionHours()));
+        } catch (IOException error) {
+            log.error("Failed to open the tick journal, ticks are not recorded. Error: {}", error.getMessage());
+            return null;
+        }
+    }
 
-        pricesMap.put(message.getProductId(), message.getPrice());
+    private MappedSnapshotFile openSnapshotFile(int maxPayloadBytes) {
+        if (appConfig.getMarketDataSnapshotPath().isEmpty()) {
+            return null;
+        }
+        try {
+            return new MappedSnapshotFile(Paths.get(appConfig.getMarketDataSnapshotPath()), maxPayloadBytes);
+        } catch (IOException error) {
+            log.error("Failed to open the market data snapshot, snapshots are disabled. Error: {}", error.getMessage());
+            return null;
+        }
+    }
 
-        Deque<ProductPriceSegment> priceSegments15Queue = priceSegments15Map.get(message.getProductId());
-        if (priceSegments15Queue == null) {
-            priceSegments15Queue = new ConcurrentLinkedDeque<>();
+    private int getMaxSnapshotBytes() {
+        int maxProductIdBytes = 0;
+        for (int productIndex = 0; productIndex < ProductRegistry.size(); productIndex++) {
+            maxProductIdBytes = Math.max(maxProductIdBytes, ProductRegistry.getProductId(productIndex).length());
         }
+        return Integer.BYTES
+                + (ProductRegistry.size() * (1 + maxProductIdBytes + priceSegments15[0].getSnapshotBytes()));
+    }
 
-        ProductPriceSegment fistPriceSegment = priceSegments15Queue.pollFirst();
-        if (fistPriceSegment == null || Instant.now().minus(Duration.ofMinutes(15)).isAfter(fistPriceSegment.getTimestamp())) {
-            log.info("Creating a new 15 minute price segment for {}", message.getProductId());
-            if (fistPriceSegment != null) {
-                ProductPriceSegment previousPriceSegment = priceSegments15Queue.pollFirst();
-                if (previousPriceSegment != null) {
-                    fistPriceSegment.setChangePrice(fistPriceSegment.getOpenPrice() - previousPriceSegment.getOpenPrice());
-                    priceSegments15Queue.addFirst(previousPriceSegment);
+    /**
+     * Writes the segments of every product with history to the snapshot file. Layout: product count,
+     * then per product the product ID length and ASCII bytes followed by its segments.
+     */
+    private synchronized void saveSnapshot() {
+        try {
+            snapshotBuffer.clear();
+            snapshotBuffer.putInt(0);
+            int products = 0;
+            for (int productIndex = 0; productIndex < priceSegments15.length; productIndex++) {
+                if (priceSegments15[productIndex].size() == 0) {
+                    continue;
                 }
-                priceSegments15Queue.addFirst(fistPriceSegment);
+                byte[] productId = ProductRegistry.getProductId(productIndex).getBytes(StandardCharsets.US_ASCII);
+                snapshotBuffer.put((byte) productId.length);
+                snapshotBuffer.put(productId);
+                priceSegments15[productIndex].writeTo(snapshotBuffer);
+                products++;
             }
-            ProductPriceSegment newPriceSegment = new ProductPriceSegment();
-            newPriceSegment.aggregatePrice(message.getPrice());
-            priceSegments15Queue.addFirst(newPriceSegment);
-        } else {
-            fistPriceSegment.aggregatePrice(message.getPrice());
-            priceSegments15Queue.addFirst(fistPriceSegment);
+            snapshotBuffer.putInt(0, products);
+            snapshotBuffer.flip();
+            snapshotFile.write(snapshotBuffer, System.currentTimeMillis());
+        } catch (Exception error) {
+            log.error("Failed to save the market data snapshot. Error: {}", error.getMessage());
         }
+    }
 
-        if (priceSegments15Queue.size() > MAX_SEGMENTS) {
-            priceSegments15Queue.removeLast();
+    /**
+     * Restores segment history from a snapshot saved within the configured max age. Restored products
+     * are treated as subscribed and backfilled from the time of the snapshot, so once connected they
+     * skip warm up and only have the gap filled. The gap is not a feed drop, it is not counted as a
+     * reconnect or as downtime. Latest prices are not restored, a stale price could trigger a trade
+     * before the first tick arrives.
+     */
+    private void restoreSnapshot() {
+        long savedMillis = snapshotFile.getSavedMillis();
+        long ageMillis = System.currentTimeMillis() - savedMillis;
+        if (savedMillis < 0 || ageMillis > appConfig.getMarketDataSnapshotMaxAgeSeconds() * 1000) {
+            log.info("No recent market data snapshot to restore");
+            return;
         }
-        priceSegments15Map.put(message.getProductId(), priceSegments15Queue);
+
+        Set<String> restoredProductIds = new HashSet<>();
+        PriceSegmentRing discarded = new PriceSegmentRing(MAX_SEGMENTS, SEGMENT_MILLIS);
+        try {
+            ByteBuffer payload = snapshotFile.read();
+            int products = payload.getInt();
+            for (int product = 0; product < products; product++) {
+                byte[] productId = new byte[payload.get()];
+                payload.get(productId);
+                String id = new String(productId, StandardCharsets.US_ASCII);
+                PriceSegmentRing priceSegments = getSegments(ProductRegistry.indexOf(id));
+                if (priceSegments == null) {
+                    discarded.readFrom(payload); // Product no longer listed
+                } else {
+                    priceSegments.readFrom(payload);
+                    restoredProductIds.add(id);
+                }
+            }
+        } catch (Exception error) {
+            log.error("Failed to restore the market data snapshot. Error: {}", error.getMessage());
+            restoredProductIds.forEach(productId -> clearSegments(ProductRegistry.indexOf(productId)));
+            return;
+        }
+
+        subscribedProducts.addAll(restoredProductIds);
+        backfillFromMillis = savedMillis;
+        log.info("Restored price history for {} products from a snapshot {} ms old", restoredProductIds.size(), ageMillis);
     }
 
-    public void updateSubscribedCurrencies(Set<String> productIds)
-            throws IOException, InterruptedException, DeploymentException {
-        if (productIds.equals(activeFeeds) || productIds.isEmpty()) {
-            return; // Nothing to update
+    /**
+     * Seeds the history of products that have none from the candles endpoint, so their mid is available
+     * as soon as they are subscribed instead of after {@link #MIN_SEGMENTS} live segments. Products are
+     * reported as warming up while this runs so trading can hold off on them.
+     */
+    private void warmUp(Set<String> productIds) {
+        if (productIds.isEmpty()) {
+            return;
         }
 
-        // Create new websocket session
-        if (session != null) {
+        productIds.forEach(productId -> setWarmingUp(productId, true));
+        warmUpPending.addAndGet(productIds.size());
+        try {
+            long now = System.currentTimeMillis();
+            int seeded = fillSegments(productIds, now - (MAX_SEGMENTS * SEGMENT_MILLIS), now, warmUpSegments);
+            warmUpSeeded.addAndGet(seeded);
+            warmUpFailed.addAndGet(productIds.size() - seeded);
+            log.info("Warmed up price history for {} of {} products", seeded, productIds.size());
+        } finally {
+            productIds.forEach(productId -> setWarmingUp(productId, false));
+            warmUpPending.addAndGet(-productIds.size());
+        }
+    }
+
+    /**
+     * Fetches candles for the products through the order pipeline at stats priority, no more at a time
+     * than the pipeline sends in parallel so the rest do not crowd its queue, and appends the complete
+     * ones between {@code fromMillis} and {@code toMillis} to each product's segments. Candles that
+     * overlap the segments already recorded are skipped by the ring.
+     *
+     * @return number of products whose candles were fetched
+     */
+    private int fillSegments(Set<String> productIds, long fromMillis, long toMillis, Counter segmentCounter) {
+        AtomicInteger filled = new AtomicInteger();
+        try {
+            Flux.fromIterable(productIds)
+                    .flatMap(productId -> getCandles(productId, fromMillis, toMillis)
+                            .retry(CANDLE_RETRIES)
+                            .doOnNext(candles -> {
+                                int appended = appendCandles(ProductRegistry.indexOf(productId), candles, fromMillis, toMillis);
+                                segmentCounter.increment(appended);
+                                filled.incrementAndGet();
+                                log.info("Filled {} price segments for {}", appended, productId);
+                            })
+                            .onErrorResume(error -> {
+                                log.error("Failed to get candles for {}. Error: {}", productId, error.getMessage());
+                                return Mono.empty();
+                            }), Math.max(1, appConfig.getOrderPipelineMaxInFlight()))
+                    .then()
+                    .block(CANDLE_TIMEOUT);
+        } catch (Exception error) {
+            log.error("Timed out filling price segments. Error: {}", error.getMessage());
+        }
+        return filled.get();
+    }
+
+    private int appendCandles(int productIndex, double[][] candles, long fromMillis, long toMillis) {
+        PriceSegmentRing priceSegments = getSegments(productIndex);
+        if (priceSegments == null) {
+            return 0;
+        }
+
+        // Candles are [time, low, high, open, close, volume] with the newest first
+        int appended = 0;
+        for (int index = candles.length - 1; index >= 0; index--) {
+            double[] candle = candles[index];
+            long bucketMillis = (long) candle[0] * 1000;
+            if (bucketMillis < fromMillis || bucketMillis + SEGMENT_MILLIS > toMillis) {
+                continue;
+            }
+            if (priceSegments.backfillSegment(bucketMillis, (candle[3] + candle[4]) / 2, candle[2], candle[1])) {
+                appended++;
+            }
+        }
+        return appended;
+    }
+
+    private Mono<double[][]> getCandles(String productId, long startMillis, long endMillis) {
+        String start = Instant.ofEpochMilli(startMillis).toString();
+        String end = Instant.ofEpochMilli(endMillis).toString();
+        Mono<double[][]> candles = coinbaseTraderClient.getDayTradeStatusSlices(start, end, productId)
+                .flatMap(response -> response.statusCode().isError()
+                        ? response.bodyToMono(String.class)
+                                .flatMap(error -> Mono.<double[][]>error(new IllegalStateException(error)))
+                        : response.bodyToMono(double[][].class));
+        return orderPipeline.submit(OrderPipeline.Priority.STATS, candles);
+    }
+
+    private boolean isConnected() {
+        return session != null
+                && session.isOpen()
+                && System.currentTimeMillis() - lastMessageMillis
+                    <= appConfig.getMarketDataHeartbeatTimeoutSeconds() * 1000;
+    }
+
+    private void connect() throws IOException, DeploymentException {
+        if (session != null && session.isOpen()) {
             session.close();
         }
         WebSocketContainer webSocketContainer = ContainerProvider.getWebSocketContainer();
-        session = webSocketContainer.connectToServer(
-                CoinbaseTickerWebSocket.class,
-                URI.create(appConfig.getCoinbaseWebSocketUri())
-        );
-        session.addMessageHandler(this);
-        while(!session.isOpen()) {
-            log.info("Waiting for websocket to open...");
-            Thread.sleep(1000);
-        }
-
-        // Subscribe to required product IDs
-        productIds.forEach(priceSegments15Map::remove);
-        log.info("Subscribing to the following currency feeds: {}", productIds.toString());
+        if (appConfig.isStreamingTickerDecoder()) {
+            session = webSocketContainer.connectToServer(
+                    CoinbaseTickerEventWebSocket.class,
+                    URI.create(appConfig.getCoinbaseWebSocketUri())
+            );
+            session.addMessageHandler(this);
+        } else {
+            session = webSocketContainer.connectToServer(
+                    CoinbaseTickerWebSocket.class,
+                    URI.create(appConfig.getCoinbaseWebSocketUri())
+            );
+            session.addMessageHandler(new DataBindTickerHandler(this));
+        }
+    }
+
+    private void sendSubscription(String type, Set<String> productIds) throws IOException {
         CoinbaseWebSocketSubscribe subscribe = new CoinbaseWebSocketSubscribe();
-        subscribe.setType(CoinbaseWebSocketSubscribe.SUBSCRIBE);
-        subscribe.setChannels(CoinbaseWebSocketSubscribe.TICKER_CHANNEL);
+        subscribe.setType(type);
+        subscribe.setChannels(CoinbaseWebSocketSubscribe.TICKER_HEARTBEAT_CHANNELS);
         subscribe.setProductIds(new ArrayList<>(productIds));
-        session.getAsyncRemote().sendText(mapper.writeValueAsString(subscribe));
+        session.getBasicRemote().sendText(mapper.writeValueAsString(subscribe));
+        if (CoinbaseWebSocketSubscribe.SUBSCRIBE.equals(type)) {
+            lastMessageMillis = System.currentTimeMillis(); // Give new feeds a full heartbeat timeout
+        }
+    }
 
-        // Remove any stale data for unsubscribed feeds
-        Set<String> currentActiveFeeds = new HashSet<>(activeFeeds);
-        currentActiveFeeds.removeAll(productIds);
-        log.info("Clearing stale data for productIds: {}", mapper.writeValueAsString(currentActiveFeeds));
-        priceSegments15Map.keySet().removeAll(currentActiveFeeds);
+    public Mono<CoinbaseStatsResponse> getProductStats(String productId) {
+        return coinbaseTraderClient.getDayTradeStatus(productId)
+                .flatMap(response -> response.statusCode().isError()
+                        ? response.bodyToMono(String.class)
+                                .flatMap(error -> Mono.<CoinbaseStatsResponse>error(new IllegalStateException(error)))
+                        : response.bodyToMono(CoinbaseStatsResponse.class));
     }
 
-    public CoinbaseStatsResponse getProductStats(String productId)
-            throws InvalidKeyException, NoSuchAlgorithmException {
-        ClientResponse response = updateCurrencyStats(productId).block();
-        if (response.statusCode().isError()) {
-            response.bodyToMono(String.class).subscribe(error -> log.error("Failed to get order status. Error: {}", error));
-            return null;
+    private PriceSegmentRing getSegments(int productIndex) {
+        return productIndex == ProductRegistry.UNKNOWN ? null : priceSegments15[productIndex];
+    }
+
+    private void clearSegments(int productIndex) {
+        if (productIndex != ProductRegistry.UNKNOWN) {
+            priceSegments15[productIndex].clear();
+        }
+    }
+
+    private boolean isActiveFeed(int productIndex) {
+        return isBitSet(activeFeeds, productIndex);
+    }
+
+    private void markActiveFeed(int productIndex) {
+        setBit(activeFeeds, productIndex);
+    }
+
+    private void setWarmingUp(String productId, boolean warming) {
+        int productIndex = ProductRegistry.indexOf(productId);
+        if (productIndex == ProductRegistry.UNKNOWN) {
+            return;
+        }
+        if (warming) {
+            setBit(warmingUp, productIndex);
         } else {
-            return response.bodyToMono(CoinbaseStatsResponse.class).block();
+            clearBit(warmingUp, productIndex);
         }
     }
 
-    private Mono<ClientResponse> updateCurrencyStats(String productId)
-            throws NoSuchAlgorithmException, InvalidKeyException {
-        String timestamp = String.valueOf(Instant.now().getEpochSecond());
-        String signature = SignatureTool.getSignature(
-                timestamp,
-                HttpMethod.GET.name(),
-                SignatureTool.getStatsRequestPath(productId));
-        return coinbaseTraderClient.getDayTradeStatus(timestamp, signature, productId);
+    private static boolean isBitSet(AtomicLongArray bits, int index) {
+        return (bits.get(index / Long.SIZE) & (1L << (index % Long.SIZE))) != 0;
+    }
+
+    private static void setBit(AtomicLongArray bits, int index) {
+        int word = index / Long.SIZE;
+        long bit = 1L << (index % Long.SIZE);
+        long current = bits.get(word);
+        while ((current & bit) == 0 && !bits.compareAndSet(word, current, current | bit)) {
+            current = bits.get(word);
+        }
+    }
+
+    private static void clearBit(AtomicLongArray bits, int index) {
+        int word = index / Long.SIZE;
+        long bit = 1L << (index % Long.SIZE);
+        long current = bits.get(word);
+        while ((current & bit) != 0 && !bits.compareAndSet(word, current, current & ~bit)) {
+            current = bits.get(word);
+        }
+    }
+
+    private static OptionalDouble toOptional(double value) {
+        return Double.isNaN(value) ? OptionalDouble.empty() : OptionalDouble.of(value);
+    }
+
+    /**
+     * Adapts the data bound {@link CoinbaseTicker} feed to the event handler so both decoder modes share
+     * the same ingest path.
+     */
+    private static class DataBindTickerHandler implements MessageHandler.Whole<CoinbaseTicker> {
+        private final MessageHandler.Whole<CoinbaseTickerEvent> delegate;
+        private final CoinbaseTickerEvent event = new CoinbaseTickerEvent();
+
+        DataBindTickerHandler(MessageHandler.Whole<CoinbaseTickerEvent> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onMessage(CoinbaseTicker message) {
+            event.reset();
+            int productIndex = ProductRegistry.indexOf(message.getProductId());
+            if (!CoinbaseTicker.TICKER_TYPE.equals(message.getType())
+                    || productIndex == ProductRegistry.UNKNOWN
+                    || message.getPrice() == null) {
+                delegate.onMessage(event); // Still counts towards the feed's liveness
+                return;
+            }
+
+            try {
+                event.setPrice(Double.parseDouble(message.getPrice()));
+                if (message.getLastSize() != null) {
+                    event.setSize(Double.parseDouble(message.getLastSize()));
+                }
+                if (message.getTime() != null) {
+                    event.setExchangeTimeMillis(Instant.parse(message.getTime()).toEpochMilli());
+                }
+            } catch (Exception e) {
+                log.error("Failed to parse ticker message for {}", message.getProductId());
+                return;
+            }
+            event.setProductIndex(productIndex);
+            event.setSequence(message.getSequence());
+            delegate.onMessage(event);
+        }
     }
 }
@@ -0,0 +1,273 @@
+package com.javi.autoapp.service;
+
+import com.javi.autoapp.ddb.model.JobSettings;
+import java.util.UUID;
+import lombok.Data;
+
+/**
+ * Trough and crest strategy for a single job. {@link #evaluate} is a pure function of a job's primitive
+ * state and the latest prices: it returns a decision code and leaves the numbers behind it in the
+ * {@link State}, without allocating, logging or touching the job. Callers apply the decision, so the
+ * same decisions run live in {@link AutoTradingService} and offline in the backtest.
+ */
+public final class TradingStrategy {
+    public static final double COINBASE_PERCENTAGE = 0.0149;
+
+    // Nothing to do
+    public static final int HOLD = 0;
+
+    // Place an order, buying with the job's funds or selling its size
+    public static final int TRADE = 1;
+
+    // Sell at a loss since the yield fell below maximum losses, only with protect USD
+    public static final int STOP_LOSS = 2;
+
+    // Price crossed below the buy threshold, set crossed low threshold and min value, triggers move
+    public static final int CROSSED_LOW_THRESHOLD = 3;
+
+    // Price fell further after crossing the low threshold, lower min value
+    public static final int NEW_MIN_VALUE = 4;
+
+    // Yield crossed the percentage yield threshold, set crossed yield threshold and max yield value
+    public static final int CROSSED_YIELD_THRESHOLD = 5;
+
+    // Yield rose further after crossing the yield threshold, raise max yield value
+    public static final int NEW_MAX_YIELD = 6;
+
+    private TradingStrategy() {
+    }
+
+    /**
+     * Strategy inputs copied from a job and the outputs of its last evaluation. Reused across
+     * evaluations by one thread.
+     */
+    @Data
+    public static final class State {
+        private boolean tradeNow;
+        private boolean init;
+        private boolean sell;
+        private boolean protectUsd;
+        private int precision;
+        private double percentageYieldThreshold;
+        private double maximumLoses;
+        private double funds;
+        private double size;
+        private boolean crossedLowThreshold;
+        private double minValue;
+        private boolean crossedPercentageYieldThreshold;
+        private double maxYieldValue;
+
+        // Outputs: prices as rounded to the job's precision, the price or yield aimed for, the mid
+        // market threshold it was checked against, the current yield and the new min or max value
+        private double price;
+        private double midPrice;
+        private double priceWanted;
+        private double threshold;
+        private double percentYield;
+        private double value;
+
+        public State load(JobSettings job) {
+            tradeNow = job.isTradeNow();
+            init = job.isInit();
+            sell = job.isSell();
+            protectUsd = job.isProtectUsd();
+            precision = job.getPrecision();
+            percentageYieldThreshold = job.getPercentageYieldThreshold();
+            maximumLoses = job.getMaximumLoses();
+            funds = job.getFunds();
+            size = job.getSize();
+            crossedLowThreshold = job.isCrossedLowThreshold();
+            minValue = job.getMinValue();
+            crossedPercentageYieldThreshold = job.isCrossedPercentageYieldThreshold();
+            maxYieldValue = job.getMaxYieldValue();
+            price = Double.NaN;
+            midPrice = Double.NaN;
+            priceWanted = Double.NaN;
+            threshold = Double.NaN;
+            percentYield = Double.NaN;
+            value = Double.NaN;
+            return this;
+        }
+    }
+
+    /**
+     * Evaluates a job that is active or selling and has no order pending.
+     */
+    public static int evaluate(State state, double latestMidPrice, double latestPrice) {
+        state.price = roundPrice(latestPrice, state.precision);
+        state.midPrice = roundPrice(latestMidPrice, state.precision);
+
+        if (state.tradeNow) {
+            return TRADE;
+        } else if (state.init) {
+            return midMarketBuy(state);
+        } else if (state.sell) {
+            return crest(state);
+        } else {
+            return trough(state);
+        }
+    }
+
+    public static boolean isTrade(int decision) {
+        return decision == TRADE || decision == STOP_LOSS;
+    }
+
+    /**
+     * Whether applying the decision moves the job's trigger prices.
+     */
+    public static boolean changesTriggers(int decision) {
+        return decision == CROSSED_LOW_THRESHOLD;
+    }
+
+    /**
+     * Applies the state change of a decision other than a trade to the job.
+     *
+     * @return whether the job changed and should be saved
+     */
+    public static boolean apply(JobSettings job, int decision, State state) {
+        switch (decision) {
+            case CROSSED_LOW_THRESHOLD:
+                job.setCrossedLowThreshold(true);
+                job.setMinValue(state.value);
+                return true;
+            case NEW_MIN_VALUE:
+                job.setMinValue(state.value);
+                return true;
+            case CROSSED_YIELD_THRESHOLD:
+                job.setCrossedPercentageYieldThreshold(true);
+                job.setMaxYieldValue(state.value);
+                return true;
+            case NEW_MAX_YIELD:
+                job.setMaxYieldValue(state.value);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Applies a settled order to the job: a buy of {@code size} turns it into a sell, a sale for
+     * {@code value} turns it back into a buy with the proceeds as funds.
+     */
+    public static void applyFill(JobSettings job, double value, double size) {
+        if (!job.isSell()) {
+            job.setSell(true);
+            job.setSize(size);
+        } else {
+            job.setSell(false);
+            job.setFunds(value);
+
+            if (job.isActive() && job.getIncreaseFundsBy() > 0.0) {
+                job.setStartingFundsUsd(job.getStartingFundsUsd() + job.getIncreaseFundsBy());
+                job.setFunds(job.getFunds() + job.getIncreaseFundsBy());
+                job.setIncreaseFundsBy(0.0);
+            }
+        }
+
+        job.setOrderId(UUID.randomUUID().toString());
+        job.setInit(false);
+        job.setPending(false);
+        job.setCrossedLowThreshold(false);
+        job.setCrossedPercentageYieldThreshold(false);
+        job.setMaxYieldValue(0.0);
+        job.setTradeNow(false);
+    }
+
+    public static double roundPrice(double absolutePrice, double precision) {
+        double precisionPlace = Math.pow(10, -precision);
+        return Math.round(absolutePrice * precisionPlace) / precisionPlace;
+    }
+
+    private static int trough(State state) {
+        double expectedBuy = state.funds / state.price;
+        double expectedFees = expectedBuy * COINBASE_PERCENTAGE;
+        double expectedSize = expectedBuy - expectedFees;
+        double percentYield = expectedSize / state.size;
+        double priceWantedAbsolute = state.funds / ((state.percentageYieldThreshold * state.size) / (1 - COINBASE_PERCENTAGE));
+        double priceWanted = roundPrice(priceWantedAbsolute, state.precision);
+
+        double priceIncreasePercent = state.percentageYieldThreshold + COINBASE_PERCENTAGE - 1.0;
+        double priceThreshold = 1.0 - (priceIncreasePercent / 2.0);
+        double minPriceThreshold = 1.0 - (priceIncreasePercent * 1.5);
+        double lowThreshold = roundPrice(state.midPrice * priceThreshold, state.precision);
+        double minPrice = roundPrice(state.midPrice * minPriceThreshold, state.precision);
+
+        state.percentYield = percentYield;
+        state.priceWanted = priceWanted;
+        state.threshold = lowThreshold;
+
+        if (priceWanted < minPrice) {
+            return midMarketBuy(state);
+        } else if ((state.price < lowThreshold) || (lowThreshold < minPrice && state.price < state.midPrice)) {
+            return percentageYieldThreshold(state, percentYield);
+        }
+        return HOLD;
+    }
+
+    private static int crest(State state) {
+        double expectedSale = state.price * state.size;
+        double expectedFees = expectedSale * COINBASE_PERCENTAGE;
+        double expectedFunds = expectedSale - expectedFees;
+        double percentYield = expectedFunds / state.funds;
+        double priceWantedAbsolute = (state.percentageYieldThreshold * state.funds) / (state.size - (state.size * COINBASE_PERCENTAGE));
+        double priceWanted = roundPrice(priceWantedAbsolute, state.precision);
+        double absoluteValue = state.funds / state.size;
+        double value = roundPrice(absoluteValue, state.precision);
+
+        double priceIncreasePercent = state.percentageYieldThreshold + COINBASE_PERCENTAGE - 1.0;
+        double priceThreshold = 1.0 + (priceIncreasePercent / 2.0);
+        double maxPriceThreshold = 1.0 + (priceIncreasePercent * 1.5);
+        double highThreshold = roundPrice(state.midPrice * priceThreshold, state.precision);
+        double maxPrice = roundPrice(state.midPrice * maxPriceThreshold, state.precision);
+
+        state.percentYield = percentYield;
+        state.priceWanted = priceWanted;
+        state.threshold = highThreshold;
+
+        if (maxPrice < value) {
+            // Mid market fell below the value bought at, only sell if losses are protected
+            state.value = value;
+            return state.protectUsd && (percentYield < state.maximumLoses) ? STOP_LOSS : HOLD;
+        } else if ((state.price > highThreshold) || (highThreshold > maxPrice && state.price > state.midPrice)) {
+            return percentageYieldThreshold(state, percentYield);
+        }
+        return HOLD;
+    }
+
+    private static int midMarketBuy(State state) {
+        double priceIncreasePercent = (state.percentageYieldThreshold + COINBASE_PERCENTAGE - 1.0) / 2.0;
+        double priceThreshold = 1.0 - priceIncreasePercent;
+        double priceWanted = roundPrice(state.midPrice * priceThreshold, state.precision);
+
+        state.priceWanted = priceWanted;
+        state.threshold = priceWanted;
+
+        if (state.crossedLowThreshold && state.price > state.minValue) {
+            return TRADE;
+        }
+        if (!state.crossedLowThreshold && state.price < priceWanted) {
+            state.value = state.price;
+            return CROSSED_LOW_THRESHOLD;
+        }
+        if (state.crossedLowThreshold && state.price < state.minValue) {
+            state.value = state.price;
+            return NEW_MIN_VALUE;
+        }
+        return HOLD;
+    }
+
+    private static int percentageYieldThreshold(State state, double percentYield) {
+        if (state.crossedPercentageYieldThreshold && percentYield < state.maxYieldValue) {
+            return TRADE;
+        }
+        if (!state.crossedPercentageYieldThreshold && percentYield > state.percentageYieldThreshold) {
+            state.value = percentYield;
+            return CROSSED_YIELD_THRESHOLD;
+        }
+        if (state.crossedPercentageYieldThreshold && percentYield > state.maxYieldValue) {
+            state.value = percentYield;
+            return NEW_MAX_YIELD;
+        }
+        return HOLD;
+    }
+}
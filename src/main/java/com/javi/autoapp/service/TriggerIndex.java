@@ -0,0 +1,364 @@
+package com.javi.autoapp.service;
+
+import com.javi.autoapp.ddb.model.JobSettings;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Trigger prices for all jobs of one product, so a tick only visits the jobs whose trigger band the
+ * price is in.
+ *
+ * <p>For a given mid price every tradeable job is in one of three shapes: it only acts when the price
+ * is below {@code mid * factor} (trough and mid market buy), only when it is above {@code mid * factor}
+ * (crest), or on any price (trade now, a crossed low threshold, max losses protection). Below and above
+ * jobs are kept sorted by factor in primitive arrays, so the candidates for a price are a prefix found
+ * by binary search. Which shape a job has depends on the mid only through a few breakpoints, so each
+ * job records the mid range it was classified for. A job is classified again, and moved between the
+ * arrays, when {@link #invalidate(JobSettings)} is called after it changes state or when the mid leaves
+ * its range, the other jobs keep their place.
+ *
+ * <p>Bounds are widened by the job's rounding precision so the candidates are always a superset of
+ * the jobs the full evaluation would act on. Not thread safe, owned by the evaluating thread.
+ */
+public class TriggerIndex {
+    private static final int NONE = 0;
+    private static final int ALWAYS = 1;
+    private static final int BELOW = 2;
+    private static final int ABOVE = 3;
+
+    private final List<JobSettings> jobs;
+    private final Map<JobSettings, Integer> slots = new IdentityHashMap<>();
+    private final Trigger trigger = new Trigger();
+
+    // Classification of each job by its position in jobs, and the mid range all of them hold for
+    private final int[] kinds;
+    private final double[] midLows;
+    private final double[] midHighs;
+    private double validMidLow = Double.NEGATIVE_INFINITY;
+    private double validMidHigh = Double.POSITIVE_INFINITY;
+
+    // Jobs invalidated since the last tick, classified at the next tick's mid
+    private final boolean[] stale;
+    private final int[] staleSlots;
+    private int staleCount;
+
+    private final JobSettings[] alwaysJobs;
+    private final int[] alwaysSlots;
+    private int alwaysCount;
+    private final Band below;
+    private final Band above;
+
+    public TriggerIndex(List<JobSettings> jobs) {
+        this.jobs = jobs;
+        int size = jobs.size();
+        kinds = new int[size];
+        midLows = new double[size];
+        midHighs = new double[size];
+        stale = new boolean[size];
+        staleSlots = new int[size];
+        alwaysJobs = new JobSettings[size];
+        alwaysSlots = new int[size];
+        below = new Band(size, true);
+        above = new Band(size, false);
+        for (int slot = 0; slot < size; slot++) {
+            slots.put(jobs.get(slot), slot);
+            markStale(slot);
+        }
+    }
+
+    /**
+     * Classifies the job again at the next tick. A job that is not in the index, like an older copy of
+     * one, has every job classified again.
+     */
+    public void invalidate(JobSettings job) {
+        Integer slot = slots.get(job);
+        if (slot != null) {
+            markStale(slot);
+        } else {
+            for (int index = 0; index < jobs.size(); index++) {
+                markStale(index);
+            }
+        }
+    }
+
+    /**
+     * Adds the jobs that may act at the given mid and price to {@code candidates}.
+     */
+    public void collect(double mid, double price, List<JobSettings> candidates) {
+        if (mid < validMidLow || mid > validMidHigh) {
+            reclassifyOutOfRange(mid);
+        } else if (staleCount > 0) {
+            reclassifyStale(mid);
+        }
+
+        for (int index = 0; index < alwaysCount; index++) {
+            candidates.add(alwaysJobs[index]);
+        }
+
+        // Below jobs act when price < mid * factor, factors sorted descending
+        int belowCount = below.prefixLength((price - below.maxSlack) / mid);
+        for (int index = 0; index < belowCount; index++) {
+            if (price < mid * below.factors[index] + below.slacks[index]) {
+                candidates.add(below.jobs[index]);
+            }
+        }
+
+        // Above jobs act when price > mid * factor, factors sorted ascending
+        int aboveCount = above.prefixLength((price + above.maxSlack) / mid);
+        for (int index = 0; index < aboveCount; index++) {
+            if (price > mid * above.factors[index] - above.slacks[index]) {
+                candidates.add(above.jobs[index]);
+            }
+        }
+    }
+
+    public int size() {
+        return jobs.size();
+    }
+
+    public List<JobSettings> getJobs() {
+        return jobs;
+    }
+
+    private void markStale(int slot) {
+        if (!stale[slot]) {
+            stale[slot] = true;
+            staleSlots[staleCount++] = slot;
+        }
+    }
+
+    /**
+     * Each job classified at the mid holds for it, so the valid range only narrows.
+     */
+    private void reclassifyStale(double mid) {
+        for (int index = 0; index < staleCount; index++) {
+            int slot = staleSlots[index];
+            stale[slot] = false;
+            reclassify(slot, mid);
+            validMidLow = Math.max(validMidLow, midLows[slot]);
+            validMidHigh = Math.min(validMidHigh, midHighs[slot]);
+        }
+        staleCount = 0;
+    }
+
+    /**
+     * Classifies the stale jobs and the ones whose range the mid left, and recomputes the valid range
+     * and the bands' slack bounds, which only grow while jobs move.
+     */
+    private void reclassifyOutOfRange(double mid) {
+        validMidLow = Double.NEGATIVE_INFINITY;
+        validMidHigh = Double.POSITIVE_INFINITY;
+        for (int slot = 0; slot < kinds.length; slot++) {
+            if (stale[slot] || mid < midLows[slot] || mid > midHighs[slot]) {
+                stale[slot] = false;
+                reclassify(slot, mid);
+            }
+            validMidLow = Math.max(validMidLow, midLows[slot]);
+            validMidHigh = Math.min(validMidHigh, midHighs[slot]);
+        }
+        staleCount = 0;
+        below.resetMaxSlack();
+        above.resetMaxSlack();
+    }
+
+    private void reclassify(int slot, double mid) {
+        if (kinds[slot] == ALWAYS) {
+            removeAlways(slot);
+        } else if (kinds[slot] == BELOW) {
+            below.remove(slot);
+        } else if (kinds[slot] == ABOVE) {
+            above.remove(slot);
+        }
+
+        JobSettings job = jobs.get(slot);
+        classify(job, mid);
+        kinds[slot] = trigger.kind;
+        midLows[slot] = trigger.midLow;
+        midHighs[slot] = trigger.midHigh;
+        if (trigger.kind == ALWAYS) {
+            alwaysJobs[alwaysCount] = job;
+            alwaysSlots[alwaysCount++] = slot;
+        } else if (trigger.kind == BELOW) {
+            below.insert(slot, job, trigger.factor, trigger.slack);
+        } else if (trigger.kind == ABOVE) {
+            above.insert(slot, job, trigger.factor, trigger.slack);
+        }
+    }
+
+    private void removeAlways(int slot) {
+        for (int index = 0; index < alwaysCount; index++) {
+            if (alwaysSlots[index] == slot) {
+                alwaysCount--;
+                alwaysJobs[index] = alwaysJobs[alwaysCount];
+                alwaysSlots[index] = alwaysSlots[alwaysCount];
+                alwaysJobs[alwaysCount] = null;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Mirrors the branches of {@code AutoTradingService.autoTrade} for a job at the given mid. Breakpoints
+     * between branches are widened by the rounding slack and the ambiguous band is classified as
+     * {@link #ALWAYS}.
+     */
+    private void classify(JobSettings job, double mid) {
+        trigger.kind = NONE;
+        trigger.factor = 0.0;
+        trigger.slack = 0.0;
+        trigger.midLow = Double.NEGATIVE_INFINITY;
+        trigger.midHigh = Double.POSITIVE_INFINITY;
+
+        if (!(job.isActive() || job.isSell()) || job.isPending()) {
+            return;
+        }
+
+        double increase = job.getPercentageYieldThreshold() + TradingStrategy.COINBASE_PERCENTAGE - 1.0;
+        double unit = Math.pow(10, job.getPrecision());
+        if (job.isTradeNow() || increase < 0) {
+            trigger.kind = ALWAYS;
+        } else if (job.isInit()) {
+            classifyMidMarketBuy(job, increase, unit);
+        } else if (job.isSell()) {
+            double maxFactor = 1.0 + (increase * 1.5);
+            double value = job.getFunds() / job.getSize();
+            double slack = (maxFactor + 2.0) * unit;
+            double lowerMid = (value - slack) / maxFactor;
+            double upperMid = (value + slack) / maxFactor;
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                trigger.kind = ALWAYS;
+            } else if (mid < lowerMid) {
+                // Max price below current value, only acts to protect against losses
+                trigger.kind = job.isProtectUsd() ? ALWAYS : NONE;
+                trigger.midHigh = lowerMid;
+            } else if (mid >= upperMid) {
+                trigger.kind = ABOVE;
+                trigger.factor = 1.0 + (increase / 2.0);
+                trigger.slack = (trigger.factor + 2.0) * unit;
+                trigger.midLow = upperMid;
+            } else {
+                trigger.kind = ALWAYS;
+                trigger.midLow = lowerMid;
+                trigger.midHigh = upperMid;
+            }
+        } else {
+            double minFactor = 1.0 - (increase * 1.5);
+            double priceWanted = job.getFunds()
+                    / ((job.getPercentageYieldThreshold() * job.getSize()) / (1 - TradingStrategy.COINBASE_PERCENTAGE));
+            double slack = (minFactor + 2.0) * unit;
+            double lowerMid = (priceWanted - slack) / minFactor;
+            double upperMid = (priceWanted + slack) / minFactor;
+            if (Double.isNaN(priceWanted) || minFactor <= 0) {
+                trigger.kind = ALWAYS;
+            } else if (mid <= lowerMid) {
+                trigger.kind = BELOW;
+                trigger.factor = 1.0 - (increase / 2.0);
+                trigger.slack = (trigger.factor + 2.0) * unit;
+                trigger.midHigh = lowerMid;
+            } else if (mid > upperMid) {
+                // Price wanted below min price, falls back to a mid market buy
+                classifyMidMarketBuy(job, increase, unit);
+                trigger.midLow = upperMid;
+            } else {
+                trigger.kind = ALWAYS;
+                trigger.midLow = lowerMid;
+                trigger.midHigh = upperMid;
+            }
+        }
+    }
+
+    private void classifyMidMarketBuy(JobSettings job, double increase, double unit) {
+        if (job.isCrossedLowThreshold()) {
+            trigger.kind = ALWAYS;
+        } else {
+            trigger.kind = BELOW;
+            trigger.factor = 1.0 - (increase / 2.0);
+            trigger.slack = (trigger.factor + 2.0) * unit;
+        }
+    }
+
+    /**
+     * Jobs of one shape sorted by factor, descending for below jobs and ascending for above jobs.
+     */
+    private static final class Band {
+        private final boolean descending;
+        private final JobSettings[] jobs;
+        private final int[] slots;
+        private final double[] factors;
+        private final double[] slacks;
+        private int count;
+        private double maxSlack;
+
+        private Band(int capacity, boolean descending) {
+            this.descending = descending;
+            this.jobs = new JobSettings[capacity];
+            this.slots = new int[capacity];
+            this.factors = new double[capacity];
+            this.slacks = new double[capacity];
+        }
+
+        private void insert(int slot, JobSettings job, double factor, double slack) {
+            int position = prefixLength(factor);
+            int moved = count - position;
+            System.arraycopy(jobs, position, jobs, position + 1, moved);
+            System.arraycopy(slots, position, slots, position + 1, moved);
+            System.arraycopy(factors, position, factors, position + 1, moved);
+            System.arraycopy(slacks, position, slacks, position + 1, moved);
+            jobs[position] = job;
+            slots[position] = slot;
+            factors[position] = factor;
+            slacks[position] = slack;
+            count++;
+            maxSlack = Math.max(maxSlack, slack);
+        }
+
+        private void remove(int slot) {
+            for (int position = 0; position < count; position++) {
+                if (slots[position] == slot) {
+                    int moved = count - position - 1;
+                    System.arraycopy(jobs, position + 1, jobs, position, moved);
+                    System.arraycopy(slots, position + 1, slots, position, moved);
+                    System.arraycopy(factors, position + 1, factors, position, moved);
+                    System.arraycopy(slacks, position + 1, slacks, position, moved);
+                    jobs[--count] = null;
+                    return;
+                }
+            }
+        }
+
+        private void resetMaxSlack() {
+            maxSlack = 0.0;
+            for (int position = 0; position < count; position++) {
+                maxSlack = Math.max(maxSlack, slacks[position]);
+            }
+        }
+
+        /**
+         * Length of the prefix of the factors that is above {@code bound} when sorted descending, or
+         * below it when sorted ascending.
+         */
+        private int prefixLength(double bound) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                boolean inPrefix = descending ? factors[middle] > bound : factors[middle] < bound;
+                if (inPrefix) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    private static class Trigger {
+        private int kind;
+        private double factor;
+        private double slack;
+        private double midLow;
+        private double midHigh;
+    }
+}
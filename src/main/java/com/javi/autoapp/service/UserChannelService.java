@@ -0,0 +1,202 @@
+package com.javi.autoapp.service;
+
+import static com.javi.autoapp.util.CoinbasePathConstants.USER_FEED_VERIFY_PATH;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.javi.autoapp.client.CoinbaseUserWebSocket;
+import com.javi.autoapp.client.model.CoinbaseUserEvent;
+import com.javi.autoapp.client.model.CoinbaseWebSocketSubscribe;
+import com.javi.autoapp.config.AppConfig;
+import com.javi.autoapp.util.ProductRegistry;
+import com.javi.autoapp.util.SignatureTool;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.net.URI;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javax.annotation.PreDestroy;
+import javax.websocket.ContainerProvider;
+import javax.websocket.DeploymentException;
+import javax.websocket.MessageHandler;
+import javax.websocket.Session;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Service;
+
+/**
+ * Authenticated feed of the account's own orders on the user channel, on a session of its own next to
+ * the market data feed. Orders are matched to their client order ID from the received message, and
+ * listeners are told the client order ID as soon as the order is done, so pending jobs settle without
+ * polling. The session is supervised like the market data feed, and while it is down
+ * {@link #isConnected()} tells callers to poll order statuses instead.
+ */
+@Slf4j
+@Service
+public class UserChannelService implements MessageHandler.Whole<String> {
+    private static final long MIN_BACKOFF_MILLIS = 1000;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final AppConfig appConfig;
+    private final ScheduledExecutorService connector;
+    private final Map<String, String> clientOrderIds = new ConcurrentHashMap<>();
+    private final List<Consumer<String>> doneListeners = new CopyOnWriteArrayList<>();
+    private final Counter doneOrders;
+    private final Counter reconnects;
+    private long connectBackoffMillis;
+    private long nextConnectMillis;
+    private volatile long lastMessageMillis;
+    private volatile Session session;
+
+    public UserChannelService(AppConfig appConfig, MeterRegistry meterRegistry) {
+        this.appConfig = appConfig;
+        this.doneOrders = meterRegistry.counter("autoapp.userchannel.done");
+        this.reconnects = meterRegistry.counter("autoapp.userchannel.reconnects");
+        if (!appConfig.isUserChannelEnabled()) {
+            log.info("User channel disabled, pending orders are polled");
+            this.connector = null;
+            return;
+        } else if (SignatureTool.KEY == null || SignatureTool.PASSPHRASE == null || SignatureTool.SECRET == null) {
+            log.warn("No Coinbase credentials for the user channel, pending orders are polled");
+            this.connector = null;
+            return;
+        }
+
+        this.connector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-channel-connector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.connector.scheduleWithFixedDelay(() -> {
+            try {
+                superviseConnection();
+            } catch (Exception error) {
+                log.error("Failed to supervise the user channel. Error: {}", error.getMessage());
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Listeners are called with the client order ID of every order done, on the session's thread.
+     */
+    public void addDoneListener(Consumer<String> listener) {
+        doneListeners.add(listener);
+    }
+
+    public boolean isConnected() {
+        return session != null
+                && session.isOpen()
+                && System.currentTimeMillis() - lastMessageMillis
+                    <= appConfig.getMarketDataHeartbeatTimeoutSeconds() * 1000;
+    }
+
+    @Override
+    public void onMessage(String message) {
+        lastMessageMillis = System.currentTimeMillis();
+        CoinbaseUserEvent event;
+        try {
+            event = mapper.readValue(message, CoinbaseUserEvent.class);
+        } catch (IOException error) {
+            log.warn("Failed to read user channel message. Error: {}", error.getMessage());
+            return;
+        }
+
+        if (CoinbaseUserEvent.RECEIVED.equals(event.getType()) && event.getClientOid() != null) {
+            clientOrderIds.put(event.getOrderId(), event.getClientOid());
+        } else if (CoinbaseUserEvent.DONE.equals(event.getType())) {
+            String clientOid = clientOrderIds.remove(event.getOrderId());
+            if (clientOid == null) {
+                return; // Received before this session, left to polling
+            }
+            log.info("Order {} done on the user channel. Reason: {}", clientOid, event.getReason());
+            doneOrders.increment();
+            for (Consumer<String> listener : doneListeners) {
+                listener.accept(clientOid);
+            }
+        } else if (CoinbaseUserEvent.ERROR.equals(event.getType())) {
+            log.error("User channel error: {}", event.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (connector != null) {
+            connector.shutdownNow();
+        }
+        if (session != null && session.isOpen()) {
+            try {
+                session.close();
+            } catch (IOException error) {
+                log.error("Failed to close the user channel. Error: {}", error.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Runs every second on the connector thread, replacing a session that is closed or has not
+     * delivered a message within the heartbeat timeout, retrying with exponential backoff.
+     */
+    private void superviseConnection() {
+        long now = System.currentTimeMillis();
+        if (isConnected() || now < nextConnectMillis) {
+            return;
+        }
+
+        if (session != null) {
+            log.warn("User channel lost, last message {} ms ago", now - lastMessageMillis);
+            reconnects.increment();
+        }
+        try {
+            connect();
+            subscribe();
+        } catch (Exception error) {
+            connectBackoffMillis = connectBackoffMillis == 0
+                    ? MIN_BACKOFF_MILLIS
+                    : Math.min(connectBackoffMillis * 2, appConfig.getMarketDataMaxBackoffSeconds() * 1000);
+            nextConnectMillis = System.currentTimeMillis() + connectBackoffMillis;
+            log.error("Failed to connect to the user channel, retrying in {} ms. Error: {}",
+                    connectBackoffMillis, error.getMessage());
+            return;
+        }
+        connectBackoffMillis = 0;
+        nextConnectMillis = 0;
+        log.info("Subscribed to the user channel");
+    }
+
+    private void connect() throws IOException, DeploymentException {
+        if (session != null && session.isOpen()) {
+            session.close();
+        }
+        session = ContainerProvider.getWebSocketContainer().connectToServer(
+                CoinbaseUserWebSocket.class,
+                URI.create(appConfig.getCoinbaseWebSocketUri()));
+        session.addMessageHandler(this);
+    }
+
+    private void subscribe() throws IOException {
+        List<String> productIds = new ArrayList<>(ProductRegistry.size());
+        for (int productIndex = 0; productIndex < ProductRegistry.size(); productIndex++) {
+            productIds.add(ProductRegistry.getProductId(productIndex));
+        }
+        String timestamp = String.valueOf(Instant.now().getEpochSecond());
+
+        CoinbaseWebSocketSubscribe subscribe = new CoinbaseWebSocketSubscribe();
+        subscribe.setType(CoinbaseWebSocketSubscribe.SUBSCRIBE);
+        subscribe.setChannels(CoinbaseWebSocketSubscribe.USER_HEARTBEAT_CHANNELS);
+        subscribe.setProductIds(productIds);
+        subscribe.setKey(SignatureTool.KEY);
+        subscribe.setPassphrase(SignatureTool.PASSPHRASE);
+        subscribe.setTimestamp(timestamp);
+        subscribe.setSignature(SignatureTool.sign(timestamp, HttpMethod.GET.name(), USER_FEED_VERIFY_PATH, null));
+        session.getBasicRemote().sendText(mapper.writeValueAsString(subscribe));
+        lastMessageMillis = System.currentTimeMillis(); // Give the new session a full heartbeat timeout
+    }
+}
@@ -0,0 +1,146 @@
+package com.javi.autoapp.util;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Parses numbers and timestamps straight out of the parser's character buffer so the ticker feed can
+ * be decoded without creating intermediate Strings. Anything outside the fast path falls back to the
+ * JDK parsers.
+ */
+public class AsciiParser {
+    private static final int MAX_EXACT_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final int ISO_INSTANT_MIN_LENGTH = 20;
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    public static double parseDecimal(char[] buffer, int offset, int length) {
+        if (length <= 0) {
+            return Double.NaN;
+        }
+
+        int index = offset;
+        int end = offset + length;
+        boolean negative = buffer[index] == '-';
+        if (negative) {
+            index++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        boolean seenDigit = false;
+        for (; index < end; index++) {
+            char c = buffer[index];
+            if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+                if (fraction) {
+                    scale++;
+                }
+                if (digits > MAX_EXACT_DIGITS || scale >= POWERS_OF_TEN.length) {
+                    return parseDecimalSlow(buffer, offset, length);
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                return parseDecimalSlow(buffer, offset, length);
+            }
+        }
+
+        if (!seenDigit) {
+            return Double.NaN;
+        }
+
+        // Both operands are exact doubles, so a single division is correctly rounded
+        double value = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    public static long parseIsoInstantMillis(char[] buffer, int offset, int length) {
+        if (length < ISO_INSTANT_MIN_LENGTH
+                || buffer[offset + 4] != '-'
+                || buffer[offset + 7] != '-'
+                || buffer[offset + 10] != 'T'
+                || buffer[offset + 13] != ':'
+                || buffer[offset + 16] != ':'
+                || buffer[offset + length - 1] != 'Z') {
+            return parseIsoInstantMillisSlow(buffer, offset, length);
+        }
+
+        int year = parseDigits(buffer, offset, 4);
+        int month = parseDigits(buffer, offset + 5, 2);
+        int day = parseDigits(buffer, offset + 8, 2);
+        int hour = parseDigits(buffer, offset + 11, 2);
+        int minute = parseDigits(buffer, offset + 14, 2);
+        int second = parseDigits(buffer, offset + 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || minute < 0 || second < 0) {
+            return parseIsoInstantMillisSlow(buffer, offset, length);
+        }
+
+        int millis = 0;
+        int fractionEnd = offset + length - 1;
+        if (offset + 19 < fractionEnd) {
+            if (buffer[offset + 19] != '.') {
+                return parseIsoInstantMillisSlow(buffer, offset, length);
+            }
+            int place = 100;
+            for (int index = offset + 20; index < fractionEnd; index++) {
+                char c = buffer[index];
+                if (c < '0' || c > '9') {
+                    return parseIsoInstantMillisSlow(buffer, offset, length);
+                }
+                millis += (c - '0') * place;
+                place /= 10;
+            }
+        }
+
+        return epochDay(year, month, day) * MILLIS_PER_DAY
+                + ((hour * 60L + minute) * 60L + second) * 1000L
+                + millis;
+    }
+
+    private static int parseDigits(char[] buffer, int offset, int count) {
+        int value = 0;
+        for (int index = offset; index < offset + count; index++) {
+            char c = buffer[index];
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static long epochDay(long year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static double parseDecimalSlow(char[] buffer, int offset, int length) {
+        try {
+            return Double.parseDouble(new String(buffer, offset, length));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static long parseIsoInstantMillisSlow(char[] buffer, int offset, int length) {
+        try {
+            return Instant.parse(new String(buffer, offset, length)).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+}
@@ -5,8 +5,10 @@ public interface CoinbasePathConstants {
     String GET_ORDER_REQUEST_PATH = "/orders/client:{id}";
     String GET_STATS_REQUEST_PATH = "/products/{productId}/stats";
     String GET_STATS_SLICES_REQUEST_PATH = "/products/{productId}/candles";
+    String USER_FEED_VERIFY_PATH = "/users/self/verify";
+    String GET_TIME_REQUEST_PATH = "/time";
     String START_QUERY_PARAM = "start";
     String END_QUERY_PARAM = "end";
     String GRANULARITY_QUERY_PARAM = "granularity";
-    String GRANULARITY = "3600";
+    String GRANULARITY = "900";
 }
@@ -0,0 +1,131 @@
+package com.javi.autoapp.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Crash safe snapshot storage in a memory mapped file with two fixed size slots. Each write goes to the
+ * slot not holding the latest snapshot, with a higher generation and a CRC32 of the payload, and is
+ * forced to disk. A crash mid write leaves a slot whose checksum does not match, so the previous
+ * snapshot in the other slot is read instead.
+ *
+ * <p>Slot layout: magic, generation, saved time millis, payload length, payload CRC32, payload.
+ */
+public class MappedSnapshotFile implements Closeable {
+    private static final int MAGIC = 0x41415331;
+    private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES + Long.BYTES + Integer.BYTES + Long.BYTES;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int slotBytes;
+    private long generation;
+    private int latestSlot = -1;
+
+    public MappedSnapshotFile(Path path, int maxPayloadBytes) throws IOException {
+        slotBytes = HEADER_BYTES + maxPayloadBytes;
+        if (Files.exists(path) && Files.size(path) != 2L * slotBytes) {
+            Files.delete(path); // Written with a different layout
+        }
+        channel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, 2L * slotBytes);
+
+        for (int slot = 0; slot < 2; slot++) {
+            if (isValid(slot) && (latestSlot < 0 || buffer.getLong(offset(slot) + 4) > generation)) {
+                latestSlot = slot;
+                generation = buffer.getLong(offset(slot) + 4);
+            }
+        }
+    }
+
+    /**
+     * Time the latest valid snapshot was saved, or -1 if there is none.
+     */
+    public synchronized long getSavedMillis() {
+        return latestSlot < 0 ? -1 : buffer.getLong(offset(latestSlot) + 12);
+    }
+
+    /**
+     * Read only view of the latest valid payload, or null if there is none.
+     */
+    public synchronized ByteBuffer read() {
+        if (latestSlot < 0) {
+            return null;
+        }
+        ByteBuffer payload = buffer.duplicate();
+        int start = offset(latestSlot) + HEADER_BYTES;
+        payload.position(start).limit(start + buffer.getInt(offset(latestSlot) + 20));
+        return payload.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Writes the payload between its position and limit as the latest snapshot.
+     */
+    public synchronized void write(ByteBuffer payload, long savedMillis) {
+        int length = payload.remaining();
+        if (length > slotBytes - HEADER_BYTES) {
+            throw new IllegalArgumentException("Snapshot of " + length + " bytes does not fit in the slot");
+        }
+
+        int slot = latestSlot == 0 ? 1 : 0;
+        int offset = offset(slot);
+
+        // Invalidate the slot first so a torn header can never match a stale payload
+        buffer.putInt(offset, 0);
+        ByteBuffer target = buffer.duplicate();
+        target.position(offset + HEADER_BYTES);
+        target.put(payload.duplicate());
+
+        CRC32 crc = new CRC32();
+        ByteBuffer written = buffer.duplicate();
+        written.position(offset + HEADER_BYTES).limit(offset + HEADER_BYTES + length);
+        crc.update(written);
+
+        buffer.putLong(offset + 4, generation + 1);
+        buffer.putLong(offset + 12, savedMillis);
+        buffer.putInt(offset + 20, length);
+        buffer.putLong(offset + 24, crc.getValue());
+        buffer.force();
+        buffer.putInt(offset, MAGIC);
+        buffer.force();
+
+        generation++;
+        latestSlot = slot;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private boolean isValid(int slot) {
+        int offset = offset(slot);
+        if (buffer.getInt(offset) != MAGIC) {
+            return false;
+        }
+        int length = buffer.getInt(offset + 20);
+        if (length < 0 || length > slotBytes - HEADER_BYTES) {
+            return false;
+        }
+
+        CRC32 crc = new CRC32();
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(offset + HEADER_BYTES).limit(offset + HEADER_BYTES + length);
+        crc.update(payload);
+        return crc.getValue() == buffer.getLong(offset + 24);
+    }
+
+    private int offset(int slot) {
+        return slot * slotBytes;
+    }
+}
@@ -0,0 +1,88 @@
+package com.javi.autoapp.util;
+
+import com.javi.autoapp.graphql.type.Currency;
+import java.util.Arrays;
+
+/**
+ * Dense integer ids for the closed set of products in {@link Currency}. Ids are assigned once from the
+ * enum ordinal so they can index primitive arrays, and the char based lookup lets the ticker decoder
+ * intern a product id without creating a String.
+ */
+public class ProductRegistry {
+    public static final int UNKNOWN = -1;
+
+    private static final Currency[] PRODUCTS = Currency.values();
+    private static final int TABLE_MASK = Integer.highestOneBit(PRODUCTS.length * 4) - 1;
+    private static final int[] TABLE = new int[TABLE_MASK + 1];
+
+    static {
+        Arrays.fill(TABLE, UNKNOWN);
+        for (Currency product : PRODUCTS) {
+            String label = product.getLabel();
+            int slot = hash(label) & TABLE_MASK;
+            while (TABLE[slot] != UNKNOWN) {
+                slot = (slot + 1) & TABLE_MASK;
+            }
+            TABLE[slot] = product.ordinal();
+        }
+    }
+
+    public static int size() {
+        return PRODUCTS.length;
+    }
+
+    public static String getProductId(int index) {
+        return PRODUCTS[index].getLabel();
+    }
+
+    public static Currency getCurrency(int index) {
+        return PRODUCTS[index];
+    }
+
+    public static int indexOf(String productId) {
+        if (productId == null) {
+            return UNKNOWN;
+        }
+        Currency currency = Currency.getByLabel(productId);
+        return currency == null ? UNKNOWN : currency.ordinal();
+    }
+
+    public static int indexOf(char[] buffer, int offset, int length) {
+        int slot = hash(buffer, offset, length) & TABLE_MASK;
+        while (TABLE[slot] != UNKNOWN) {
+            if (matches(PRODUCTS[TABLE[slot]].getLabel(), buffer, offset, length)) {
+                return TABLE[slot];
+            }
+            slot = (slot + 1) & TABLE_MASK;
+        }
+        return UNKNOWN;
+    }
+
+    private static boolean matches(String label, char[] buffer, int offset, int length) {
+        if (label.length() != length) {
+            return false;
+        }
+        for (int index = 0; index < length; index++) {
+            if (label.charAt(index) != buffer[offset + index]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(String label) {
+        return mix(label.hashCode());
+    }
+
+    private static int hash(char[] buffer, int offset, int length) {
+        int hash = 0;
+        for (int index = offset; index < offset + length; index++) {
+            hash = 31 * hash + buffer[index];
+        }
+        return mix(hash);
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -1,73 +1,76 @@
 package com.javi.autoapp.util;
 
-import static com.javi.autoapp.util.CoinbasePathConstants.END_QUERY_PARAM;
-import static com.javi.autoapp.util.CoinbasePathConstants.GET_ORDER_REQUEST_PATH;
-import static com.javi.autoapp.util.CoinbasePathConstants.GET_STATS_REQUEST_PATH;
-import static com.javi.autoapp.util.CoinbasePathConstants.GET_STATS_SLICES_REQUEST_PATH;
-import static com.javi.autoapp.util.CoinbasePathConstants.GRANULARITY;
-import static com.javi.autoapp.util.CoinbasePathConstants.GRANULARITY_QUERY_PARAM;
-import static com.javi.autoapp.util.CoinbasePathConstants.POST_ORDER_REQUEST_PATH;
-import static com.javi.autoapp.util.CoinbasePathConstants.START_QUERY_PARAM;
-
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.util.Base64;
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
-import org.springframework.web.util.UriComponentsBuilder;
 
 public class SignatureTool {
     public static final String KEY = System.getProperty("COINBASE_KEY");
     public static final String PASSPHRASE = System.getProperty("COINBASE_PASS");
     public static final String SECRET = System.getProperty("COINBASE_SECRET");
 
-    public static String getOrdersRequestPath() {
-        return POST_ORDER_REQUEST_PATH;
-    }
+    private static final String HMAC_SHA256 = "HmacSHA256";
+    private static final ThreadLocal<Signer> signers = ThreadLocal.withInitial(Signer::new);
 
-    public static String getOrdersRequestPath(String id) {
-        return UriComponentsBuilder.newInstance()
-                .path(GET_ORDER_REQUEST_PATH)
-                .buildAndExpand(id)
-                .toUriString();
+    /**
+     * Base64 HMAC-SHA256 of the timestamp, method, request path with its query and body, with a
+     * {@link Mac} initialized once per thread.
+     *
+     * @param body the request body, or {@code null} when there is none
+     */
+    public static String sign(String timestamp, String method, String requestPath, byte[] body) {
+        return signers.get().sign(timestamp, method, requestPath, body);
     }
 
-    public static String getStatsRequestPath(String productId) {
-        return UriComponentsBuilder.newInstance()
-                .path(GET_STATS_REQUEST_PATH)
-                .buildAndExpand(productId)
-                .toUriString();
-    }
+    private static final class Signer {
+        private final Mac mac;
+        private final byte[] digest;
+        private byte[] buffer = new byte[256];
 
-    public static String getStatsSlicesRequestPath(String start, String end, String productId) {
-        return UriComponentsBuilder.newInstance()
-                .path(GET_STATS_SLICES_REQUEST_PATH)
-                .queryParam(START_QUERY_PARAM, start)
-                .queryParam(END_QUERY_PARAM, end)
-                .queryParam(GRANULARITY_QUERY_PARAM, GRANULARITY)
-                .buildAndExpand(productId)
-                .toUriString();
-    }
+        private Signer() {
+            if (SECRET == null) {
+                throw new IllegalStateException("COINBASE_SECRET is not set");
+            }
+            try {
+                mac = Mac.getInstance(HMAC_SHA256);
+                mac.init(new SecretKeySpec(Base64.getDecoder().decode(SECRET), HMAC_SHA256));
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Failed to initialize request signing", e);
+            }
+            digest = new byte[mac.getMacLength()];
+        }
 
-    public static String getSignature(
-            String timestamp,
-            String method,
-            String requestPath) throws InvalidKeyException, NoSuchAlgorithmException {
-        return getSignature(timestamp, method, requestPath, null);
-    }
+        private String sign(String timestamp, String method, String requestPath, byte[] body) {
+            update(timestamp);
+            update(method);
+            update(requestPath);
+            if (body != null) {
+                mac.update(body);
+            }
+            try {
+                mac.doFinal(digest, 0); // Also resets the mac for the next request
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Failed to sign request", e);
+            }
+            return Base64.getEncoder().encodeToString(digest);
+        }
 
-    public static String getSignature(
-            String timestamp,
-            String method,
-            String requestPath,
-            String body) throws NoSuchAlgorithmException, InvalidKeyException {
-        String signature = timestamp + method + requestPath;
-        if (body != null) {
-            signature += body;
+        private void update(String value) {
+            int length = value.length();
+            if (length > buffer.length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            for (int index = 0; index < length; index++) {
+                char character = value.charAt(index);
+                if (character > 0x7F) {
+                    mac.update(value.getBytes(StandardCharsets.UTF_8)); // Paths are ASCII
+                    return;
+                }
+                buffer[index] = (byte) character;
+            }
+            mac.update(buffer, 0, length);
         }
-        Mac sha256_HMAC = Mac.getInstance("HmacSHA256");
-        SecretKeySpec keySpec = new SecretKeySpec(Base64.getDecoder().decode(SECRET), "HmacSHA256");
-        sha256_HMAC.init(keySpec);
-        return Base64.getEncoder().encodeToString(sha256_HMAC.doFinal(signature.getBytes()));
     }
-}
\ No newline at end of file
+}
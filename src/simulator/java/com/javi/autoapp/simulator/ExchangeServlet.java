@@ -0,0 +1,246 @@
+package com.javi.autoapp.simulator;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.javi.autoapp.client.CoinbaseTraderClient;
+import com.javi.autoapp.client.model.CoinbaseOrderRequest;
+import com.javi.autoapp.util.ProductRegistry;
+import java.io.IOException;
+import java.time.Instant;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * REST endpoints of the simulated exchange, answering with the status codes and JSON shapes of the
+ * real API for the subset the app uses.
+ */
+@RequiredArgsConstructor
+public class ExchangeServlet extends HttpServlet {
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private static final String ORDERS = "/orders";
+    private static final String ORDER_PREFIX = "/orders/client:";
+    private static final String PRODUCTS_PREFIX = "/products/";
+    private static final String STATS_SUFFIX = "/stats";
+    private static final String CANDLES_SUFFIX = "/candles";
+    private static final String TIME = "/time";
+    private static final String SIMULATOR_STATS = "/simulator/stats";
+    private static final int MAX_CANDLES = 300;
+    private static final String[] AUTH_HEADERS = {
+            "CB-ACCESS-KEY", "CB-ACCESS-SIGN", "CB-ACCESS-TIMESTAMP", "CB-ACCESS-PASSPHRASE"};
+
+    private final transient ExchangeSimulator simulator;
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!ORDERS.equals(request.getRequestURI())) {
+            error(response, HttpServletResponse.SC_NOT_FOUND, "NotFound");
+        } else if (authorized(request, response)) {
+            placeOrder(request, response);
+        }
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String path = request.getRequestURI();
+        if (SIMULATOR_STATS.equals(path)) {
+            write(response, HttpServletResponse.SC_OK, simulator.getStats());
+        } else if (TIME.equals(path)) {
+            if (simulator.tryPublicRequest()) {
+                Instant now = Instant.now();
+                write(response, HttpServletResponse.SC_OK,
+                        String.format("{\"iso\":\"%s\",\"epoch\":%.3f}", now, now.toEpochMilli() / 1000.0));
+            } else {
+                error(response, 429, "Public rate limit exceeded");
+            }
+        } else if (path.startsWith(ORDER_PREFIX)) {
+            if (authorized(request, response)) {
+                getOrder(path.substring(ORDER_PREFIX.length()), response);
+            }
+        } else if (path.startsWith(PRODUCTS_PREFIX) && path.endsWith(STATS_SUFFIX)) {
+            if (simulator.tryPublicRequest()) {
+                getStats(productIndex(path, STATS_SUFFIX), response);
+            } else {
+                error(response, 429, "Public rate limit exceeded");
+            }
+        } else if (path.startsWith(PRODUCTS_PREFIX) && path.endsWith(CANDLES_SUFFIX)) {
+            if (simulator.tryPublicRequest()) {
+                getCandles(productIndex(path, CANDLES_SUFFIX), request, response);
+            } else {
+                error(response, 429, "Public rate limit exceeded");
+            }
+        } else {
+            error(response, HttpServletResponse.SC_NOT_FOUND, "NotFound");
+        }
+    }
+
+    private boolean authorized(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        for (String header : AUTH_HEADERS) {
+            if (request.getHeader(header) == null) {
+                error(response, HttpServletResponse.SC_UNAUTHORIZED, "invalid signature");
+                return false;
+            }
+        }
+        if (!simulator.tryPrivateRequest()) {
+            error(response, 429, "Private rate limit exceeded");
+            return false;
+        }
+        return true;
+    }
+
+    private void placeOrder(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        CoinbaseOrderRequest order;
+        try {
+            order = mapper.readValue(request.getInputStream(), CoinbaseOrderRequest.class);
+        } catch (IOException e) {
+            error(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid order");
+            return;
+        }
+
+        int productIndex = ProductRegistry.indexOf(order.getProductId());
+        boolean buy = CoinbaseOrderRequest.BUY.equals(order.getSide());
+        double funds = parse(order.getFunds());
+        double size = parse(order.getSize());
+        if (productIndex == ProductRegistry.UNKNOWN) {
+            error(response, HttpServletResponse.SC_BAD_REQUEST, "Product not found");
+            return;
+        } else if (order.getOrderId() == null) {
+            error(response, HttpServletResponse.SC_BAD_REQUEST, "client_oid is required");
+            return;
+        } else if (!(buy ? funds > 0.0 : CoinbaseOrderRequest.SELL.equals(order.getSide()) && size > 0.0)) {
+            error(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid funds, size or side");
+            return;
+        }
+
+        SimulatedOrder placed = simulator.placeOrder(
+                order.getOrderId(),
+                productIndex,
+                order.getSide(),
+                funds,
+                size,
+                parseSequence(request.getHeader(CoinbaseTraderClient.TRIGGER_SEQUENCE_HEADER)));
+        simulator.delayRequest();
+        if (placed == null) {
+            error(response, HttpServletResponse.SC_BAD_REQUEST, "duplicate client_oid");
+            return;
+        }
+        write(response, HttpServletResponse.SC_OK, mapper.writeValueAsString(toJson(placed)));
+    }
+
+    private void getOrder(String clientOid, HttpServletResponse response) throws IOException {
+        simulator.delayRequest();
+        SimulatedOrder order = simulator.getOrder(clientOid);
+        if (order == null) {
+            error(response, HttpServletResponse.SC_NOT_FOUND, "NotFound");
+            return;
+        }
+        String body;
+        synchronized (order) {
+            body = mapper.writeValueAsString(toJson(order));
+        }
+        write(response, HttpServletResponse.SC_OK, body);
+    }
+
+    private void getStats(int productIndex, HttpServletResponse response) throws IOException {
+        simulator.delayRequest();
+        if (productIndex == ProductRegistry.UNKNOWN) {
+            error(response, HttpServletResponse.SC_NOT_FOUND, "NotFound");
+            return;
+        }
+        double[] stats = simulator.getMarket().getStats(productIndex);
+        ObjectNode json = mapper.createObjectNode();
+        json.put("open", ExchangeSimulator.decimal(stats[0]));
+        json.put("high", ExchangeSimulator.decimal(stats[1]));
+        json.put("low", ExchangeSimulator.decimal(stats[2]));
+        json.put("last", ExchangeSimulator.decimal(simulator.getMarket().getPrice(productIndex)));
+        json.put("volume", "1000.0");
+        json.put("volume_30day", "30000.0");
+        write(response, HttpServletResponse.SC_OK, mapper.writeValueAsString(json));
+    }
+
+    private void getCandles(int productIndex, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        simulator.delayRequest();
+        if (productIndex == ProductRegistry.UNKNOWN) {
+            error(response, HttpServletResponse.SC_NOT_FOUND, "NotFound");
+            return;
+        }
+
+        long granularity;
+        long start;
+        long end;
+        try {
+            granularity = Long.parseLong(request.getParameter("granularity"));
+            end = request.getParameter("end") == null
+                    ? Instant.now().getEpochSecond()
+                    : Instant.parse(request.getParameter("end")).getEpochSecond();
+            start = request.getParameter("start") == null
+                    ? end - (granularity * MAX_CANDLES)
+                    : Instant.parse(request.getParameter("start")).getEpochSecond();
+        } catch (RuntimeException e) {
+            error(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid start, end or granularity");
+            return;
+        }
+        if (granularity <= 0 || (end - start) / granularity > MAX_CANDLES) {
+            error(response, HttpServletResponse.SC_BAD_REQUEST, "granularity too small for the requested time range");
+            return;
+        }
+        write(response, HttpServletResponse.SC_OK,
+                mapper.writeValueAsString(simulator.getMarket().getCandles(productIndex, start, end, granularity)));
+    }
+
+    private static int productIndex(String path, String suffix) {
+        return ProductRegistry.indexOf(path.substring(PRODUCTS_PREFIX.length(), path.length() - suffix.length()));
+    }
+
+    private static ObjectNode toJson(SimulatedOrder order) {
+        ObjectNode json = mapper.createObjectNode();
+        json.put("id", order.getId());
+        json.put("client_oid", order.getClientOid());
+        json.put("product_id", ProductRegistry.getProductId(order.getProductIndex()));
+        json.put("side", order.getSide());
+        json.put("type", "market");
+        if (order.getFunds() > 0.0) {
+            json.put("funds", ExchangeSimulator.decimal(order.getFunds()));
+        }
+        if (order.getSize() > 0.0) {
+            json.put("size", ExchangeSimulator.decimal(order.getSize()));
+        }
+        json.put("created_at", Instant.ofEpochMilli(order.getCreatedMillis()).toString());
+        json.put("status", order.isSettled() ? "done" : "pending");
+        json.put("settled", order.isSettled());
+        json.put("executed_value", ExchangeSimulator.decimal(order.getExecutedValue()));
+        json.put("filled_size", ExchangeSimulator.decimal(order.getFilledSize()));
+        json.put("fill_fees", ExchangeSimulator.decimal(order.getFillFees()));
+        return json;
+    }
+
+    private static double parse(String value) {
+        try {
+            return value == null ? Double.NaN : Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static long parseSequence(String value) {
+        try {
+            return value == null ? -1 : Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void error(HttpServletResponse response, int status, String message) throws IOException {
+        write(response, status, "{\"message\":\"" + message + "\"}");
+    }
+
+    private static void write(HttpServletResponse response, int status, String body) throws IOException {
+        response.setStatus(status);
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write(body);
+    }
+}
@@ -0,0 +1,533 @@
+package com.javi.autoapp.simulator;
+
+import com.javi.autoapp.client.model.CoinbaseOrderRequest;
+import com.javi.autoapp.util.ProductRegistry;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import javax.websocket.Session;
+import javax.websocket.server.ServerContainer;
+import javax.websocket.server.ServerEndpointConfig;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.tomcat.websocket.server.WsSci;
+
+/**
+ * Local stand-in for the Coinbase Pro feed and REST API. Serves the ticker and heartbeat channels on
+ * {@code ws://localhost:<port>/} and the orders, stats and candles endpoints on
+ * {@code http://localhost:<port>}, with a delay on every request, per second rate limits and market
+ * orders that fill after a delay at the latest price plus slippage. Sessions that subscribe to the
+ * user channel with credentials get received and done messages for every order.
+ *
+ * <p>Ticks are published at a fixed rate per subscribed product from a single feed thread, which
+ * records when each sequence was published. An app run with {@code sendTriggerSequence} names the
+ * sequence of the tick its trade decision was made on in a header of the order, and the time from that
+ * tick being published to the order arriving is recorded as the tick to order latency of the app under
+ * test. Orders without it only record the age of the product's latest tick, which is bounded by the
+ * tick interval. Both are reported with the other counters every report interval and on
+ * {@code GET /simulator/stats}.
+ */
+@Slf4j
+public class ExchangeSimulator {
+    private static final long HEARTBEAT_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int LATENCY_SAMPLES = 100_000;
+    private static final int PUBLISHED_TICKS = 1 << 16; // Per product, ticks an order can name
+    private static final int PUBLISHED_MASK = PUBLISHED_TICKS - 1;
+
+    private final Settings settings;
+    private final SimulatedMarket market;
+    private final TokenBucket publicRequests;
+    private final TokenBucket privateRequests;
+    private final Map<String, SimulatedOrder> orders = new ConcurrentHashMap<>();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final Queue<SimulatedOrder> pendingFills = new ConcurrentLinkedQueue<>();
+    private final AtomicLongArray lastTickNanos = new AtomicLongArray(ProductRegistry.size());
+    private final AtomicLongArray publishedSequences = new AtomicLongArray(ProductRegistry.size() * PUBLISHED_TICKS);
+    private final AtomicLongArray publishedNanos = new AtomicLongArray(ProductRegistry.size() * PUBLISHED_TICKS);
+    private final LongAdder ticksSent = new LongAdder();
+    private final LongAdder ordersReceived = new LongAdder();
+    private final LongAdder requestsLimited = new LongAdder();
+    private final LongAdder triggersExpired = new LongAdder();
+    private final Samples tickToOrder = new Samples();
+    private final Samples lastTickAge = new Samples();
+
+    private Tomcat tomcat;
+    private Thread feed;
+    private volatile boolean running;
+
+    @Data
+    public static class Settings {
+        private int port = 8090;
+        private double ticksPerSecond = 10.0;
+        private long requestLatencyMillis = 50;
+        private long requestJitterMillis = 25;
+        private double publicRequestsPerSecond = 3.0;
+        private double privateRequestsPerSecond = 5.0;
+        private long fillDelayMillis = 500;
+        private double feeRate = 0.005;
+        private double slippage = 0.0005;
+        private long reportIntervalSeconds = 10;
+    }
+
+    public ExchangeSimulator(Settings settings, SimulatedMarket market) {
+        this.settings = settings;
+        this.market = market;
+        this.publicRequests = new TokenBucket(settings.getPublicRequestsPerSecond());
+        this.privateRequests = new TokenBucket(settings.getPrivateRequestsPerSecond());
+    }
+
+    public void start() throws IOException, LifecycleException {
+        tomcat = new Tomcat();
+        tomcat.setPort(settings.getPort());
+        tomcat.setBaseDir(Files.createTempDirectory("exchange-simulator").toString());
+        tomcat.getConnector();
+
+        Context context = tomcat.addContext("", null);
+        context.addServletContainerInitializer(new WsSci(), null);
+        context.addServletContainerInitializer((classes, servletContext) -> {
+            ServerContainer container = (ServerContainer) servletContext.getAttribute(ServerContainer.class.getName());
+            try {
+                container.addEndpoint(ServerEndpointConfig.Builder.create(FeedEndpoint.class, "/")
+                        .configurator(new ServerEndpointConfig.Configurator() {
+                            @Override
+                            @SuppressWarnings("unchecked")
+                            public <T> T getEndpointInstance(Class<T> endpointClass) {
+                                return (T) new FeedEndpoint(ExchangeSimulator.this);
+                            }
+                        })
+                        .build());
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to register the feed endpoint", e);
+            }
+        }, null);
+        Tomcat.addServlet(context, "exchange", new ExchangeServlet(this));
+        context.addServletMappingDecoded("/*", "exchange");
+        tomcat.start();
+
+        running = true;
+        feed = new Thread(this::publish, "exchange-feed");
+        feed.setDaemon(true);
+        feed.start();
+        log.info("Simulating the exchange on port {} at {} ticks/s per product", settings.getPort(), settings.getTicksPerSecond());
+    }
+
+    public void stop() throws LifecycleException, InterruptedException {
+        running = false;
+        if (feed != null) {
+            feed.join();
+        }
+        if (tomcat != null) {
+            tomcat.stop();
+            tomcat.destroy();
+        }
+    }
+
+    /**
+     * Blocks logging the counters every report interval until the simulator is stopped.
+     */
+    public void awaitAndReport() throws InterruptedException {
+        while (running) {
+            TimeUnit.SECONDS.sleep(settings.getReportIntervalSeconds());
+            log.info("Exchange simulator: {}", getStats());
+        }
+    }
+
+    Settings getSettings() {
+        return settings;
+    }
+
+    SimulatedMarket getMarket() {
+        return market;
+    }
+
+    void addSubscriber(Subscriber subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    void removeSubscriber(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    /**
+     * Waits out the simulated network and matching engine delay of a request.
+     */
+    void delayRequest() {
+        long delay = settings.getRequestLatencyMillis();
+        if (settings.getRequestJitterMillis() > 0) {
+            delay += ThreadLocalRandom.current().nextLong(settings.getRequestJitterMillis() + 1);
+        }
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(delay));
+    }
+
+    boolean tryPublicRequest() {
+        return tryAcquire(publicRequests);
+    }
+
+    boolean tryPrivateRequest() {
+        return tryAcquire(privateRequests);
+    }
+
+    /**
+     * Accepts a market order, or returns null if the client order id was already used. The trigger
+     * sequence is the sequence of the tick the order was decided on, or -1 when the app did not say.
+     */
+    SimulatedOrder placeOrder(String clientOid, int productIndex, String side, double funds, double size, long triggerSequence) {
+        long now = System.nanoTime();
+        long lastTick = lastTickNanos.get(productIndex);
+        if (lastTick != 0) {
+            lastTickAge.record(now - lastTick);
+        }
+        if (triggerSequence >= 0) {
+            long published = publishedNanos(productIndex, triggerSequence);
+            if (published != 0) {
+                tickToOrder.record(now - published);
+            } else {
+                triggersExpired.increment();
+            }
+        }
+        ordersReceived.increment();
+
+        SimulatedOrder order = new SimulatedOrder(
+                UUID.randomUUID().toString(), clientOid, productIndex, side, funds, size, System.currentTimeMillis());
+        if (orders.putIfAbsent(clientOid, order) != null) {
+            return null;
+        }
+        sendToUsers(productIndex, received(new StringBuilder(256), order));
+        pendingFills.add(order);
+        return order;
+    }
+
+    /**
+     * Looks up an order by client order id, filling it in full once the fill delay has passed.
+     */
+    SimulatedOrder getOrder(String clientOid) {
+        SimulatedOrder order = orders.get(clientOid);
+        if (order == null) {
+            return null;
+        }
+        synchronized (order) {
+            if (!order.isSettled() && System.currentTimeMillis() - order.getCreatedMillis() >= settings.getFillDelayMillis()) {
+                fill(order);
+            }
+        }
+        return order;
+    }
+
+    String getStats() {
+        long[] trigger = tickToOrder.sorted();
+        long[] age = lastTickAge.sorted();
+        return String.format(
+                "{\"ticks\":%d,\"orders\":%d,\"rate_limited\":%d,\"subscribers\":%d,"
+                        + "\"tick_to_order_count\":%d,\"tick_to_order_p50_ms\":%.3f,\"tick_to_order_p99_ms\":%.3f,"
+                        + "\"tick_to_order_max_ms\":%.3f,\"trigger_ticks_expired\":%d,"
+                        + "\"last_tick_age_p50_ms\":%.3f,\"last_tick_age_max_ms\":%.3f}",
+                ticksSent.sum(),
+                ordersReceived.sum(),
+                requestsLimited.sum(),
+                subscribers.size(),
+                trigger.length,
+                percentileMillis(trigger, 0.50),
+                percentileMillis(trigger, 0.99),
+                percentileMillis(trigger, 1.0),
+                triggersExpired.sum(),
+                percentileMillis(age, 0.50),
+                percentileMillis(age, 1.0));
+    }
+
+    private void fill(SimulatedOrder order) {
+        double price = market.getPrice(order.getProductIndex());
+        if (CoinbaseOrderRequest.BUY.equals(order.getSide())) {
+            // Funds include fees, the rest buys at the ask
+            double executedValue = order.getFunds() / (1.0 + settings.getFeeRate());
+            order.setExecutedValue(executedValue);
+            order.setFillFees(order.getFunds() - executedValue);
+            order.setFilledSize(executedValue / (price * (1.0 + settings.getSlippage())));
+        } else {
+            double executedValue = order.getSize() * price * (1.0 - settings.getSlippage());
+            order.setExecutedValue(executedValue);
+            order.setFillFees(executedValue * settings.getFeeRate());
+            order.setFilledSize(order.getSize());
+        }
+        order.setSettled(true);
+    }
+
+    private boolean tryAcquire(TokenBucket bucket) {
+        if (bucket.tryAcquire()) {
+            return true;
+        }
+        requestsLimited.increment();
+        return false;
+    }
+
+    /**
+     * Written by the feed thread, the time before the sequence so a reader that sees the sequence
+     * again after reading the time has the time of that tick.
+     */
+    private void recordPublished(int productIndex, long sequence, long nanos) {
+        int slot = (productIndex * PUBLISHED_TICKS) + (int) (sequence & PUBLISHED_MASK);
+        publishedSequences.set(slot, -1);
+        publishedNanos.set(slot, nanos);
+        publishedSequences.set(slot, sequence);
+    }
+
+    /**
+     * When the tick was published, or 0 if it is unknown or too old.
+     */
+    private long publishedNanos(int productIndex, long sequence) {
+        int slot = (productIndex * PUBLISHED_TICKS) + (int) (sequence & PUBLISHED_MASK);
+        if (publishedSequences.get(slot) != sequence) {
+            return 0;
+        }
+        long nanos = publishedNanos.get(slot);
+        return publishedSequences.get(slot) == sequence ? nanos : 0;
+    }
+
+    private static double percentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1_000_000.0;
+    }
+
+    private void publish() {
+        long startNanos = System.nanoTime();
+        long nextHeartbeatNanos = startNanos;
+        long[] ticksDue = new long[ProductRegistry.size()];
+        boolean[] subscribed = new boolean[ProductRegistry.size()];
+        StringBuilder message = new StringBuilder(512);
+
+        while (running) {
+            long now = System.nanoTime();
+            long due = (long) (((now - startNanos) / 1_000_000_000.0) * settings.getTicksPerSecond());
+            Arrays.fill(subscribed, false);
+            for (Subscriber subscriber : subscribers) {
+                subscriber.collectProducts(subscribed);
+            }
+
+            for (int productIndex = 0; productIndex < subscribed.length; productIndex++) {
+                if (!subscribed[productIndex]) {
+                    ticksDue[productIndex] = due;
+                    continue;
+                }
+                // Skip ahead rather than burst when more than a second behind
+                ticksDue[productIndex] = Math.max(ticksDue[productIndex], due - (long) Math.ceil(settings.getTicksPerSecond()));
+                while (ticksDue[productIndex] < due) {
+                    ticksDue[productIndex]++;
+                    // Recorded before sending, so an order naming the tick always finds it
+                    String tick = ticker(message, productIndex);
+                    long publishedAt = System.nanoTime();
+                    recordPublished(productIndex, market.getSequence(productIndex), publishedAt);
+                    lastTickNanos.set(productIndex, publishedAt);
+                    broadcast(productIndex, tick);
+                    ticksSent.increment();
+                }
+            }
+
+            fillPendingOrders(message);
+
+            if (now >= nextHeartbeatNanos) {
+                nextHeartbeatNanos = now + HEARTBEAT_NANOS;
+                for (int productIndex = 0; productIndex < subscribed.length; productIndex++) {
+                    if (subscribed[productIndex]) {
+                        broadcast(productIndex, heartbeat(message, productIndex));
+                    }
+                }
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Fills the orders whose fill delay has passed and tells user channel sessions they are done.
+     */
+    private void fillPendingOrders(StringBuilder message) {
+        long fillBefore = System.currentTimeMillis() - settings.getFillDelayMillis();
+        SimulatedOrder order;
+        while ((order = pendingFills.peek()) != null && order.getCreatedMillis() <= fillBefore) {
+            pendingFills.poll();
+            synchronized (order) {
+                if (!order.isSettled()) {
+                    fill(order);
+                }
+            }
+            sendToUsers(order.getProductIndex(), done(message, order));
+        }
+    }
+
+    private void broadcast(int productIndex, String message) {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.isTicker() && subscriber.isSubscribed(productIndex)) {
+                subscriber.send(message);
+            }
+        }
+    }
+
+    private void sendToUsers(int productIndex, String message) {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.isUser() && subscriber.isSubscribed(productIndex)) {
+                subscriber.send(message);
+            }
+        }
+    }
+
+    private String ticker(StringBuilder message, int productIndex) {
+        double price = market.next(productIndex);
+        double[] stats = market.getStats(productIndex);
+        double spread = price * settings.getSlippage();
+        boolean buy = ThreadLocalRandom.current().nextBoolean();
+        message.setLength(0);
+        message.append("{\"type\":\"ticker\",\"sequence\":").append(market.getSequence(productIndex))
+                .append(",\"product_id\":\"").append(ProductRegistry.getProductId(productIndex))
+                .append("\",\"price\":\"").append(decimal(price))
+                .append("\",\"open_24h\":\"").append(decimal(stats[0]))
+                .append("\",\"volume_24h\":\"1000.0\",\"low_24h\":\"").append(decimal(stats[2]))
+                .append("\",\"high_24h\":\"").append(decimal(stats[1]))
+                .append("\",\"volume_30d\":\"30000.0\",\"best_bid\":\"").append(decimal(price - spread))
+                .append("\",\"best_ask\":\"").append(decimal(price + spread))
+                .append("\",\"side\":\"").append(buy ? "buy" : "sell")
+                .append("\",\"time\":\"").append(Instant.now())
+                .append("\",\"trade_id\":").append(market.getSequence(productIndex))
+                .append(",\"last_size\":\"").append(decimal(ThreadLocalRandom.current().nextDouble(0.001, 1.0)))
+                .append("\"}");
+        return message.toString();
+    }
+
+    private String heartbeat(StringBuilder message, int productIndex) {
+        message.setLength(0);
+        message.append("{\"type\":\"heartbeat\",\"last_trade_id\":").append(market.getSequence(productIndex))
+                .append(",\"product_id\":\"").append(ProductRegistry.getProductId(productIndex))
+                .append("\",\"sequence\":").append(market.getSequence(productIndex))
+                .append(",\"time\":\"").append(Instant.now())
+                .append("\"}");
+        return message.toString();
+    }
+
+    private String received(StringBuilder message, SimulatedOrder order) {
+        message.setLength(0);
+        message.append("{\"type\":\"received\",\"time\":\"").append(Instant.ofEpochMilli(order.getCreatedMillis()))
+                .append("\",\"product_id\":\"").append(ProductRegistry.getProductId(order.getProductIndex()))
+                .append("\",\"sequence\":").append(market.getSequence(order.getProductIndex()))
+                .append(",\"order_id\":\"").append(order.getId())
+                .append("\",\"client_oid\":\"").append(order.getClientOid())
+                .append("\",\"side\":\"").append(order.getSide())
+                .append("\",\"order_type\":\"market\"}");
+        return message.toString();
+    }
+
+    private String done(StringBuilder message, SimulatedOrder order) {
+        message.setLength(0);
+        message.append("{\"type\":\"done\",\"time\":\"").append(Instant.now())
+                .append("\",\"product_id\":\"").append(ProductRegistry.getProductId(order.getProductIndex()))
+                .append("\",\"sequence\":").append(market.getSequence(order.getProductIndex()))
+                .append(",\"order_id\":\"").append(order.getId())
+                .append("\",\"reason\":\"filled\",\"side\":\"").append(order.getSide())
+                .append("\",\"remaining_size\":\"0\"}");
+        return message.toString();
+    }
+
+    static String decimal(double value) {
+        return BigDecimal.valueOf(value).setScale(8, RoundingMode.HALF_EVEN).stripTrailingZeros().toPlainString();
+    }
+
+    /**
+     * Ring of the latest latency samples in nanoseconds.
+     */
+    private static final class Samples {
+        private final long[] samples = new long[LATENCY_SAMPLES];
+        private int count;
+
+        synchronized void record(long nanos) {
+            samples[count++ % LATENCY_SAMPLES] = nanos;
+        }
+
+        long[] sorted() {
+            long[] copy;
+            synchronized (this) {
+                copy = Arrays.copyOf(samples, Math.min(count, LATENCY_SAMPLES));
+            }
+            Arrays.sort(copy);
+            return copy;
+        }
+    }
+
+    /**
+     * A feed session, the products it subscribed to and whether it receives tickers, its orders or both.
+     */
+    static class Subscriber {
+        private final Session session;
+        private final AtomicLongArray products = new AtomicLongArray((ProductRegistry.size() + Long.SIZE - 1) / Long.SIZE);
+        private volatile boolean ticker = true;
+        private volatile boolean user;
+
+        Subscriber(Session session) {
+            this.session = session;
+        }
+
+        boolean isTicker() {
+            return ticker;
+        }
+
+        void setTicker(boolean ticker) {
+            this.ticker = ticker;
+        }
+
+        boolean isUser() {
+            return user;
+        }
+
+        void setUser(boolean user) {
+            this.user = user;
+        }
+
+        void setSubscribed(int productIndex, boolean subscribed) {
+            int word = productIndex / Long.SIZE;
+            long bit = 1L << (productIndex % Long.SIZE);
+            long current;
+            do {
+                current = products.get(word);
+            } while (!products.compareAndSet(word, current, subscribed ? current | bit : current & ~bit));
+        }
+
+        boolean isSubscribed(int productIndex) {
+            return (products.get(productIndex / Long.SIZE) & (1L << (productIndex % Long.SIZE))) != 0;
+        }
+
+        void collectProducts(boolean[] subscribed) {
+            for (int productIndex = 0; productIndex < subscribed.length; productIndex++) {
+                subscribed[productIndex] |= isSubscribed(productIndex);
+            }
+        }
+
+        void send(String message) {
+            synchronized (session) {
+                if (!session.isOpen()) {
+                    return;
+                }
+                try {
+                    session.getBasicRemote().sendText(message);
+                } catch (IOException e) {
+                    log.warn("Failed to send to feed session {}. Error: {}", session.getId(), e.getMessage());
+                }
+            }
+        }
+    }
+}
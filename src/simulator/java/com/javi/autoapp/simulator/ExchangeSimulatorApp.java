@@ -0,0 +1,96 @@
+package com.javi.autoapp.simulator;
+
+import com.javi.autoapp.backtest.CandleHistory;
+import com.javi.autoapp.journal.TickJournalReader;
+import java.io.File;
+import java.time.Duration;
+import java.time.Instant;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs the {@link ExchangeSimulator} from the command line, without Spring. Run with
+ * {@code ./gradlew exchangeSimulator -PsimulatorArgs="..."}, then point the app at it with
+ * {@code coinbaseWebSocketUri: ws://localhost:8090/} and {@code coinbaseApiUri: http://localhost:8090},
+ * and {@code sendTriggerSequence: true} to time orders from the tick they were decided on. Requests are
+ * not verified, any base64 {@code COINBASE_SECRET} lets the app sign them.
+ *
+ * <pre>
+ * --ticks-per-second 100 --start-price 50000 --volatility 0.0002
+ * --journal /var/tmp/auto-app-ticks --from 2021-01-01T00:00:00Z --to 2021-01-02T00:00:00Z
+ * --candles btc.json --product BTC-USD --granularity 900 --fill-delay-ms 200 --latency-ms 20
+ * </pre>
+ */
+@Slf4j
+public class ExchangeSimulatorApp {
+    public static void main(String[] args) throws Exception {
+        ExchangeSimulator.Settings defaults = new ExchangeSimulator.Settings();
+        OptionParser parser = new OptionParser();
+        OptionSpec<Integer> portOption = parser.accepts("port", "Port of the feed and REST API").withRequiredArg().ofType(Integer.class).defaultsTo(defaults.getPort());
+        OptionSpec<Double> ticksOption = parser.accepts("ticks-per-second", "Ticks per subscribed product per second").withRequiredArg().ofType(Double.class).defaultsTo(defaults.getTicksPerSecond());
+        OptionSpec<Double> startPriceOption = parser.accepts("start-price", "Start price of random walks").withRequiredArg().ofType(Double.class).defaultsTo(100.0);
+        OptionSpec<Double> volatilityOption = parser.accepts("volatility", "Standard deviation of the relative price change per tick").withRequiredArg().ofType(Double.class).defaultsTo(0.0005);
+        OptionSpec<Long> seedOption = parser.accepts("seed", "Random walk seed").withRequiredArg().ofType(Long.class).defaultsTo(0L);
+        OptionSpec<File> journalOption = parser.accepts("journal", "Replay prices from a tick journal directory").withRequiredArg().ofType(File.class);
+        OptionSpec<String> fromOption = parser.accepts("from", "Journal start, ISO instant").withRequiredArg().defaultsTo("1970-01-01T00:00:00Z");
+        OptionSpec<String> toOption = parser.accepts("to", "Journal end, ISO instant").withRequiredArg().defaultsTo("9999-12-31T00:00:00Z");
+        OptionSpec<File> candlesOption = parser.accepts("candles", "Replay prices from JSON candles").withRequiredArg().ofType(File.class);
+        OptionSpec<String> productOption = parser.accepts("product", "Product ID of the candles").withRequiredArg();
+        OptionSpec<Long> granularityOption = parser.accepts("granularity", "Candle granularity in seconds").withRequiredArg().ofType(Long.class).defaultsTo(900L);
+        OptionSpec<Long> latencyOption = parser.accepts("latency-ms", "Delay of every REST request").withRequiredArg().ofType(Long.class).defaultsTo(defaults.getRequestLatencyMillis());
+        OptionSpec<Long> jitterOption = parser.accepts("jitter-ms", "Random extra delay of every REST request, up to").withRequiredArg().ofType(Long.class).defaultsTo(defaults.getRequestJitterMillis());
+        OptionSpec<Double> publicRateOption = parser.accepts("public-rate", "Public requests per second").withRequiredArg().ofType(Double.class).defaultsTo(defaults.getPublicRequestsPerSecond());
+        OptionSpec<Double> privateRateOption = parser.accepts("private-rate", "Private requests per second").withRequiredArg().ofType(Double.class).defaultsTo(defaults.getPrivateRequestsPerSecond());
+        OptionSpec<Long> fillDelayOption = parser.accepts("fill-delay-ms", "Time until an order settles").withRequiredArg().ofType(Long.class).defaultsTo(defaults.getFillDelayMillis());
+        OptionSpec<Double> feeOption = parser.accepts("fee", "Fee rate charged on fills").withRequiredArg().ofType(Double.class).defaultsTo(defaults.getFeeRate());
+        OptionSpec<Double> slippageOption = parser.accepts("slippage", "Relative price slippage of fills").withRequiredArg().ofType(Double.class).defaultsTo(defaults.getSlippage());
+        OptionSpec<Long> reportOption = parser.accepts("report-seconds", "Interval between counter reports").withRequiredArg().ofType(Long.class).defaultsTo(defaults.getReportIntervalSeconds());
+        parser.accepts("help").forHelp();
+        OptionSet options = parser.parse(args);
+        if (options.has("help")) {
+            parser.printHelpOn(System.out);
+            return;
+        }
+
+        SimulatedMarket market = new SimulatedMarket(
+                options.valueOf(startPriceOption),
+                options.valueOf(volatilityOption),
+                options.valueOf(seedOption));
+        if (options.has(journalOption)) {
+            TickJournalReader reader = new TickJournalReader(options.valueOf(journalOption).toPath());
+            long fromMillis = Instant.parse(options.valueOf(fromOption)).toEpochMilli();
+            long toMillis = Instant.parse(options.valueOf(toOption)).toEpochMilli();
+            market.replay(handler -> reader.replay(fromMillis, toMillis, handler));
+        } else if (options.has(candlesOption) && options.has(productOption)) {
+            market.replay(CandleHistory.read(
+                    options.valueOf(productOption),
+                    options.valueOf(candlesOption).toPath(),
+                    Duration.ofSeconds(options.valueOf(granularityOption)).toMillis())::replay);
+        }
+
+        ExchangeSimulator.Settings settings = new ExchangeSimulator.Settings();
+        settings.setPort(options.valueOf(portOption));
+        settings.setTicksPerSecond(options.valueOf(ticksOption));
+        settings.setRequestLatencyMillis(options.valueOf(latencyOption));
+        settings.setRequestJitterMillis(options.valueOf(jitterOption));
+        settings.setPublicRequestsPerSecond(options.valueOf(publicRateOption));
+        settings.setPrivateRequestsPerSecond(options.valueOf(privateRateOption));
+        settings.setFillDelayMillis(options.valueOf(fillDelayOption));
+        settings.setFeeRate(options.valueOf(feeOption));
+        settings.setSlippage(options.valueOf(slippageOption));
+        settings.setReportIntervalSeconds(options.valueOf(reportOption));
+
+        ExchangeSimulator simulator = new ExchangeSimulator(settings, market);
+        simulator.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                simulator.stop();
+            } catch (Exception e) {
+                log.error("Failed to stop the exchange simulator. Error: {}", e.getMessage());
+            }
+        }));
+        simulator.awaitAndReport();
+    }
+}
@@ -0,0 +1,105 @@
+package com.javi.autoapp.simulator;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.javi.autoapp.client.model.CoinbaseWebSocketSubscribe;
+import com.javi.autoapp.util.ProductRegistry;
+import java.io.IOException;
+import java.util.List;
+import javax.websocket.CloseReason;
+import javax.websocket.Endpoint;
+import javax.websocket.EndpointConfig;
+import javax.websocket.MessageHandler;
+import javax.websocket.Session;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * One feed session. Subscribe and unsubscribe messages change the products it receives ticks and
+ * heartbeats for, and are answered with the products now subscribed like the real feed. A subscription
+ * to the user channel with a key and signature also gets the messages of every order, the signature
+ * is not checked.
+ */
+@Slf4j
+public class FeedEndpoint extends Endpoint {
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final ExchangeSimulator simulator;
+    private ExchangeSimulator.Subscriber subscriber;
+
+    public FeedEndpoint(ExchangeSimulator simulator) {
+        this.simulator = simulator;
+    }
+
+    @Override
+    public void onOpen(Session session, EndpointConfig config) {
+        subscriber = new ExchangeSimulator.Subscriber(session);
+        simulator.addSubscriber(subscriber);
+        session.addMessageHandler(new MessageHandler.Whole<String>() {
+            @Override
+            public void onMessage(String message) {
+                handle(message);
+            }
+        });
+        log.info("Feed session {} opened", session.getId());
+    }
+
+    @Override
+    public void onClose(Session session, CloseReason closeReason) {
+        simulator.removeSubscriber(subscriber);
+        log.info("Feed session {} closed. Reason: {}", session.getId(), closeReason.getReasonPhrase());
+    }
+
+    @Override
+    public void onError(Session session, Throwable error) {
+        simulator.removeSubscriber(subscriber);
+        log.warn("Feed session {} failed. Error: {}", session.getId(), error.getMessage());
+    }
+
+    private void handle(String message) {
+        CoinbaseWebSocketSubscribe request;
+        try {
+            request = mapper.readValue(message, CoinbaseWebSocketSubscribe.class);
+        } catch (IOException e) {
+            subscriber.send("{\"type\":\"error\",\"message\":\"Failed to parse message\"}");
+            return;
+        }
+
+        boolean subscribe = CoinbaseWebSocketSubscribe.SUBSCRIBE.equals(request.getType());
+        if (!subscribe && !CoinbaseWebSocketSubscribe.UNSUBSCRIBE.equals(request.getType())) {
+            subscriber.send("{\"type\":\"error\",\"message\":\"Unsupported message type\"}");
+            return;
+        }
+        List<String> channels = request.getChannels() == null
+                ? CoinbaseWebSocketSubscribe.TICKER_HEARTBEAT_CHANNELS
+                : request.getChannels();
+        if (subscribe) {
+            subscriber.setTicker(channels.contains("ticker"));
+            subscriber.setUser(channels.contains("user") && request.getKey() != null && request.getSignature() != null);
+        }
+        if (request.getProductIds() != null) {
+            for (String productId : request.getProductIds()) {
+                int productIndex = ProductRegistry.indexOf(productId);
+                if (productIndex != ProductRegistry.UNKNOWN) {
+                    subscriber.setSubscribed(productIndex, subscribe);
+                }
+            }
+        }
+
+        StringBuilder response = new StringBuilder("{\"type\":\"subscriptions\",\"channels\":[");
+        String separator = "";
+        for (String channel : channels) {
+            response.append(separator).append("{\"name\":\"").append(channel).append("\",\"product_ids\":[");
+            String productSeparator = "";
+            for (int productIndex = 0; productIndex < ProductRegistry.size(); productIndex++) {
+                if (subscriber.isSubscribed(productIndex)) {
+                    response.append(productSeparator).append('"').append(ProductRegistry.getProductId(productIndex)).append('"');
+                    productSeparator = ",";
+                }
+            }
+            response.append("]}");
+            separator = ",";
+        }
+        subscriber.send(response.append("]}").toString());
+    }
+}
@@ -0,0 +1,138 @@
+package com.javi.autoapp.simulator;
+
+import com.javi.autoapp.backtest.TickSource;
+import com.javi.autoapp.model.ProductPriceTable;
+import com.javi.autoapp.util.ProductRegistry;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Prices of the simulated exchange. Each product either replays recorded prices in a loop or follows a
+ * random walk from a start price, one step per tick. Ticks are produced by the feed thread, the latest
+ * prices and 24 hour stats are read by request threads.
+ */
+public class SimulatedMarket {
+    private static final int INITIAL_REPLAY_CAPACITY = 1024;
+
+    private final ProductPriceTable prices = new ProductPriceTable(ProductRegistry.size());
+    private final double startPrice;
+    private final double volatility;
+    private final SplittableRandom random;
+    private final double[][] replayPrices = new double[ProductRegistry.size()][];
+    private final int[] replayCounts = new int[ProductRegistry.size()];
+    private final int[] replayPositions = new int[ProductRegistry.size()];
+    private final long[] sequences = new long[ProductRegistry.size()];
+    private final double[] opens = new double[ProductRegistry.size()];
+    private final double[] highs = new double[ProductRegistry.size()];
+    private final double[] lows = new double[ProductRegistry.size()];
+
+    /**
+     * @param volatility standard deviation of the relative price change per tick
+     */
+    public SimulatedMarket(double startPrice, double volatility, long seed) {
+        this.startPrice = startPrice;
+        this.volatility = volatility;
+        this.random = new SplittableRandom(seed);
+        Arrays.fill(opens, Double.NaN);
+    }
+
+    /**
+     * Replays the recorded prices of every product in the source, the other products random walk.
+     */
+    public void replay(TickSource source) throws IOException {
+        source.replay(tick -> {
+            if (!tick.isTicker()) {
+                return;
+            }
+            int productIndex = tick.getProductIndex();
+            double[] recorded = replayPrices[productIndex];
+            if (recorded == null) {
+                recorded = new double[INITIAL_REPLAY_CAPACITY];
+            } else if (replayCounts[productIndex] == recorded.length) {
+                recorded = Arrays.copyOf(recorded, recorded.length * 2);
+            }
+            recorded[replayCounts[productIndex]++] = tick.getPrice();
+            replayPrices[productIndex] = recorded;
+        });
+    }
+
+    /**
+     * Moves the product to its next price.
+     */
+    public synchronized double next(int productIndex) {
+        double price;
+        if (replayCounts[productIndex] > 0) {
+            price = replayPrices[productIndex][replayPositions[productIndex]];
+            replayPositions[productIndex] = (replayPositions[productIndex] + 1) % replayCounts[productIndex];
+        } else {
+            double last = prices.getPrice(productIndex);
+            price = Double.isNaN(last) ? startPrice : last * (1.0 + (volatility * gaussian()));
+        }
+
+        if (Double.isNaN(opens[productIndex])) {
+            opens[productIndex] = price;
+            highs[productIndex] = price;
+            lows[productIndex] = price;
+        }
+        highs[productIndex] = Math.max(highs[productIndex], price);
+        lows[productIndex] = Math.min(lows[productIndex], price);
+        prices.update(productIndex, price, ++sequences[productIndex], System.currentTimeMillis());
+        return price;
+    }
+
+    /**
+     * The latest price, starting the product if it has not ticked yet.
+     */
+    public double getPrice(int productIndex) {
+        double price = prices.getPrice(productIndex);
+        return Double.isNaN(price) ? next(productIndex) : price;
+    }
+
+    public long getSequence(int productIndex) {
+        return prices.getSequence(productIndex);
+    }
+
+    /**
+     * Open, high and low since the product started.
+     */
+    public synchronized double[] getStats(int productIndex) {
+        getPrice(productIndex);
+        return new double[]{opens[productIndex], highs[productIndex], lows[productIndex]};
+    }
+
+    /**
+     * Candles as the candles endpoint returns them, newest first {@code [time, low, high, open, close,
+     * volume]} rows, walking back from the latest price. Rows are drawn from a random seeded by the
+     * product and bucket time so repeated requests for a bucket agree.
+     */
+    public double[][] getCandles(int productIndex, long startSeconds, long endSeconds, long granularitySeconds) {
+        long nowSeconds = System.currentTimeMillis() / 1000;
+        long last = (Math.min(endSeconds, nowSeconds) / granularitySeconds) * granularitySeconds;
+        long first = ((startSeconds + granularitySeconds - 1) / granularitySeconds) * granularitySeconds;
+        if (last < first) {
+            return new double[0][];
+        }
+
+        double[][] candles = new double[(int) ((last - first) / granularitySeconds) + 1][];
+        double close = getPrice(productIndex);
+        double bucketVolatility = volatility * Math.sqrt(granularitySeconds);
+        for (int row = 0; row < candles.length; row++) {
+            long time = last - (row * granularitySeconds);
+            SplittableRandom bucketRandom = new SplittableRandom((productIndex * 31L) + time);
+            double open = close / (1.0 + (bucketVolatility * bucketRandom.nextDouble(-1.0, 1.0)));
+            double high = Math.max(open, close) * (1.0 + (bucketVolatility * bucketRandom.nextDouble()));
+            double low = Math.min(open, close) * (1.0 - (bucketVolatility * bucketRandom.nextDouble()));
+            candles[row] = new double[]{time, low, high, open, close, bucketRandom.nextDouble(1.0, 100.0)};
+            close = open;
+        }
+        return candles;
+    }
+
+    private double gaussian() {
+        // Box-Muller, SplittableRandom has no nextGaussian
+        double u = 1.0 - random.nextDouble();
+        double v = random.nextDouble();
+        return Math.sqrt(-2.0 * Math.log(u)) * Math.cos(2.0 * Math.PI * v);
+    }
+}
@@ -0,0 +1,19 @@
+package com.javi.autoapp.simulator;
+
+import lombok.Data;
+
+@Data
+class SimulatedOrder {
+    private final String id;
+    private final String clientOid;
+    private final int productIndex;
+    private final String side;
+    private final double funds;
+    private final double size;
+    private final long createdMillis;
+
+    private boolean settled;
+    private double executedValue;
+    private double filledSize;
+    private double fillFees;
+}
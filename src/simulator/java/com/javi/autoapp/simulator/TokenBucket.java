@@ -0,0 +1,27 @@
+package com.javi.autoapp.simulator;
+
+/**
+ * Requests per second allowed with bursts up to the same amount, the way the exchange limits each
+ * API key and IP address.
+ */
+class TokenBucket {
+    private final double ratePerSecond;
+    private double tokens;
+    private long refilledNanos = System.nanoTime();
+
+    TokenBucket(double ratePerSecond) {
+        this.ratePerSecond = ratePerSecond;
+        this.tokens = ratePerSecond;
+    }
+
+    synchronized boolean tryAcquire() {
+        long now = System.nanoTime();
+        tokens = Math.min(ratePerSecond, tokens + (((now - refilledNanos) / 1_000_000_000.0) * ratePerSecond));
+        refilledNanos = now;
+        if (tokens < 1.0) {
+            return false;
+        }
+        tokens -= 1.0;
+        return true;
+    }
+}
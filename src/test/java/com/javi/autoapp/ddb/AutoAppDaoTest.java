@@ -0,0 +1,139 @@
+package com.javi.autoapp.ddb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.javi.autoapp.ddb.model.JobSettings;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class AutoAppDaoTest {
+    private static final double DELTA = 1e-9;
+
+    private final StoredJobsDao dao = new StoredJobsDao();
+
+    @Test
+    public void stoppingJobKeepsUnsavedChanges() {
+        JobSettings trading = dao.load(dao.store(new JobSettings()));
+        trading.setCrossedLowThreshold(true);
+        trading.setMinValue(90.0);
+        dao.saveJobLater(trading);
+
+        JobSettings job = dao.getCurrentJob(trading.getJobId());
+        job.setActive(false);
+        dao.startOrUpdateJob(job);
+
+        JobSettings stored = dao.load(trading.getJobId());
+        assertFalse(stored.isActive());
+        assertTrue(stored.isCrossedLowThreshold());
+        assertEquals(90.0, stored.getMinValue(), DELTA);
+    }
+
+    @Test
+    public void staleCopyCannotRevertStoppedJob() {
+        String jobId = dao.store(new JobSettings());
+        JobSettings trading = dao.load(jobId);
+        trading.setCrossedLowThreshold(true);
+        dao.saveJobLater(trading);
+        JobSettings loadedBeforeStop = dao.load(jobId);
+
+        JobSettings job = dao.getCurrentJob(jobId);
+        job.setActive(false);
+        dao.startOrUpdateJob(job);
+
+        assertTrue(dao.isStale(loadedBeforeStop));
+        loadedBeforeStop.setMinValue(80.0);
+        dao.saveJobLater(loadedBeforeStop);
+        dao.startOrUpdateJob(loadedBeforeStop);
+        assertEquals(0, dao.flushJobs(Collections.singletonList(loadedBeforeStop)));
+
+        assertSame(job, dao.getCurrentJob(loadedBeforeStop));
+        JobSettings stored = dao.load(jobId);
+        assertFalse(stored.isActive());
+        assertTrue(stored.isCrossedLowThreshold());
+        assertEquals(0.0, stored.getMinValue(), DELTA);
+    }
+
+    @Test
+    public void unsavedChangesAreWrittenOnceByFlush() {
+        JobSettings job = dao.load(dao.store(new JobSettings()));
+        job.setMinValue(90.0);
+        dao.saveJobLater(job);
+        job.setMinValue(85.0);
+        dao.saveJobLater(job);
+
+        assertEquals(0.0, dao.load(job.getJobId()).getMinValue(), DELTA);
+        assertEquals(1, dao.flushJobs(Collections.singletonList(job)));
+        assertEquals(0, dao.flushJobs(Collections.singletonList(job)));
+        assertEquals(85.0, dao.load(job.getJobId()).getMinValue(), DELTA);
+        assertSame(job, dao.getCurrentJob(job.getJobId()));
+    }
+
+    @Test
+    public void deletedJobCanBeLoadedAgain() {
+        JobSettings job = dao.load(dao.store(new JobSettings()));
+        dao.saveJobLater(job);
+        dao.deleteJob(job);
+
+        JobSettings recreated = dao.load(dao.store(job));
+        assertFalse(dao.isStale(recreated));
+        assertSame(recreated, dao.getCurrentJob(recreated));
+    }
+
+    /**
+     * Stores rows in a map, loading a new copy of the row each time like DynamoDB does.
+     */
+    private static class StoredJobsDao extends AutoAppDao {
+        private final Map<String, JobSettings> rows = new HashMap<>();
+
+        StoredJobsDao() {
+            super(null);
+        }
+
+        String store(JobSettings job) {
+            rows.put(job.getJobId(), copy(job));
+            return job.getJobId();
+        }
+
+        JobSettings load(String jobId) {
+            return getJobSettings(jobId);
+        }
+
+        @Override
+        public JobSettings getJobSettings(String jobId) {
+            JobSettings row = rows.get(jobId);
+            return row == null ? null : copy(row);
+        }
+
+        @Override
+        protected void writeJob(JobSettings job) {
+            store(job);
+        }
+
+        @Override
+        protected List<DynamoDBMapper.FailedBatch> writeJobs(List<JobSettings> jobs) {
+            jobs.forEach(this::store);
+            return Collections.emptyList();
+        }
+
+        @Override
+        protected void removeJob(JobSettings job) {
+            rows.remove(job.getJobId());
+        }
+
+        private static JobSettings copy(JobSettings job) {
+            JobSettings copy = new JobSettings();
+            copy.setJobId(job.getJobId());
+            copy.setActive(job.isActive());
+            copy.setCrossedLowThreshold(job.isCrossedLowThreshold());
+            copy.setMinValue(job.getMinValue());
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.javi.autoapp.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+
+public class ProductPriceTableTest {
+    private static final int UPDATES = 20_000_000;
+
+    private final ProductPriceTable table = new ProductPriceTable(2);
+
+    @Test
+    public void missingPriceReadsAsNaN() {
+        ProductPriceTable.Entry entry = table.read(0, new ProductPriceTable.Entry());
+
+        assertTrue(Double.isNaN(entry.getPrice()));
+        assertTrue(Double.isNaN(table.getPrice(0)));
+        assertTrue(Double.isNaN(table.getPreviousPrice(0)));
+        assertEquals(0, entry.getSequence());
+    }
+
+    @Test
+    public void readReturnsLatestTick() {
+        table.update(1, 100.5, 7, 1_000);
+        table.update(1, 101.5, 8, 2_000);
+
+        ProductPriceTable.Entry entry = table.read(1, new ProductPriceTable.Entry());
+
+        assertEquals(101.5, entry.getPrice(), 0.0);
+        assertEquals(8, entry.getSequence());
+        assertEquals(2_000, entry.getExchangeTimeMillis());
+        assertTrue(Double.isNaN(table.read(0, entry).getPrice()));
+    }
+
+    @Test
+    public void previousPriceIsSetOnce() {
+        assertTrue(Double.isNaN(table.putPreviousPriceIfAbsent(0, 100.0)));
+        assertEquals(100.0, table.putPreviousPriceIfAbsent(0, 101.0), 0.0);
+
+        table.clear(0);
+
+        assertTrue(Double.isNaN(table.getPreviousPrice(0)));
+    }
+
+    @Test
+    public void readNeverMixesTicks() throws InterruptedException {
+        AtomicBoolean done = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            for (int sequence = 1; sequence <= UPDATES; sequence++) {
+                table.update(0, sequence, sequence, sequence * 10L);
+            }
+            done.set(true);
+        });
+        writer.start();
+
+        ProductPriceTable.Entry entry = new ProductPriceTable.Entry();
+        long torn = 0;
+        long outOfOrder = 0;
+        long lastSequence = 0;
+        while (!done.get()) {
+            table.read(0, entry);
+            if (entry.getSequence() > 0
+                    && (entry.getPrice() != entry.getSequence() || entry.getExchangeTimeMillis() != entry.getSequence() * 10L)) {
+                torn++;
+            }
+            if (entry.getSequence() < lastSequence) {
+                outOfOrder++;
+            }
+            lastSequence = entry.getSequence();
+
+            // A price read after a sequence is at least as new
+            long sequence = table.getSequence(0);
+            if (table.getPrice(0) < sequence) {
+                outOfOrder++;
+            }
+        }
+        writer.join();
+
+        assertEquals(0, torn);
+        assertEquals(0, outOfOrder);
+        assertEquals(UPDATES, table.read(0, entry).getSequence());
+    }
+}
@@ -0,0 +1,328 @@
+package com.javi.autoapp.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.javi.autoapp.ddb.model.JobSettings;
+import java.util.Random;
+import org.junit.Test;
+
+public class TradingStrategyTest {
+    private static final double DELTA = 1e-9;
+
+    private final TradingStrategy.State state = new TradingStrategy.State();
+
+    @Test
+    public void tradeNowTrades() {
+        JobSettings job = buyJob();
+        job.setTradeNow(true);
+
+        assertEquals(TradingStrategy.TRADE, TradingStrategy.evaluate(state.load(job), 100.0, 100.0));
+    }
+
+    @Test
+    public void midMarketBuyCrossesLowThreshold() {
+        JobSettings job = buyJob();
+        job.setInit(true);
+
+        int decision = TradingStrategy.evaluate(state.load(job), 100.0, 90.0);
+
+        assertEquals(TradingStrategy.CROSSED_LOW_THRESHOLD, decision);
+        assertTrue(TradingStrategy.changesTriggers(decision));
+        assertTrue(TradingStrategy.apply(job, decision, state));
+        assertTrue(job.isCrossedLowThreshold());
+        assertEquals(90.0, job.getMinValue(), DELTA);
+    }
+
+    @Test
+    public void midMarketBuyLowersMinValue() {
+        JobSettings job = buyJob();
+        job.setInit(true);
+        job.setCrossedLowThreshold(true);
+        job.setMinValue(90.0);
+
+        int decision = TradingStrategy.evaluate(state.load(job), 100.0, 85.0);
+
+        assertEquals(TradingStrategy.NEW_MIN_VALUE, decision);
+        assertFalse(TradingStrategy.changesTriggers(decision));
+        assertTrue(TradingStrategy.apply(job, decision, state));
+        assertTrue(job.isCrossedLowThreshold());
+        assertEquals(85.0, job.getMinValue(), DELTA);
+    }
+
+    @Test
+    public void midMarketBuyTradesWhenPriceRisesAboveMinValue() {
+        JobSettings job = buyJob();
+        job.setInit(true);
+        job.setCrossedLowThreshold(true);
+        job.setMinValue(90.0);
+
+        assertEquals(TradingStrategy.TRADE, TradingStrategy.evaluate(state.load(job), 100.0, 95.0));
+    }
+
+    @Test
+    public void midMarketBuyHoldsAboveThreshold() {
+        JobSettings job = buyJob();
+        job.setInit(true);
+
+        assertEquals(TradingStrategy.HOLD, TradingStrategy.evaluate(state.load(job), 100.0, 99.0));
+    }
+
+    @Test
+    public void crestCrossesYieldThreshold() {
+        JobSettings job = sellJob();
+
+        int decision = TradingStrategy.evaluate(state.load(job), 100.0, 120.0);
+
+        assertEquals(TradingStrategy.CROSSED_YIELD_THRESHOLD, decision);
+        assertTrue(TradingStrategy.apply(job, decision, state));
+        assertTrue(job.isCrossedPercentageYieldThreshold());
+        assertEquals(120.0 * (1 - TradingStrategy.COINBASE_PERCENTAGE) / 100.0, job.getMaxYieldValue(), DELTA);
+    }
+
+    @Test
+    public void crestRaisesMaxYield() {
+        JobSettings job = sellJob();
+        job.setCrossedPercentageYieldThreshold(true);
+        job.setMaxYieldValue(1.15);
+
+        int decision = TradingStrategy.evaluate(state.load(job), 100.0, 120.0);
+
+        assertEquals(TradingStrategy.NEW_MAX_YIELD, decision);
+        assertTrue(TradingStrategy.apply(job, decision, state));
+        assertEquals(120.0 * (1 - TradingStrategy.COINBASE_PERCENTAGE) / 100.0, job.getMaxYieldValue(), DELTA);
+    }
+
+    @Test
+    public void crestTradesWhenYieldFallsBelowMax() {
+        JobSettings job = sellJob();
+        job.setCrossedPercentageYieldThreshold(true);
+        job.setMaxYieldValue(1.25);
+
+        assertEquals(TradingStrategy.TRADE, TradingStrategy.evaluate(state.load(job), 100.0, 120.0));
+    }
+
+    @Test
+    public void crestStopsLossesOnlyWhenProtected() {
+        JobSettings job = sellJob();
+        job.setProtectUsd(true);
+        job.setMaximumLoses(0.9);
+
+        int decision = TradingStrategy.evaluate(state.load(job), 50.0, 50.0);
+        assertEquals(TradingStrategy.STOP_LOSS, decision);
+        assertTrue(TradingStrategy.isTrade(decision));
+
+        job.setProtectUsd(false);
+        assertEquals(TradingStrategy.HOLD, TradingStrategy.evaluate(state.load(job), 50.0, 50.0));
+    }
+
+    @Test
+    public void troughHoldsAboveLowThreshold() {
+        JobSettings job = buyJob();
+        job.setSize(1.0);
+
+        assertEquals(TradingStrategy.HOLD, TradingStrategy.evaluate(state.load(job), 100.0, 100.0));
+    }
+
+    @Test
+    public void tradesAndHoldsLeaveTheJobUnchanged() {
+        JobSettings job = sellJob();
+        JobSettings copy = sellJob();
+
+        for (int decision : new int[] {TradingStrategy.HOLD, TradingStrategy.TRADE, TradingStrategy.STOP_LOSS}) {
+            TradingStrategy.evaluate(state.load(job), 100.0, 120.0);
+            assertFalse(TradingStrategy.apply(job, decision, state));
+            assertEquals(copy, job);
+        }
+    }
+
+    /**
+     * Every decision matches the callbacks of the previous strategy, and applying it leaves the job
+     * with the same fields the callbacks did.
+     */
+    @Test
+    public void matchesPreviousStrategy() {
+        Random random = new Random(42);
+        LegacyStrategy legacy = new LegacyStrategy();
+        for (int iteration = 0; iteration < 200_000; iteration++) {
+            long seed = random.nextLong();
+            JobSettings expected = randomJob(new Random(seed));
+            JobSettings actual = randomJob(new Random(seed));
+            double mid = 100.0 * (0.5 + random.nextDouble());
+            double price = mid * (1.0 + (random.nextGaussian() * 0.1));
+
+            legacy.reset();
+            legacy.evaluate(expected, mid, price);
+
+            int decision = TradingStrategy.evaluate(state.load(actual), mid, price);
+            boolean traded = TradingStrategy.isTrade(decision);
+            boolean updated = !traded && TradingStrategy.apply(actual, decision, state);
+
+            String message = "iteration " + iteration + ", decision " + decision;
+            assertEquals(message, legacy.traded, traded);
+            assertEquals(message, legacy.updated, updated);
+            assertEquals(message, legacy.triggersChanged, updated && TradingStrategy.changesTriggers(decision));
+            assertEquals(message, expected, actual);
+        }
+    }
+
+    private static JobSettings buyJob() {
+        JobSettings job = new JobSettings();
+        job.setJobId("job");
+        job.setOrderId("order");
+        job.setPrecision(-2);
+        job.setPercentageYieldThreshold(1.1);
+        job.setFunds(100.0);
+        job.setSize(1.0);
+        return job;
+    }
+
+    private static JobSettings sellJob() {
+        JobSettings job = buyJob();
+        job.setSell(true);
+        return job;
+    }
+
+    private static JobSettings randomJob(Random random) {
+        JobSettings job = buyJob();
+        job.setTradeNow(random.nextInt(20) == 0);
+        job.setInit(random.nextInt(4) == 0);
+        job.setSell(random.nextBoolean());
+        job.setProtectUsd(random.nextBoolean());
+        job.setPrecision(-random.nextInt(5));
+        job.setPercentageYieldThreshold(0.95 + (random.nextDouble() * 0.35));
+        job.setMaximumLoses(0.7 + (random.nextDouble() * 0.3));
+        job.setFunds(10.0 + (random.nextDouble() * 1000.0));
+        job.setSize(job.getFunds() / (100.0 * (0.5 + random.nextDouble())));
+        job.setCrossedLowThreshold(random.nextBoolean());
+        job.setMinValue(100.0 * (0.5 + random.nextDouble()));
+        job.setCrossedPercentageYieldThreshold(random.nextBoolean());
+        job.setMaxYieldValue(0.8 + (random.nextDouble() * 0.6));
+        return job;
+    }
+
+    /**
+     * The strategy before it returned decision codes, with its logging removed, reporting trades and
+     * job updates the way its {@code Actions} callbacks did.
+     */
+    private static final class LegacyStrategy {
+        private static final double COINBASE_PERCENTAGE = TradingStrategy.COINBASE_PERCENTAGE;
+
+        private boolean traded;
+        private boolean updated;
+        private boolean triggersChanged;
+
+        private void reset() {
+            traded = false;
+            updated = false;
+            triggersChanged = false;
+        }
+
+        private void trade(JobSettings job) {
+            traded = true;
+        }
+
+        private void update(JobSettings job, boolean triggersChanged) {
+            this.updated = true;
+            this.triggersChanged |= triggersChanged;
+        }
+
+        private void evaluate(JobSettings job, double latestMidPrice, double latestPrice) {
+            double price = TradingStrategy.roundPrice(latestPrice, job.getPrecision());
+            double midPrice = TradingStrategy.roundPrice(latestMidPrice, job.getPrecision());
+
+            if (job.isTradeNow()) {
+                trade(job);
+            } else if (job.isInit()) {
+                handleMidMarketBuy(job, midPrice, price);
+            } else if (job.isSell()) {
+                crest(job, midPrice, price);
+            } else {
+                trough(job, midPrice, price);
+            }
+        }
+
+        private void trough(JobSettings job, double midPrice, double price) {
+            double expectedBuy = job.getFunds() / price;
+            double expectedFees = expectedBuy * COINBASE_PERCENTAGE;
+            double expectedSize = expectedBuy - expectedFees;
+            double percentYield = expectedSize / job.getSize();
+            double priceWantedAbsolute = job.getFunds() / ((job.getPercentageYieldThreshold() * job.getSize()) / (1 - COINBASE_PERCENTAGE));
+            double priceWanted = TradingStrategy.roundPrice(priceWantedAbsolute, job.getPrecision());
+
+            double priceIncreasePercent = job.getPercentageYieldThreshold() + COINBASE_PERCENTAGE - 1.0;
+            double priceThreshold = 1.0 - (priceIncreasePercent / 2.0);
+            double minPriceThreshold = 1.0 - (priceIncreasePercent * 1.5);
+            double lowThreshold = TradingStrategy.roundPrice(midPrice * priceThreshold, job.getPrecision());
+            double minPrice = TradingStrategy.roundPrice(midPrice * minPriceThreshold, job.getPrecision());
+
+            if (priceWanted < minPrice) {
+                handleMidMarketBuy(job, midPrice, price);
+            } else if ((price < lowThreshold) || (lowThreshold < minPrice && price < midPrice)) {
+                handlePercentageYieldThreshold(job, percentYield);
+            }
+        }
+
+        private void crest(JobSettings job, double midPrice, double price) {
+            double expectedSale = price * job.getSize();
+            double expectedFees = expectedSale * COINBASE_PERCENTAGE;
+            double expectedFunds = expectedSale - expectedFees;
+            double percentYield = expectedFunds / job.getFunds();
+            double absoluteValue = job.getFunds() / job.getSize();
+            double value = TradingStrategy.roundPrice(absoluteValue, job.getPrecision());
+
+            double priceIncreasePercent = job.getPercentageYieldThreshold() + COINBASE_PERCENTAGE - 1.0;
+            double priceThreshold = 1.0 + (priceIncreasePercent / 2.0);
+            double maxPriceThreshold = 1.0 + (priceIncreasePercent * 1.5);
+            double highThreshold = TradingStrategy.roundPrice(midPrice * priceThreshold, job.getPrecision());
+            double maxPrice = TradingStrategy.roundPrice(midPrice * maxPriceThreshold, job.getPrecision());
+
+            if (maxPrice < value) {
+                if (job.isProtectUsd() && (percentYield < job.getMaximumLoses())) {
+                    trade(job);
+                }
+            } else if ((price > highThreshold) || (highThreshold > maxPrice && price > midPrice)) {
+                handlePercentageYieldThreshold(job, percentYield);
+            }
+        }
+
+        private void handleMidMarketBuy(JobSettings job, double midPrice, double price) {
+            double priceIncreasePercent = (job.getPercentageYieldThreshold() + COINBASE_PERCENTAGE - 1.0) / 2.0;
+            double priceThreshold = 1.0 - priceIncreasePercent;
+            double priceWanted = TradingStrategy.roundPrice(midPrice * priceThreshold, job.getPrecision());
+
+            if ((job.isCrossedLowThreshold() && price > job.getMinValue())) {
+                trade(job);
+            }
+
+            if (!job.isCrossedLowThreshold() && price < priceWanted) {
+                job.setCrossedLowThreshold(true);
+                job.setMinValue(price);
+                update(job, true);
+            }
+
+            if (job.isCrossedLowThreshold() && price < job.getMinValue()) {
+                job.setMinValue(price);
+                update(job, false);
+            }
+        }
+
+        private void handlePercentageYieldThreshold(JobSettings job, double percentYield) {
+            if ((job.isCrossedPercentageYieldThreshold() && percentYield < job.getMaxYieldValue())) {
+                trade(job);
+            }
+
+            if (!job.isCrossedPercentageYieldThreshold() && percentYield > job.getPercentageYieldThreshold()) {
+                job.setCrossedPercentageYieldThreshold(true);
+                job.setMaxYieldValue(percentYield);
+                update(job, false);
+            }
+
+            if (job.isCrossedPercentageYieldThreshold() && percentYield > job.getMaxYieldValue()) {
+                job.setMaxYieldValue(percentYield);
+                update(job, false);
+            }
+        }
+    }
+}
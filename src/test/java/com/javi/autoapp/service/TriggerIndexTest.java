@@ -0,0 +1,186 @@
+package com.javi.autoapp.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.javi.autoapp.ddb.model.JobSettings;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+public class TriggerIndexTest {
+
+    @Test
+    public void belowJobActsBelowItsTrigger() {
+        // Mid market buy at a 1.1 yield threshold triggers below mid * 0.94255
+        JobSettings job = buyJob();
+        job.setInit(true);
+        TriggerIndex index = new TriggerIndex(Collections.singletonList(job));
+
+        assertTrue(collect(index, 100.0, 95.0).isEmpty());
+        assertEquals(Collections.singletonList(job), collect(index, 100.0, 94.0));
+        assertTrue(collect(index, 200.0, 190.0).isEmpty());
+        assertEquals(Collections.singletonList(job), collect(index, 200.0, 188.0));
+    }
+
+    @Test
+    public void aboveJobActsAboveItsTrigger() {
+        // Crest of a job bought at 100 triggers above mid * 1.05745 once the mid allows a sale
+        JobSettings job = sellJob();
+        TriggerIndex index = new TriggerIndex(Collections.singletonList(job));
+
+        assertTrue(collect(index, 100.0, 105.0).isEmpty());
+        assertEquals(Collections.singletonList(job), collect(index, 100.0, 106.0));
+        assertTrue(collect(index, 120.0, 126.0).isEmpty());
+        assertEquals(Collections.singletonList(job), collect(index, 120.0, 127.0));
+    }
+
+    @Test
+    public void alwaysJobsActOnAnyPrice() {
+        JobSettings tradeNow = buyJob();
+        tradeNow.setTradeNow(true);
+        JobSettings crossedLowThreshold = buyJob();
+        crossedLowThreshold.setInit(true);
+        crossedLowThreshold.setCrossedLowThreshold(true);
+        TriggerIndex index = new TriggerIndex(Arrays.asList(tradeNow, crossedLowThreshold));
+
+        for (double price : new double[] {50.0, 100.0, 150.0}) {
+            List<JobSettings> candidates = collect(index, 100.0, price);
+            assertEquals(2, candidates.size());
+            assertTrue(candidates.contains(tradeNow));
+            assertTrue(candidates.contains(crossedLowThreshold));
+        }
+    }
+
+    @Test
+    public void inactiveAndPendingJobsNeverAct() {
+        JobSettings inactive = buyJob();
+        inactive.setTradeNow(true);
+        inactive.setActive(false);
+        JobSettings pending = sellJob();
+        pending.setTradeNow(true);
+        pending.setPending(true);
+        TriggerIndex index = new TriggerIndex(Arrays.asList(inactive, pending));
+
+        assertTrue(collect(index, 100.0, 50.0).isEmpty());
+        assertTrue(collect(index, 100.0, 150.0).isEmpty());
+    }
+
+    @Test
+    public void invalidatedJobIsClassifiedAgain() {
+        JobSettings job = buyJob();
+        job.setInit(true);
+        JobSettings other = sellJob();
+        TriggerIndex index = new TriggerIndex(Arrays.asList(job, other));
+        assertTrue(collect(index, 100.0, 95.0).isEmpty());
+
+        job.setCrossedLowThreshold(true);
+        index.invalidate(job);
+        assertEquals(Collections.singletonList(job), collect(index, 100.0, 95.0));
+
+        job.setPending(true);
+        index.invalidate(job);
+        assertTrue(collect(index, 100.0, 94.0).isEmpty());
+        assertEquals(Collections.singletonList(other), collect(index, 100.0, 106.0));
+    }
+
+    @Test
+    public void invalidatingUnknownCopyClassifiesAllAgain() {
+        JobSettings job = buyJob();
+        job.setInit(true);
+        TriggerIndex index = new TriggerIndex(Collections.singletonList(job));
+        assertTrue(collect(index, 100.0, 95.0).isEmpty());
+
+        job.setTradeNow(true);
+        index.invalidate(buyJob());
+        assertEquals(Collections.singletonList(job), collect(index, 100.0, 95.0));
+    }
+
+    @Test
+    public void matchesFreshIndexAndStrategy() {
+        Random random = new Random(1);
+        List<JobSettings> jobs = new ArrayList<>();
+        for (int count = 0; count < 300; count++) {
+            jobs.add(randomize(random, buyJob()));
+        }
+        TriggerIndex index = new TriggerIndex(jobs);
+        TradingStrategy.State state = new TradingStrategy.State();
+
+        double mid = 100.0;
+        for (int step = 0; step < 20_000; step++) {
+            mid *= 1.0 + (random.nextGaussian() * 0.002);
+            double price = mid * (1.0 + (random.nextGaussian() * 0.02));
+            if (random.nextInt(4) == 0) {
+                JobSettings job = jobs.get(random.nextInt(jobs.size()));
+                index.invalidate(randomize(random, job));
+            }
+
+            List<JobSettings> candidates = collect(index, mid, price);
+            Set<JobSettings> found = identitySet(candidates);
+            String message = "step " + step + " mid " + mid + " price " + price;
+            assertEquals(message, candidates.size(), found.size());
+            assertEquals(message, identitySet(collect(new TriggerIndex(jobs), mid, price)), found);
+
+            // Every job the strategy would act on is a candidate
+            for (JobSettings job : jobs) {
+                if ((job.isActive() || job.isSell()) && !job.isPending() && !found.contains(job)) {
+                    assertEquals(message, TradingStrategy.HOLD, TradingStrategy.evaluate(state.load(job), mid, price));
+                }
+            }
+        }
+    }
+
+    private static List<JobSettings> collect(TriggerIndex index, double mid, double price) {
+        List<JobSettings> candidates = new ArrayList<>();
+        index.collect(mid, price, candidates);
+        return candidates;
+    }
+
+    private static Set<JobSettings> identitySet(List<JobSettings> jobs) {
+        Set<JobSettings> set = Collections.newSetFromMap(new IdentityHashMap<>());
+        set.addAll(jobs);
+        return set;
+    }
+
+    private static JobSettings buyJob() {
+        JobSettings job = new JobSettings();
+        job.setJobId("job");
+        job.setOrderId("order");
+        job.setPrecision(-2);
+        job.setPercentageYieldThreshold(1.1);
+        job.setFunds(100.0);
+        job.setSize(1.0);
+        job.setInit(false);
+        return job;
+    }
+
+    private static JobSettings sellJob() {
+        JobSettings job = buyJob();
+        job.setSell(true);
+        return job;
+    }
+
+    private static JobSettings randomize(Random random, JobSettings job) {
+        job.setActive(random.nextInt(10) > 0);
+        job.setPending(random.nextInt(10) == 0);
+        job.setTradeNow(random.nextInt(50) == 0);
+        job.setInit(random.nextInt(5) == 0);
+        job.setSell(random.nextBoolean());
+        job.setProtectUsd(random.nextBoolean());
+        job.setPrecision(-random.nextInt(4));
+        job.setPercentageYieldThreshold(1.0 + (random.nextDouble() * 0.1));
+        job.setMaximumLoses(0.7 + (random.nextDouble() * 0.3));
+        job.setFunds(100.0 + (random.nextDouble() * 1000.0));
+        job.setSize(job.getFunds() / (100.0 * (0.8 + (random.nextDouble() * 0.4))));
+        job.setCrossedLowThreshold(random.nextInt(5) == 0);
+        job.setMinValue(100.0 * (0.8 + (random.nextDouble() * 0.4)));
+        job.setCrossedPercentageYieldThreshold(random.nextBoolean());
+        job.setMaxYieldValue(0.8 + (random.nextDouble() * 0.6));
+        return job;
+    }
+}